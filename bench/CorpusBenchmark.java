@@ -0,0 +1,234 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.file.*;
+import java.util.*;
+import java.util.regex.*;
+
+/**
+ * Runs every program in the bench/corpus directory in-process through the interpreter and compares the
+ * wall time, instructions executed and bytes allocated per run against a stored baseline, failing when
+ * any workload has regressed by more than a threshold.
+ * <p>
+ * Compile and run from the project root:
+ * <pre>
+ * javac -d bin main/*.java src/*.java bench/CorpusBenchmark.java
+ * java -cp bin CorpusBenchmark              compare against bench/baseline.json
+ * java -cp bin CorpusBenchmark --update     record a new baseline
+ * </pre>
+ * Other options are --threshold followed by the allowed slowdown as a fraction (default 0.10), --warmup and
+ * --runs followed by the number of runs (defaults 5 and 10), --corpus and --baseline followed by paths, and
+ * --compile to run with the compiling tier, for comparing it against a baseline of the plain interpreter.
+ * Wall times depend on the machine, so record the baseline on the machine that does the comparing.
+ * @author Aaron Howe
+ * @version Java 11
+ */
+public class CorpusBenchmark {
+
+    // allocation differences below this many bytes per run are noise rather than regressions
+    private static final long ALLOCATION_SLACK = 64 * 1024;
+    private static final Pattern WORKLOAD = Pattern.compile("\"([^\"]+)\"\\s*:\\s*\\{([^}]*)\\}");
+    private static final Pattern FIELD = Pattern.compile("\"(\\w+)\"\\s*:\\s*([-0-9.eE]+)");
+
+    /**
+     * Measurements of one workload.
+     */
+    private static final class Result {
+
+        double timeMs;
+        long operations;
+        long allocatedBytes;
+    }
+
+    /**
+     * Runs the corpus and compares it against the baseline, or records a new baseline.
+     * @param args Command-line options, see the class description.
+     * @throws IOException when the corpus or baseline cannot be read or written.
+     */
+    public static void main(String[] args) throws IOException {
+        Path corpus = Paths.get("bench", "corpus");
+        Path baselinePath = Paths.get("bench", "baseline.json");
+        double threshold = 0.10;
+        int warmup = 5;
+        int runs = 10;
+        boolean update = false;
+        boolean compiling = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--update":
+                    update = true;
+                    break;
+                case "--compile":
+                    compiling = true;
+                    break;
+                case "--threshold":
+                    threshold = Double.parseDouble(args[++i]);
+                    break;
+                case "--warmup":
+                    warmup = Integer.parseInt(args[++i]);
+                    break;
+                case "--runs":
+                    runs = Integer.parseInt(args[++i]);
+                    break;
+                case "--corpus":
+                    corpus = Paths.get(args[++i]);
+                    break;
+                case "--baseline":
+                    baselinePath = Paths.get(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i] + ".");
+            }
+        }
+
+        List<Path> programs = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(corpus, "*.ps")) {
+            files.forEach(programs::add);
+        }
+        Collections.sort(programs);
+        Map<String, Result> results = new LinkedHashMap<>();
+        for (Path program : programs) {
+            Result result = measure(Files.readString(program, java.nio.charset.StandardCharsets.ISO_8859_1),
+                warmup, runs, compiling);
+            results.put(program.getFileName().toString(), result);
+            System.out.printf("%-14s %10.2f ms %,14d ops %,16d bytes%n", program.getFileName(),
+                result.timeMs, result.operations, result.allocatedBytes);
+        }
+
+        if (update) {
+            Files.writeString(baselinePath, toJson(results));
+            System.out.println("Baseline written to " + baselinePath + ".");
+            return;
+        }
+        if (!Files.exists(baselinePath)) {
+            System.out.println("No baseline at " + baselinePath + ", run with --update to record one.");
+            System.exit(1);
+        }
+        Map<String, Result> baseline = fromJson(Files.readString(baselinePath));
+        List<String> regressions = new ArrayList<>();
+        for (Map.Entry<String, Result> entry : results.entrySet()) {
+            Result before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.println(entry.getKey() + " is not in the baseline.");
+                continue;
+            }
+            Result after = entry.getValue();
+            compare(regressions, entry.getKey(), "time", before.timeMs, after.timeMs, threshold, 0, " ms");
+            compare(regressions, entry.getKey(), "operations", before.operations, after.operations, threshold, 0, "");
+            compare(regressions, entry.getKey(), "allocation", before.allocatedBytes, after.allocatedBytes, threshold,
+                ALLOCATION_SLACK, " bytes");
+        }
+        if (!regressions.isEmpty()) {
+            System.out.println();
+            regressions.forEach(System.out::println);
+            System.exit(1);
+        }
+        System.out.println("No regressions beyond " + Math.round(threshold * 100) + "%.");
+    }
+
+    /**
+     * Runs a program in a fresh interpreter session for each run, discarding its output.
+     * @param source Program to run.
+     * @param warmup Runs made before measuring.
+     * @param runs Runs measured.
+     * @param compiling True to run with the compiling tier.
+     * @return Median wall time and allocation of the measured runs, and the instructions executed per run.
+     */
+    private static Result measure(String source, int warmup, int runs, boolean compiling) {
+        double[] times = new double[runs];
+        long[] allocations = new long[runs];
+        long operations = 0;
+        for (int run = -warmup; run < runs; run++) {
+            MyInterpreter interpreter = new MyInterpreter(new MyOutput(OutputStream.nullOutputStream()), compiling);
+            long allocated = allocatedBytes();
+            long start = System.nanoTime();
+            interpreter.evaluate(source);
+            long elapsed = System.nanoTime() - start;
+            if (run >= 0) {
+                times[run] = elapsed / 1e6;
+                allocations[run] = allocatedBytes() - allocated;
+                operations = interpreter.executed();
+            }
+        }
+        Arrays.sort(times);
+        Arrays.sort(allocations);
+        Result result = new Result();
+        result.timeMs = times[runs / 2];
+        result.allocatedBytes = allocations[runs / 2];
+        result.operations = operations;
+        return result;
+    }
+
+    /**
+     * Fetches the bytes allocated so far by the current thread.
+     * @return Bytes allocated, or 0 when the JVM does not track allocation.
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    /**
+     * Records a regression if a measurement has grown by more than the threshold.
+     * @param regressions Descriptions of the regressions found so far.
+     * @param slack Absolute growth that is never counted as a regression.
+     */
+    private static void compare(List<String> regressions, String workload, String measure, double before,
+                                double after, double threshold, double slack, String unit) {
+        if (after > before * (1 + threshold) + slack) {
+            regressions.add(String.format("REGRESSION %s %s: %,.2f%s against a baseline of %,.2f%s (%+.1f%%)",
+                workload, measure, after, unit, before, unit, before == 0 ? 100.0 : (after - before) / before * 100));
+        }
+    }
+
+    /**
+     * Writes results as a JSON object with an object per workload.
+     * @param results Results by workload.
+     * @return JSON text.
+     */
+    private static String toJson(Map<String, Result> results) {
+        StringBuilder json = new StringBuilder("{\n");
+        Iterator<Map.Entry<String, Result>> entries = results.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, Result> entry = entries.next();
+            Result result = entry.getValue();
+            json.append(String.format(Locale.ROOT, "  \"%s\": {\"timeMs\": %.3f, \"operations\": %d, \"allocatedBytes\": %d}",
+                entry.getKey(), result.timeMs, result.operations, result.allocatedBytes));
+            json.append(entries.hasNext() ? ",\n" : "\n");
+        }
+        return json.append("}\n").toString();
+    }
+
+    /**
+     * Reads results written by toJson().
+     * @param json JSON text.
+     * @return Results by workload.
+     */
+    private static Map<String, Result> fromJson(String json) {
+        Map<String, Result> results = new HashMap<>();
+        Matcher workload = WORKLOAD.matcher(json);
+        while (workload.find()) {
+            Result result = new Result();
+            Matcher field = FIELD.matcher(workload.group(2));
+            while (field.find()) {
+                switch (field.group(1)) {
+                    case "timeMs":
+                        result.timeMs = Double.parseDouble(field.group(2));
+                        break;
+                    case "operations":
+                        result.operations = Long.parseLong(field.group(2));
+                        break;
+                    case "allocatedBytes":
+                        result.allocatedBytes = Long.parseLong(field.group(2));
+                        break;
+                    default:
+                        break;
+                }
+            }
+            results.put(workload.group(1), result);
+        }
+        return results;
+    }
+}
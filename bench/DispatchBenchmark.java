@@ -0,0 +1,136 @@
+import java.util.*;
+
+/**
+ * Measures operator dispatch throughput in tokens per second, comparing the original
+ * parse-by-exception, dictionary walk and lowercased string switch against the operator table.
+ * <p>
+ * Compile and run from the project root:
+ * <pre>
+ * javac -d bin src/*.java bench/DispatchBenchmark.java
+ * java -cp bin DispatchBenchmark
+ * </pre>
+ * @author Aaron Howe
+ * @version Java 11
+ */
+public class DispatchBenchmark {
+
+    // stack-neutral token sequence mixing literals and operators
+    private static final String[] PROGRAM = ("1 2 add 3 mul 4 sub dup pop 2 exch pop pop "
+        + "5 dup mul 6 idiv 2 mod 7 exch pop abs neg pop").split("\\s+");
+    private static final int ROUNDS = 10;
+    private static final int ITERATIONS = 200_000;
+
+    private final MyStack stack = new MyStack();
+    private final MyArithmetic arith = new MyArithmetic(stack);
+    private final MyDictionary dict = new MyDictionary(stack);
+    private final MyOperators operators = new MyOperators(stack, arith, dict, new MyString(stack),
+        new MyBoolean(stack), new MyFlowControl(stack), new MyIO(stack));
+
+    /**
+     * Runs both dispatchers and prints their throughput.
+     * @param args Command-line arguments, unused.
+     */
+    public static void main(String[] args) {
+        DispatchBenchmark bench = new DispatchBenchmark();
+        for (int round = 1; round <= ROUNDS; round++) {
+            double legacy = bench.measure(bench::legacyDispatch);
+            double table = bench.measure(bench::tableDispatch);
+            System.out.printf("round %2d: switch %,12.0f tokens/s   table %,12.0f tokens/s   speedup %.2fx%n",
+                round, legacy, table, table / legacy);
+        }
+    }
+
+    /**
+     * Runs the program through a dispatcher and computes its throughput.
+     * @param dispatcher Dispatch strategy under test.
+     * @return Tokens dispatched per second.
+     */
+    private double measure(java.util.function.Consumer<String> dispatcher) {
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (String token : PROGRAM) {
+                dispatcher.accept(token);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (stack.count() != 0) {
+            throw new IllegalStateException("Benchmark program left the stack unbalanced.");
+        }
+        return (double) ITERATIONS * PROGRAM.length / (elapsed / 1e9);
+    }
+
+    /**
+     * Dispatch as the interpreter did before the operator table: numbers are recognised by
+     * catching parse failures, every name walks the dictionary stack and is then lowercased
+     * for a string switch.
+     * @param command Token to dispatch.
+     */
+    private void legacyDispatch(String command) {
+        try {
+            if (command.contains(".")) {
+                stack.push(Double.parseDouble(command));
+            } else {
+                stack.push(Integer.parseInt(command));
+            }
+            return;
+        } catch (NumberFormatException e) {
+            Object element = dict.defHelper(command);
+            if (element != null) {
+                stack.push(element);
+                return;
+            }
+        }
+        switch (command.toLowerCase()) {
+            case "exch":
+                stack.exch();
+                break;
+            case "pop":
+                stack.pop();
+                break;
+            case "dup":
+                stack.dup();
+                break;
+            case "add":
+                arith.add();
+                break;
+            case "sub":
+                arith.sub();
+                break;
+            case "mul":
+                arith.mul();
+                break;
+            case "idiv":
+                arith.iDiv();
+                break;
+            case "mod":
+                arith.mod();
+                break;
+            case "abs":
+                arith.abs();
+                break;
+            case "neg":
+                arith.neg();
+                break;
+            default:
+                throw new IllegalArgumentException("Error: Command Not Recognized.");
+        }
+    }
+
+    /**
+     * Dispatch through the operator table, with user definitions still taking precedence.
+     * @param command Token to dispatch.
+     */
+    private void tableDispatch(String command) {
+        char first = command.charAt(0);
+        if (first >= '0' && first <= '9') {
+            stack.push(Integer.parseInt(command));
+            return;
+        }
+        Object element = dict.defHelper(command);
+        if (element != null) {
+            stack.push(element);
+            return;
+        }
+        operators.lookup(command).run();
+    }
+}
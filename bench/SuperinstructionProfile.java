@@ -0,0 +1,148 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Profiles the sequences of instructions the programs in the bench/corpus directory run inside procedures,
+ * prints the most frequent bigrams and trigrams, and chooses the superinstructions of MySuperinstructions
+ * worth using from how often the sequence each of them stands for ran.
+ * <p>
+ * Compile and run from the project root:
+ * <pre>
+ * javac -d bin main/*.java src/*.java bench/SuperinstructionProfile.java
+ * java -cp bin SuperinstructionProfile              print the profile and the table it gives
+ * java -cp bin SuperinstructionProfile --update     also write the table into src/MySuperinstructions.java
+ * </pre>
+ * A superinstruction is chosen when its sequence makes up at least a share of the instructions run in
+ * procedures, set with --min-share followed by a fraction (default 0.001), and the table lists the chosen
+ * ones most frequent first, the order the optimizer tries them in. Other options are --top followed by the
+ * number of bigrams and trigrams to print (default 20), and --corpus and --source followed by paths.
+ * Regenerate the table after changing the corpus or adding a fused operation, and rebuild.
+ * @author Aaron Howe
+ * @version Java 11
+ */
+public class SuperinstructionProfile {
+
+    private static final String BEGIN = "// BEGIN GENERATED TABLE";
+    private static final String END = "// END GENERATED TABLE";
+
+    /**
+     * Profiles the corpus and prints, or writes, the table of superinstructions.
+     * @param args Command-line options, see the class description.
+     * @throws IOException when the corpus or the source of the table cannot be read or written.
+     */
+    public static void main(String[] args) throws IOException {
+        Path corpus = Paths.get("bench", "corpus");
+        Path source = Paths.get("src", "MySuperinstructions.java");
+        double minShare = 0.001;
+        int top = 20;
+        boolean update = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--update":
+                    update = true;
+                    break;
+                case "--min-share":
+                    minShare = Double.parseDouble(args[++i]);
+                    break;
+                case "--top":
+                    top = Integer.parseInt(args[++i]);
+                    break;
+                case "--corpus":
+                    corpus = Paths.get(args[++i]);
+                    break;
+                case "--source":
+                    source = Paths.get(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i] + ".");
+            }
+        }
+
+        List<Path> programs = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(corpus, "*.ps")) {
+            files.forEach(programs::add);
+        }
+        Collections.sort(programs);
+        MyNgramProfile profile = new MyNgramProfile();
+        for (Path program : programs) {
+            MyInterpreter interpreter = new MyInterpreter(new MyOutput(OutputStream.nullOutputStream()));
+            interpreter.setProfile(profile);
+            interpreter.evaluate(Files.readString(program, StandardCharsets.ISO_8859_1));
+        }
+        long total = profile.counts(1).values().stream().mapToLong(Long::longValue).sum();
+        System.out.printf("%,d instructions run in procedures of %d programs%n", total, programs.size());
+
+        // the sequences, and then how often each superinstruction's sequence ran
+        List<String> patterns = MySuperinstructions.patterns();
+        for (int n = 2; n <= 3; n++) {
+            System.out.println();
+            System.out.println(n == 2 ? "Bigrams:" : "Trigrams:");
+            int printed = 0;
+            for (Map.Entry<String, Long> entry : profile.counts(n).entrySet()) {
+                if (printed++ == top) {
+                    break;
+                }
+                List<String> names = Arrays.asList(entry.getKey().split(" "));
+                boolean fused = patterns.stream().anyMatch(pattern -> pattern.split(" ").length == names.size()
+                    && MySuperinstructions.matches(pattern, names, 0));
+                System.out.printf("%,14d %6.2f%%  %s%s%n", entry.getValue(), 100.0 * entry.getValue() / total,
+                    entry.getKey(), fused ? "   (fused)" : "");
+            }
+        }
+        Map<String, Long> counts = new HashMap<>();
+        for (String pattern : patterns) {
+            long count = 0;
+            for (Map.Entry<String, Long> entry : profile.counts(pattern.split(" ").length).entrySet()) {
+                if (MySuperinstructions.matches(pattern, Arrays.asList(entry.getKey().split(" ")), 0)) {
+                    count += entry.getValue();
+                }
+            }
+            counts.put(pattern, count);
+        }
+        List<String> chosen = new ArrayList<>();
+        for (String pattern : patterns) {
+            if (counts.get(pattern) > 0 && counts.get(pattern) >= minShare * total) {
+                chosen.add(pattern);
+            }
+        }
+        chosen.sort(Comparator.comparing((String pattern) -> counts.get(pattern)).reversed()
+            .thenComparing(patterns::indexOf));
+        System.out.println();
+        System.out.println("Superinstructions:");
+        List<String> byCount = new ArrayList<>(patterns);
+        byCount.sort(Comparator.comparing((String pattern) -> counts.get(pattern)).reversed());
+        for (String pattern : byCount) {
+            System.out.printf("%,14d %6.2f%%  %-28s %s%n", counts.get(pattern), 100.0 * counts.get(pattern) / total,
+                pattern, chosen.contains(pattern) ? "chosen" : "");
+        }
+
+        if (!update) {
+            return;
+        }
+        String text = Files.readString(source);
+        int begin = text.indexOf(BEGIN);
+        int end = text.indexOf(END);
+        if (begin < 0 || end < begin) {
+            throw new IllegalStateException("No generated table in " + source + ".");
+        }
+        begin = text.indexOf('\n', begin) + 1;
+        end = text.lastIndexOf('\n', end) + 1;
+        Files.writeString(source, text.substring(0, begin) + table(chosen) + text.substring(end));
+        System.out.println("Table written to " + source + ".");
+    }
+
+    /**
+     * Writes the declaration of the table.
+     * @param chosen Patterns of the chosen superinstructions, in the order the optimizer tries them.
+     * @return Java source declaring the table, ending with a newline.
+     */
+    private static String table(List<String> chosen) {
+        StringBuilder table = new StringBuilder("    private static final List<String> TABLE = List.of(");
+        for (int i = 0; i < chosen.size(); i++) {
+            table.append(i == 0 ? "\n" : ",\n").append("        \"").append(chosen.get(i)).append('"');
+        }
+        return table.append(");\n").toString();
+    }
+}
@@ -0,0 +1,217 @@
+import java.io.OutputStream;
+
+/**
+ * Operations measured by the JMH benchmarks in bench/jmh/postjava/jmh. JMH only accepts benchmarks in a named
+ * package, and classes in a named package cannot refer to the interpreter's classes in the unnamed package,
+ * so the benchmarks look this class up by name and get each operation from workload() as a plain Runnable.
+ * Every workload leaves the operand stack as it found it, so it can be run any number of times.
+ * @author Aaron Howe
+ * @version Java 11
+ */
+public final class BenchWorkloads {
+
+    // definitions of the whole-program workloads
+    private static final String PROGRAMS = String.join("\n",
+        "/fib { dup 2 lt { } { dup 1 sub fib exch 2 sub fib add } ifelse } def",
+        "/sieve { /n exch def /flags n string def /primes 0 def",
+        "  2 1 n 1 sub { /i exch def",
+        "    flags i get 0 eq { /primes primes 1 add def i i mul i n 1 sub { flags exch 1 put } for } if",
+        "  } for primes } def",
+        "/loops { 0 1 1 100 { pop 1 1 100 { add } for } for } def");
+
+    /**
+     * Not instantiable.
+     */
+    private BenchWorkloads() {
+    }
+
+    /**
+     * Builds a workload, running programs in the plain interpreter.
+     * @param name Operation to measure: exch, dup, copy, add, add-real, mul, div, idiv, mod, def, load,
+     * lookup, getinterval, putinterval, fib, sieve or loops.
+     * @param scope dyn or lex.
+     * @param depth Number of dictionaries on the dictionary stack for the dictionary workloads.
+     * @return Operation to run repeatedly.
+     * @throws IllegalArgumentException when the workload is unknown.
+     */
+    public static Runnable workload(String name, String scope, int depth) {
+        return workload(name, scope, depth, "interpreted");
+    }
+
+    /**
+     * Builds a workload.
+     * @param name Operation to measure, see above.
+     * @param scope dyn or lex.
+     * @param depth Number of dictionaries on the dictionary stack for the dictionary workloads.
+     * @param tier interpreted, or compiled to run programs with the compiling tier.
+     * @return Operation to run repeatedly.
+     * @throws IllegalArgumentException when the workload is unknown.
+     */
+    public static Runnable workload(String name, String scope, int depth, String tier) {
+        boolean compiling = tier.equals("compiled");
+        MyStack stack = new MyStack();
+        MyArithmetic arith = new MyArithmetic(stack);
+        MyDictionary dict = new MyDictionary(stack);
+        MyString string = new MyString(stack);
+        if (scope.equals("lex")) {
+            dict.lex();
+        }
+        switch (name) {
+            // stack
+            case "exch":
+                stack.pushInt(1);
+                stack.pushInt(2);
+                return stack::exch;
+            case "dup":
+                stack.pushInt(1);
+                return () -> {
+                    stack.dup();
+                    stack.popInt();
+                };
+            case "copy":
+                stack.pushInt(1);
+                stack.pushInt(2);
+                stack.pushInt(3);
+                return () -> {
+                    stack.pushInt(3);
+                    stack.copy();
+                    stack.popInt();
+                    stack.popInt();
+                    stack.popInt();
+                };
+            // arithmetic
+            case "add":
+                return binary(stack, 7, 5, arith::add);
+            case "add-real":
+                return () -> {
+                    stack.pushReal(7.25);
+                    stack.pushReal(5.5);
+                    arith.add();
+                    drop(stack);
+                };
+            case "mul":
+                return binary(stack, 7, 5, arith::mul);
+            case "div":
+                return binary(stack, 7, 5, arith::div);
+            case "idiv":
+                return binary(stack, 7, 5, arith::iDiv);
+            case "mod":
+                return binary(stack, 7, 5, arith::mod);
+            // dictionary, with the key defined at the bottom of the dictionary stack under dynamic scoping,
+            // and at the top under lexical scoping, which only looks in the current dictionary outside procedures
+            case "def":
+            case "load":
+            case "lookup":
+                PSName key = PSName.intern("key");
+                if (scope.equals("dyn")) {
+                    stack.push(key);
+                    stack.pushInt(1);
+                    dict.def();
+                }
+                for (int i = 1; i < depth; i++) {
+                    stack.pushInt(16);
+                    dict.dict();
+                    dict.begin();
+                    // give every level some keys of its own
+                    for (int j = 0; j < 8; j++) {
+                        stack.push(PSName.intern("level" + i + "key" + j));
+                        stack.pushInt(j);
+                        dict.def();
+                    }
+                }
+                if (scope.equals("lex")) {
+                    stack.push(key);
+                    stack.pushInt(1);
+                    dict.def();
+                }
+                if (name.equals("def")) {
+                    return () -> {
+                        stack.push(key);
+                        stack.pushInt(2);
+                        dict.def();
+                    };
+                }
+                if (name.equals("load")) {
+                    return () -> {
+                        stack.push(key);
+                        dict.load();
+                        drop(stack);
+                    };
+                }
+                return () -> dict.defHelper(key);
+            // string, patching a 64 KB buffer
+            case "getinterval":
+            case "putinterval":
+                PSString buffer = new PSString(64 * 1024);
+                PSString patch = PSString.of("x".repeat(100));
+                if (name.equals("getinterval")) {
+                    return () -> {
+                        stack.push(buffer);
+                        stack.pushInt(1000);
+                        stack.pushInt(100);
+                        string.getInterval();
+                        stack.pop();
+                    };
+                }
+                return () -> {
+                    stack.push(buffer);
+                    stack.pushInt(1000);
+                    stack.push(patch);
+                    string.putInterval();
+                };
+            // whole programs, run through the interpreter with its output discarded
+            case "fib":
+                return program(scope, compiling, "20 fib pop");
+            case "sieve":
+                return program(scope, compiling, "10000 sieve pop");
+            case "loops":
+                return program(scope, compiling, "loops pop");
+            default:
+                throw new IllegalArgumentException("Unknown workload " + name + ".");
+        }
+    }
+
+    /**
+     * Builds a workload applying a binary operator to two integers.
+     * @return Workload pushing both operands, applying the operator and dropping the result.
+     */
+    private static Runnable binary(MyStack stack, int first, int second, Runnable operator) {
+        return () -> {
+            stack.pushInt(first);
+            stack.pushInt(second);
+            operator.run();
+            drop(stack);
+        };
+    }
+
+    /**
+     * Pops the top of the stack without boxing numbers, so the allocation profile shows the operation's own.
+     * @param stack Operand stack.
+     */
+    private static void drop(MyStack stack) {
+        switch (stack.peekTag(0)) {
+            case MyStack.INT:
+                stack.popInt();
+                break;
+            case MyStack.REAL:
+                stack.popReal();
+                break;
+            default:
+                stack.pop();
+        }
+    }
+
+    /**
+     * Starts an interpreter session with the program definitions and builds a workload running a call.
+     * @param scope dyn or lex.
+     * @param compiling True to run with the compiling tier.
+     * @param call Source executing one of the programs, leaving the stack as it found it.
+     * @return Workload evaluating the call.
+     */
+    private static Runnable program(String scope, boolean compiling, String call) {
+        MyInterpreter interpreter = new MyInterpreter(new MyOutput(OutputStream.nullOutputStream()), compiling);
+        interpreter.evaluate(scope);
+        interpreter.evaluate(PROGRAMS);
+        return () -> interpreter.evaluate(call);
+    }
+}
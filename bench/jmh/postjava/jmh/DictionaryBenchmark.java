@@ -0,0 +1,46 @@
+package postjava.jmh;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Throughput of defining and looking up a key with different numbers of dictionaries on the dictionary stack.
+ * @author Aaron Howe
+ * @version Java 11
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class DictionaryBenchmark {
+
+    @Param({"def", "load", "lookup"})
+    public String operation;
+
+    @Param({"dyn", "lex"})
+    public String scope;
+
+    // dictionaries on the dictionary stack, the key is defined in the bottom one under dyn and the top one under lex
+    @Param({"1", "8", "64"})
+    public int depth;
+
+    private Runnable workload;
+
+    /**
+     * Builds the workload for the current parameters.
+     */
+    @Setup
+    public void setUp() {
+        workload = Workload.of(operation, scope, depth);
+    }
+
+    /**
+     * Runs the operation once.
+     */
+    @Benchmark
+    public void run() {
+        workload.run();
+    }
+}
@@ -0,0 +1,46 @@
+package postjava.jmh;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Throughput of whole programs run through the interpreter: recursive fib 20, a sieve of the primes below
+ * 10000, and 10000 additions in nested for loops, both interpreted and with the compiling tier.
+ * @author Aaron Howe
+ * @version Java 11
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ProgramBenchmark {
+
+    @Param({"fib", "sieve", "loops"})
+    public String program;
+
+    @Param({"dyn", "lex"})
+    public String scope;
+
+    @Param({"interpreted", "compiled"})
+    public String tier;
+
+    private Runnable workload;
+
+    /**
+     * Builds the workload for the current parameters.
+     */
+    @Setup
+    public void setUp() {
+        workload = Workload.of(program, scope, 1, tier);
+    }
+
+    /**
+     * Runs the operation once.
+     */
+    @Benchmark
+    public void run() {
+        workload.run();
+    }
+}
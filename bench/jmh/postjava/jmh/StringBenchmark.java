@@ -0,0 +1,39 @@
+package postjava.jmh;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Throughput of taking and patching a 100 byte interval of a 64 KB string.
+ * @author Aaron Howe
+ * @version Java 11
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class StringBenchmark {
+
+    @Param({"getinterval", "putinterval"})
+    public String operation;
+
+    private Runnable workload;
+
+    /**
+     * Builds the workload for the current parameters.
+     */
+    @Setup
+    public void setUp() {
+        workload = Workload.of(operation, "dyn", 1);
+    }
+
+    /**
+     * Runs the operation once.
+     */
+    @Benchmark
+    public void run() {
+        workload.run();
+    }
+}
@@ -0,0 +1,47 @@
+package postjava.jmh;
+
+/**
+ * Reaches the workloads defined by BenchWorkloads. The interpreter's classes are in the unnamed package,
+ * which code in a named package cannot refer to, so the workload factory is looked up by name.
+ * @author Aaron Howe
+ * @version Java 11
+ */
+final class Workload {
+
+    /**
+     * Not instantiable.
+     */
+    private Workload() {
+    }
+
+    /**
+     * Builds a workload.
+     * @param name Operation to measure, see BenchWorkloads.workload().
+     * @param scope dyn or lex.
+     * @param depth Number of dictionaries on the dictionary stack for the dictionary workloads.
+     * @return Operation to run once per benchmark invocation.
+     * @throws IllegalStateException when BenchWorkloads is not on the class path.
+     */
+    static Runnable of(String name, String scope, int depth) {
+        return of(name, scope, depth, "interpreted");
+    }
+
+    /**
+     * Builds a workload running programs in a given tier.
+     * @param name Operation to measure, see BenchWorkloads.workload().
+     * @param scope dyn or lex.
+     * @param depth Number of dictionaries on the dictionary stack for the dictionary workloads.
+     * @param tier interpreted or compiled.
+     * @return Operation to run once per benchmark invocation.
+     * @throws IllegalStateException when BenchWorkloads is not on the class path.
+     */
+    static Runnable of(String name, String scope, int depth, String tier) {
+        try {
+            return (Runnable) Class.forName("BenchWorkloads")
+                .getMethod("workload", String.class, String.class, int.class, String.class)
+                .invoke(null, name, scope, depth, tier);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot build workload " + name + ".", e);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+#!/bin/bash
+# Compiles the interpreter together with the JMH benchmarks and runs them with the allocation profiler.
+# Needs the JMH jars in lib/jmh (see the README). Extra arguments go to JMH, e.g. a benchmark name regex
+# such as `Dictionary` or options such as `-f 1 -wi 3`.
+
+SCRIPT_PATH=$(readlink -f "$0")
+PROJECT_DIR=$(dirname "$(dirname "$(dirname "$SCRIPT_PATH")")")
+OUT_DIR="${PROJECT_DIR}/bin/jmh"
+
+if ! ls "${PROJECT_DIR}"/lib/jmh/jmh-core-*.jar > /dev/null 2>&1; then
+    echo "JMH jars not found in ${PROJECT_DIR}/lib/jmh"
+    exit 1
+fi
+
+rm -rf "${OUT_DIR}"
+mkdir -p "${OUT_DIR}"
+
+# the JMH annotation processor on the class path generates the benchmark harness
+javac -cp "${PROJECT_DIR}/lib/jmh/*" -d "${OUT_DIR}" "${PROJECT_DIR}"/main/*.java "${PROJECT_DIR}"/src/*.java \
+    "${PROJECT_DIR}"/bench/jmh/*.java "${PROJECT_DIR}"/bench/jmh/postjava/jmh/*.java
+
+if [ $? -eq 0 ]; then
+    java -cp "${PROJECT_DIR}/lib/jmh/*:${OUT_DIR}" org.openjdk.jmh.Main -prof gc "$@"
+else
+    echo "Compilation Error"
+fi
@@ -1,333 +1,141 @@
 import java.util.*;
 
 /**
- * Entry point for `PostJava`, a command-line interpreter for PostScript written in the Java programming language. 
- * This application handles not all, but a strong set of operations for PostScript.
+ * Entry point for `PostJava`, a command-line interpreter for PostScript written in the Java programming language.
+ * This application handles not all, but a strong set of operations for PostScript. The interpreter itself
+ * lives in MyInterpreter, this class only runs files or the interactive prompt around one session of it.
  * @Author Aaron Howe
  * @version Java 11
  */
 public class Main {
 
-    // class references
-    private static MyStack stack;
-    private static MyArithmetic arith;
-    private static MyDictionary dict;
-    private static MyString string;
-    private static MyBoolean bool;
-    private static MyFlowControl flow;
-    private static MyIO io;
-    // string builder for function procedures
-    private static StringBuilder procedure = null;
-    // stores curly brace tokens
-    private static int symbolCount;
-
     /**
      * Main application entry method for PostJava.
      * @param args String array of command-line arguments.
      */
     public static void main(String[] args) {
-        stack = new MyStack();
-        arith = new MyArithmetic(stack);
-        bool = new MyBoolean(stack);
-        dict = new MyDictionary(stack);
-        flow = new MyFlowControl(stack);
-        io = new MyIO(stack);
-        string = new MyString(stack);
+        // options come before the file names
+        boolean background = false;
+        boolean compiling = false;
+        boolean verifying = false;
+        int jobs = 0;
+        String mode = null;
+        java.nio.file.Path socket = MyDaemon.defaultSocket();
+        int first = 0;
+        for (; first < args.length && args[first].startsWith("--"); first++) {
+            if (args[first].equals("--async-output")) {
+                background = true;
+            } else if (args[first].equals("--compile")) {
+                compiling = true;
+            } else if (args[first].equals("--verify")) {
+                verifying = true;
+            } else if (args[first].equals("--jobs") && first + 1 < args.length && args[first + 1].matches("[1-9][0-9]*")) {
+                jobs = Integer.parseInt(args[++first]);
+            } else if (args[first].equals("--daemon") || args[first].equals("--client")) {
+                mode = args[first];
+            } else if (args[first].equals("--socket") && first + 1 < args.length) {
+                socket = java.nio.file.Paths.get(args[++first]);
+            } else {
+                System.err.println("Unknown option " + args[first] + ".");
+                System.exit(2);
+            }
+        }
+        // the daemon serves scripts until it is killed, the client hands its scripts to the daemon
+        if (mode != null) {
+            try {
+                if (mode.equals("--daemon")) {
+                    MyDaemon.serve(socket);
+                }
+                System.exit(MyClient.run(socket, Arrays.copyOfRange(args, first, args.length)));
+            } catch (java.io.IOException e) {
+                System.err.println("Exception: " + e.getMessage());
+                System.exit(2);
+            }
+        }
+        if (jobs > 0) {
+            runBatch(new MyBatch(jobs, compiling, verifying), Arrays.copyOfRange(args, first, args.length),
+                MyOutput.standardOutput(background));
+            return;
+        }
+        MyInterpreter interpreter = new MyInterpreter(MyOutput.standardOutput(background), compiling);
+        interpreter.setVerifying(verifying);
+        MyOutput output = interpreter.output();
+
+        // scripts named on the command line are streamed and executed without a prompt
+        if (first < args.length) {
+            for (String path : Arrays.copyOfRange(args, first, args.length)) {
+                try {
+                    interpreter.runFile(path);
+                } catch (Exception e) {
+                    // whatever the script printed before failing comes out ahead of the error
+                    output.close();
+                    System.err.println("Exception: " + e.getMessage());
+                    System.exit(1);
+                }
+                if (interpreter.terminated()) {
+                    break;
+                }
+            }
+            output.close();
+            return;
+        }
 
         Scanner sc = new Scanner(System.in);
         boolean invoked = true;
-        
-        while (invoked && !flow.terminated()) {
-            if (procedure != null) {
-                System.out.print(">");
+
+        while (invoked && !interpreter.terminated()) {
+            if (interpreter.pending()) {
+                output.print(">");
             } else {
                 // stores a symbol representation of the scope being used by the interpreter
-                String scope = dict.getScope() ? "D" : "L";
+                String scope = interpreter.dictionary().getScope() ? "D" : "L";
                 // display the prompt with scope symbol and stack countj
-                System.out.printf("[PJ:%s > %d] ", scope, stack.count());
+                output.print("[PJ:" + scope + " > ");
+                output.print(interpreter.stack().count());
+                output.print("] ");
             }
+            // everything written so far has to be visible before waiting for input
+            output.flush();
             String input = sc.nextLine().trim();
             if (input.isEmpty()) {
                 continue;
             }
             try {
-                procedureBuilder(input);
+                interpreter.evaluate(input);
             } catch (Exception e) {
+                output.flush();
                 System.err.println("Exception: " + e.getMessage());
-                procedure = null;
-                symbolCount = 0;
+                interpreter.reset();
             }
         }
+        // quitting flushes whatever the last line printed
+        output.close();
         sc.close();
     }
 
     /**
-     * Local helper function to for constructing, parsing, and executing procedural operations.
-     * @param input User input.
-     */
-    private static void procedureBuilder(String input) {
-        String[] tokens = input.trim().split("\\s+");
-        for (String token : tokens) {
-            if (procedure != null) {
-                // identifies an entry brace, increases the count
-                if (token.equals("{")) {
-                    symbolCount++;
-                // identifies an exit brace, decreases the count
-                } else if (token.equals("}")) {
-                    symbolCount--;
-                }
-                procedure.append(token).append(" ");
-                if (symbolCount == 0) {
-                    // instantiate a string of the procedure's tokens
-                    String buildProc = procedure.toString().trim();
-                    // execute procedure
-                    Runnable executeProc = new RunProcedure(buildProc, dict);
-                    stack.push(executeProc);
-                    procedure = null;
-                }
-                continue;
-            }
-            // populates the StringBuilder object when an entry brace is first identified
-            if (token.equals("{")) {
-                procedure = new StringBuilder();
-                symbolCount = 1;
-                procedure.append(token).append(" ");
-                continue;
-            }
-            scannerHelper(token);
-        }
-    }
-
-    /**
-     * Local helper function to process command-line input from the user.
-     * @param command command-line input.
+     * Runs files in parallel, each in its own session, taking the list of files from standard input, one per
+     * line, when none are named on the command line. Exits with status 1 if any of them failed.
+     * @param batch Batch to run the files in, set up with the options given.
+     * @param paths Files named on the command line.
+     * @param output Sink for standard output.
      */
-    private static void scannerHelper(String command) {
-        // for input as variable or function def
-        if (command.startsWith("/")) {
-            stack.push(command.substring(1));
-            return;
-        }
-        // for input as numbers
-        try {
-            if (command.contains(".")) {
-                stack.push(Double.parseDouble(command));
-            } else {
-                stack.push(Integer.parseInt(command));
-            }
-            return;
-        } catch (NumberFormatException e) {
-            // fetch function/variable
-            Object element = dict.defHelper(command);
-            if (element != null) {
-                // function execution
-                if (element instanceof Runnable) {
-                    ((Runnable)element).run();
-                    return;
+    private static void runBatch(MyBatch batch, String[] paths, MyOutput output) {
+        List<String> files = new ArrayList<>(Arrays.asList(paths));
+        if (files.isEmpty()) {
+            Scanner sc = new Scanner(System.in);
+            while (sc.hasNextLine()) {
+                String line = sc.nextLine().trim();
+                if (!line.isEmpty()) {
+                    files.add(line);
                 }
-                // push variable if not function
-                stack.push(element);
-                return;
             }
         }
-
-        // for input as PostScript command operations
-        switch (command.toLowerCase()) {
-            case "exch":
-                stack.exch();
-                break;
-            case "pop":
-                stack.pop();
-                break;
-            case "copy":
-                stack.copy();
-                break;
-            case "dup":
-                stack.dup();
-                break;
-            case "clear":
-                stack.clear();
-                break;
-            case "count":
-                stack.count();
-                break;
-            case "add":
-                arith.add();
-                break;
-            case "sub":
-                arith.sub();
-                break;
-            case "mul":
-                arith.mul();
-                break;
-            case "div":
-                arith.div();
-                break;
-            case "idiv":
-                arith.iDiv();
-                break;
-            case "mod":
-                arith.mod();
-                break;
-            case "abs":
-                arith.abs();
-                break;
-            case "neg":
-                arith.neg();
-                break;
-            case "ceiling":
-                arith.ceiling();
-                break;
-            case "floor":
-                arith.floor();
-                break;
-            case "round":
-                arith.round();
-                break;
-            case "sqrt":
-                arith.sqrt();
-                break;
-            case "dict":
-                dict.dict();
-                break;
-            case "maxlength":
-                dict.maxLength();
-                break;
-            case "begin":
-                dict.begin();
-                break;
-            case "end":
-                dict.end();
-                break;
-            case "def":
-                dict.def();
-                break;
-            case "dyn":
-                dict.dyn();
-                break;
-            case "lex":
-                dict.lex();
-                break;
-            // length contains extra logic to account for its ambiguity 
-            case "length":
-                Object operand = stack.peek();
-                // call length on dict if the operand at the top of the stack is a Map
-                if (operand instanceof Map) {
-                    dict.length();
-                // or call length on string if the operand at the top of the stack is a String
-                } else if (operand instanceof String) {
-                    string.length();
-                } else {
-                    throw new IllegalArgumentException("length can only be called on strings or dictionaries");
-                }
-                break;
-            case "get":
-                string.get();
-                break;
-            case "getinterval":
-                string.getInterval();
-                break;
-            case "putinterval":
-                string.putInterval();
-                break;
-            case "eq":
-                bool.isEqual();
-                break;
-            case "ne":
-                bool.notEqual();
-                break;
-            case "gt":
-                bool.greaterThan();
-                break;
-            case "lt":
-                bool.lessThan();
-                break;
-            case "ge":
-                bool.greaterThanOrEqualTo();
-                break;
-            case "le":
-                bool.lessThanOrEqualTo();
-                break;
-            case "and":
-                bool.and();
-                break;
-            case "or":
-                bool.or();
-                break;
-            case "not":
-                bool.not();
-                break;
-            case "true":
-                bool.psTrue();
-                break;
-            case "false":
-                bool.psFalse();
-                break;
-            case "if":
-                flow.ifCondition();
-                break;
-            case "ifelse":
-                flow.ifElseCondition();
-                break;
-            case "for":
-                flow.forLoop();
-                break;
-            case "repeat":
-                flow.repeat();
-                break;
-            case "quit":
-                flow.quit();
-                break;
-            case "print":
-                io.print();
-                break;
-            case "=":
-                io.printElement();
-                break;
-            case "==":
-                io.printArray();
-                break;
-            default:
-                // string literal
-                if (command.startsWith("(") && command.endsWith(")")) {
-                    stack.push(command.substring(1, command.length() - 1));
-                } else {
-                    throw new IllegalArgumentException("Error: Command Not Recognized.");
-                }
-        }
-    }
-
-    /**
-     * Inner-class that servers to implement the Runnable interface for instantiation and procedural execution.
-     */
-    private static class RunProcedure implements Runnable {
-
-        private final String[] tokens;
-        private final MyDictionary dict;
-
-        /**
-         * Constructor
-         * @param buildProc String procedure in execution.
-         * @param dict Dictionary stack.
-         */
-        public RunProcedure(String buildProc, MyDictionary dict) {
-            this.tokens = buildProc.substring(1, buildProc.length() - 1).trim().split("\\s+");
-            this.dict = dict;
-        }
-        /**
-         * Heart of the thread, defining the code for execution at its start.
-         */
-        @Override
-        public void run() {
-            Runnable originalProc = dict.getProc();
-            dict.setProc(this);
-            try {
-                for (String token : tokens) {
-                    scannerHelper(token);
-                }
-            } finally {
-                dict.setProc(originalProc);
-            }
+        int failures = batch.run(files, output, System.err);
+        output.close();
+        if (failures > 0) {
+            System.err.println(failures + " of " + files.size() + " scripts failed.");
+            System.exit(1);
         }
     }
-}
\ No newline at end of file
+}
@@ -22,12 +22,8 @@ public class MyArithmetic {
      * @throws InputMismatchException when the given operand is not a numerical value.
      */
     public double operand() {
-        Object operand = stack.pop();
         // check if the operand is numeric and return as such
-        if (operand instanceof Number) {
-            return ((Number) operand).doubleValue();
-        }
-        throw new InputMismatchException("Operand must be a number.");
+        return stack.popReal();
     }
 
     /**
@@ -36,44 +32,70 @@ public class MyArithmetic {
      * @throws InputMismatchException when the given operand is not an integer.
      */
     public int iOperand() {
-        Object operand = stack.pop();
-        if (operand instanceof Number) {
-            double num = ((Number) operand).doubleValue();
-            if (num == Math.floor(num) && !Double.isInfinite(num)) {
-                return ((Number) operand).intValue();
-            }
-            else {
-                throw new InputMismatchException();
+        byte tag = stack.peekTag(0);
+        if (tag == MyStack.INT) {
+            return stack.popInt();
+        }
+        if (tag == MyStack.REAL) {
+            double num = stack.popReal();
+            if (isWhole(num)) {
+                return (int) num;
             }
+            throw new InputMismatchException();
         }
+        stack.pop();
         throw new InputMismatchException();
     }
 
     /**
-     * Additional helper function that determines if operand values are numeric or explicit integers so arithmetic operations compute a result
-     * dependent on the data types of their operands.
-     * @param op1 operand operand
-     * @param op2 Second operand
-     * @return True if the operands are integers, false if the operands are doubles.
+     * Additional helper function that determines if a value is a whole number, so arithmetic operations on reals
+     * holding whole numbers compute an integer result.
+     * @param value Value to check.
+     * @return True if the value has no fractional part.
+     */
+    static boolean isWhole(double value) {
+        return value == Math.floor(value) && !Double.isInfinite(value);
+    }
+
+    /**
+     * Fetches an operand that must hold an integer for integer division.
+     * @return Operand from the stack as type int.
+     * @throws ArithmeticException when the operand is not a whole number.
      */
-    private boolean isInt(Number op1, Number op2) {
-        double val1 = op1.doubleValue();
-        double val2 = op2.doubleValue();
-        return val1 == Math.floor(val1) && val2 == Math.floor(val2) && !Double.isInfinite(val1) && !Double.isInfinite(val2);
+    private int divisionOperand() {
+        byte tag = stack.peekTag(0);
+        if (tag == MyStack.INT) {
+            return stack.popInt();
+        }
+        if (tag == MyStack.REAL) {
+            double num = stack.popReal();
+            if (num == (int) num) {
+                return (int) num;
+            }
+        } else {
+            stack.pop();
+        }
+        throw new ArithmeticException("Operand should be an integer type.");
     }
 
     /**
      * Evaluates the combination of two values.
      */
     public void add() {
-        Number first = operand();
-        Number second = operand();
+        // both operands are integers, the common case needs no conversion
+        if (stack.intsOnTop(2)) {
+            int first = stack.popInt();
+            stack.pushInt(stack.popInt() + first);
+            return;
+        }
+        double first = operand();
+        double second = operand();
         // check if the operands are integers (no decimals) and return the sum as an integer
-        if (isInt(second, first)) {
-            stack.push(second.intValue() + first.intValue());
+        if (isWhole(second) && isWhole(first)) {
+            stack.pushInt((int) second + (int) first);
         // if the operands are not both integer types, return the sum as double
         } else {
-            stack.push(second.doubleValue() + first.doubleValue());
+            stack.pushReal(second + first);
         }
     }
 
@@ -81,12 +103,17 @@ public class MyArithmetic {
      * Evaluates the difference of two values.
      */
     public void sub() {
-        Number first = operand();
-        Number second = operand();
-        if (isInt(second, first)) {
-            stack.push(second.intValue() - first.intValue());
+        if (stack.intsOnTop(2)) {
+            int first = stack.popInt();
+            stack.pushInt(stack.popInt() - first);
+            return;
+        }
+        double first = operand();
+        double second = operand();
+        if (isWhole(second) && isWhole(first)) {
+            stack.pushInt((int) second - (int) first);
         } else {
-            stack.push(second.doubleValue() - first.doubleValue());
+            stack.pushReal(second - first);
         }
     }
 
@@ -94,12 +121,17 @@ public class MyArithmetic {
      * Evaluates the product of two values.
      */
     public void mul() {
-        Number first = operand();
-        Number second = operand();
-        if (isInt(second, first)) {
-            stack.push(second.intValue() * first.intValue());
+        if (stack.intsOnTop(2)) {
+            int first = stack.popInt();
+            stack.pushInt(stack.popInt() * first);
+            return;
+        }
+        double first = operand();
+        double second = operand();
+        if (isWhole(second) && isWhole(first)) {
+            stack.pushInt((int) second * (int) first);
         } else {
-            stack.push(second.doubleValue() * first.doubleValue());
+            stack.pushReal(second * first);
         }
     }
 
@@ -108,33 +140,24 @@ public class MyArithmetic {
      * @throws ArithmeticException when there is a division by zero.
      */
     public void div() {
-        Number first = operand();
-        if (first.doubleValue() == 0) {
+        double first = operand();
+        if (first == 0) {
             throw new ArithmeticException("Undefined");
         }
-        Number second = operand();
-        double quotient = second.doubleValue() / first.doubleValue();
-        stack.push(Double.valueOf(quotient));
+        double second = operand();
+        stack.pushReal(second / first);
     }
 
     /**
      * Evaluates the quotient of two integer values.
      */
     public void iDiv() {
-        Object first = stack.pop();
-        if (!(first instanceof Number) || ((Number)first).doubleValue() != ((Number)first).intValue()) {
-            throw new ArithmeticException("Operand should be an integer type.");
-        }
-        int divisor = ((Number)first).intValue();
+        int divisor = divisionOperand();
         if (divisor == 0) {
             throw new ArithmeticException("Undefined");
         }
-        Object second = stack.pop();
-        if (!(second instanceof Number) || ((Number)second).doubleValue() != ((Number)second).intValue()) {
-            throw new ArithmeticException("Operand should be an integer type.");
-        }
-        int dividend = ((Number)second).intValue();
-        stack.push(dividend / divisor);
+        int dividend = divisionOperand();
+        stack.pushInt(dividend / divisor);
     }
 
     /**
@@ -142,20 +165,12 @@ public class MyArithmetic {
      * @throws ArithmeticException when there is a division by zero.
      */
     public void mod() {
-        Object first = stack.pop();
-        if (!(first instanceof Number) || ((Number)first).doubleValue() != ((Number)first).intValue()) {
-            throw new ArithmeticException("Operand should be an integer type.");
-        }
-        int divisor = ((Number)first).intValue();
+        int divisor = divisionOperand();
         if (divisor == 0) {
             throw new ArithmeticException("Undefined");
         }
-        Object second = stack.pop();
-        if (!(second instanceof Number) || ((Number)second).doubleValue() != ((Number)second).intValue()) {
-            throw new ArithmeticException("Operand should be an integer type.");
-        }
-        int dividend = ((Number)second).intValue();
-        stack.push(dividend % divisor);
+        int dividend = divisionOperand();
+        stack.pushInt(dividend % divisor);
     }
 
     /**
@@ -163,24 +178,15 @@ public class MyArithmetic {
      * @throws InputMismatchException when the provided operand is not a numeric type.
      */
     public void abs() {
-        Object operand = stack.pop();
-        // if operand is type Integer
-        if (operand instanceof Integer) {
-            stack.push(Math.abs((Integer)operand));
-        // if operand is type Double
-        } else if (operand instanceof Double) {
-            stack.push(Double.valueOf(Math.abs((Double)operand)));
-        // if operand is type Number
-        } else if (operand instanceof Number) {
-            double num = ((Number)operand).doubleValue();
-            // if Number is a whole number, cast to int
-            if (num == Math.floor(num) && !Double.isInfinite(num)) {
-                stack.push(Math.abs((int)num));
-            // otherwise cast to double
-            } else {
-                stack.push(Double.valueOf(Math.abs(num)));
-            }
+        byte tag = stack.peekTag(0);
+        // if operand is an integer
+        if (tag == MyStack.INT) {
+            stack.pushInt(Math.abs(stack.popInt()));
+        // if operand is a real
+        } else if (tag == MyStack.REAL) {
+            stack.pushReal(Math.abs(stack.popReal()));
         } else {
+            stack.pop();
             throw new InputMismatchException("Operand should be a numeric type.");
         }
     }
@@ -190,24 +196,15 @@ public class MyArithmetic {
      * @throws InputMismatchException when the provided operand is not a numeric type.
      */
     public void neg() {
-        Object operand = stack.pop();
-        // if operand is type Integer
-        if (operand instanceof Integer) {
-            stack.push(-(Integer)operand);
-        // if operand is type Double
-        } else if (operand instanceof Double) {
-            stack.push(Double.valueOf(-(Double)operand));
-        // if operand is type Number
-        } else if (operand instanceof Number) {
-            double num = ((Number)operand).doubleValue();
-            // if Number is a whole number, cast to int
-            if (num == Math.floor(num) && !Double.isInfinite(num)) {
-                stack.push(-(int)num);
-            // otherwise cast to double
-            } else {
-                stack.push(Double.valueOf(-num));
-            }
+        byte tag = stack.peekTag(0);
+        // if operand is an integer
+        if (tag == MyStack.INT) {
+            stack.pushInt(-stack.popInt());
+        // if operand is a real
+        } else if (tag == MyStack.REAL) {
+            stack.pushReal(-stack.popReal());
         } else {
+            stack.pop();
             throw new InputMismatchException("Operand should be a numeric type.");
         }
     }
@@ -216,38 +213,32 @@ public class MyArithmetic {
      * Rounds a given operand `up` to the nearest whole number.
      */
     public void ceiling() {
-        Number operand = operand();
         // if the operand is an integer, then it is already at its whole number ceiling
-        if (operand instanceof Integer) {
-            stack.push(operand.intValue());
-        } else {
-            // cast the result of .ceil() to an integer
-            stack.push((int)Math.ceil(operand.doubleValue()));
+        if (stack.intsOnTop(1)) {
+            return;
         }
+        // cast the result of .ceil() to an integer
+        stack.pushInt((int)Math.ceil(operand()));
     }
 
     /**
      * Rounds a given operand `down` to the nearest whole number.
      */
     public void floor() {
-        Number operand = operand();
-        if (operand instanceof Integer) {
-            stack.push(operand.intValue());
-        } else {
-            stack.push((int)Math.floor(operand.doubleValue()));
+        if (stack.intsOnTop(1)) {
+            return;
         }
+        stack.pushInt((int)Math.floor(operand()));
     }
 
     /**
      * Rounds a given operand to the nearest whole number.
      */
     public void round() {
-        Number operand = operand();
-        if (operand instanceof Integer) {
-            stack.push(operand.intValue());
-        } else {
-            stack.push((int)Math.round(operand.doubleValue()));
+        if (stack.intsOnTop(1)) {
+            return;
         }
+        stack.pushInt((int)Math.round(operand()));
     }
 
     /**
@@ -255,13 +246,11 @@ public class MyArithmetic {
      * @throws ArithmeticException when a given operand is negatively signed.
      */
     public void sqrt() {
-        Number operand = operand();
-        double num = operand.doubleValue();
+        double num = operand();
         // checking if the operand's value is negative
         if (num < 0) {
             throw new ArithmeticException("Negatively signed values cannot be square rooted.");
         }
-        double rooted = Math.sqrt(num);
-        stack.push(Double.valueOf(rooted));
+        stack.pushReal(Math.sqrt(num));
     }
 }
\ No newline at end of file
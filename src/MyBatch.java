@@ -0,0 +1,122 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Runs many PostScript files in one JVM, each in its own interpreter session, spread over a work-stealing
+ * pool of threads. A script's output is collected in memory and written out in the order the files were
+ * given, as soon as every file ahead of it has finished, so the combined output is the same as running
+ * them one after another. A failing script is reported after its output and the rest of the batch goes on.
+ * @author Aaron Howe
+ * @version Java 11
+ */
+public class MyBatch {
+
+    // scripts are usually small, so each session starts with a small output buffer that grows as needed
+    private static final int SCRIPT_BUFFER_SIZE = 8 * 1024;
+
+    private final int jobs;
+    // options every session is started with, as Main starts a single one
+    private final boolean compiling;
+    private final boolean verifying;
+
+    /**
+     * Constructor, running scripts in sessions that interpret procedures.
+     * @param jobs Number of scripts run at the same time.
+     * @throws IllegalArgumentException when jobs is less than one.
+     */
+    public MyBatch(int jobs) {
+        this(jobs, false, false);
+    }
+
+    /**
+     * Constructor.
+     * @param jobs Number of scripts run at the same time.
+     * @param compiling True to compile hot procedures into hidden classes, see MyInterpreter.
+     * @param verifying True to verify register blocks, see MyInterpreter.setVerifying().
+     * @throws IllegalArgumentException when jobs is less than one.
+     */
+    public MyBatch(int jobs, boolean compiling, boolean verifying) {
+        if (jobs < 1) {
+            throw new IllegalArgumentException("Error: --jobs requires a positive number of jobs.");
+        }
+        this.jobs = jobs;
+        this.compiling = compiling;
+        this.verifying = verifying;
+    }
+
+    /**
+     * Runs the scripts, writing their output in order.
+     * @param paths Paths of the scripts.
+     * @param output Sink every script's output is copied to.
+     * @param errors Stream failures are reported on.
+     * @return Number of scripts that failed.
+     */
+    public int run(List<String> paths, MyOutput output, PrintStream errors) {
+        ForkJoinPool pool = new ForkJoinPool(jobs);
+        try {
+            List<ForkJoinTask<Result>> results = new ArrayList<>(paths.size());
+            for (String path : paths) {
+                results.add(pool.submit(() -> runScript(path)));
+            }
+            int failures = 0;
+            for (int i = 0; i < results.size(); i++) {
+                Result result = results.get(i).join();
+                // written out scripts can be collected while later ones are still running
+                results.set(i, null);
+                output.write(result.output, 0, result.output.length);
+                if (result.error != null) {
+                    // the error comes out after whatever the script printed before failing
+                    output.flush();
+                    errors.println("Exception in " + paths.get(i) + ": " + result.error);
+                    failures++;
+                }
+            }
+            return failures;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Runs a single script in a fresh session.
+     * @param path Path of the script.
+     * @return Output of the script, and the reason it failed if it did.
+     */
+    private Result runScript(String path) {
+        ByteArrayOutputStream captured = new ByteArrayOutputStream(SCRIPT_BUFFER_SIZE);
+        MyInterpreter interpreter = new MyInterpreter(new MyOutput(captured, SCRIPT_BUFFER_SIZE), compiling);
+        interpreter.setVerifying(verifying);
+        String error = null;
+        try {
+            interpreter.runFile(path);
+        } catch (Exception e) {
+            error = e.getMessage();
+        } catch (StackOverflowError e) {
+            // runaway recursion only takes down its own script
+            error = "Error: Stack overflow.";
+        }
+        interpreter.output().flush();
+        return new Result(captured.toByteArray(), error);
+    }
+
+    /**
+     * Output of a finished script.
+     */
+    private static final class Result {
+
+        final byte[] output;
+        // message of the exception that stopped the script, or null if it ran to the end
+        final String error;
+
+        /**
+         * Constructor.
+         * @param output Bytes the script wrote.
+         * @param error Reason the script failed, or null.
+         */
+        Result(byte[] output, String error) {
+            this.output = output;
+            this.error = error;
+        }
+    }
+}
@@ -24,33 +24,68 @@ public class MyBoolean {
      * @throws InputMismatchException when the operators in comparison are not of equal type and are not string or numeric.
      */
     private int comparisonHelper(Object op1, Object op2) {
+        // names are interned, so the same name is always the same object
+        if (op1 instanceof PSName && op1 == op2) {
+            return 0;
+        }
+        // otherwise names compare by their text, like strings
+        if (op1 instanceof PSName) {
+            op1 = op1.toString();
+        }
+        if (op2 instanceof PSName) {
+            op2 = op2.toString();
+        }
         if (op1 instanceof Number && op2 instanceof Number) {
             double val1 = ((Number) op1).doubleValue();
             double val2 = ((Number) op2).doubleValue();
             return Double.compare(val1, val2);
-        } else if (op1 instanceof String && op2 instanceof String) {
-            return ((String) op1).compareTo((String) op2);
+        } else if (op1 instanceof PSString && op2 instanceof PSString) {
+            return ((PSString) op1).compareTo((PSString) op2);
+        } else if (op1 instanceof CharSequence && op2 instanceof CharSequence) {
+            return op1.toString().compareTo(op2.toString());
         } else {
             throw new InputMismatchException("Type Error: Only compare numbers with numbers and strings with strings.");
         }
     }
 
     /**
-     * Determines if two elements are equal in value.
+     * Pops two operands and compares them, comparing numbers without boxing them.
+     * @return Result of comparing the deeper operand with the top operand.
      * @throws EmptyStackException when the stack doesn't contain at least two elements to compare.
      */
-    public void isEqual() {
+    private int compareOperands() {
         if (stack.count() < 2) {
             throw new EmptyStackException();
         }
+        if (stack.numbersOnTop(2)) {
+            double first = stack.popReal();
+            double second = stack.popReal();
+            return Double.compare(second, first);
+        }
         Object first = stack.pop();
         Object second = stack.pop();
+        return comparisonHelper(second, first);
+    }
+
+    /**
+     * Checks whether the two top operands are both booleans.
+     * @return True if the two top elements are booleans.
+     */
+    private boolean booleansOnTop() {
+        return stack.count() >= 2 && stack.peekTag(0) == MyStack.BOOL && stack.peekTag(1) == MyStack.BOOL;
+    }
+
+    /**
+     * Determines if two elements are equal in value.
+     * @throws EmptyStackException when the stack doesn't contain at least two elements to compare.
+     */
+    public void isEqual() {
         // check if the operands are boolean types and compare them as such
-        if (second instanceof Boolean && first instanceof Boolean) {
-            stack.push(second.equals(first));
+        if (booleansOnTop()) {
+            stack.pushBool(stack.popBool() == stack.popBool());
             return;
         }
-        stack.push(comparisonHelper(second, first) == 0);
+        stack.pushBool(compareOperands() == 0);
     }
 
     /**
@@ -58,15 +93,11 @@ public class MyBoolean {
      * @throws EmptyStackException when the stack doesn't contain at least two elements to compare.
      */
     public void notEqual() {
-        if (stack.count() < 2) {
-            throw new EmptyStackException();
-        }
-        Object first = stack.pop();
-        Object second = stack.pop();
-        if (second instanceof Boolean && first instanceof Boolean) {
-            stack.push(!second.equals(first));
+        if (booleansOnTop()) {
+            stack.pushBool(stack.popBool() != stack.popBool());
+            return;
         }
-        stack.push(comparisonHelper(second, first) != 0);
+        stack.pushBool(compareOperands() != 0);
     }
 
     /**
@@ -74,12 +105,7 @@ public class MyBoolean {
      * @throws EmptyStackException when the stack doesn't contain at least two element to compare.
      */
     public void greaterThan() {
-        if (stack.count() < 2) {
-            throw new EmptyStackException();
-        }
-        Object first = stack.pop();
-        Object second = stack.pop();
-        stack.push(comparisonHelper(second, first) > 0);
+        stack.pushBool(compareOperands() > 0);
     }
 
     /**
@@ -87,12 +113,7 @@ public class MyBoolean {
      * @throws EmptyStackException when the stack doesn't contain at least two elements to compare.
      */
     public void lessThan() {
-        if (stack.count() < 2) {
-            throw new EmptyStackException();
-        }
-        Object first = stack.pop();
-        Object second = stack.pop();
-        stack.push(comparisonHelper(second, first) < 0);
+        stack.pushBool(compareOperands() < 0);
     }
 
     /**
@@ -100,12 +121,7 @@ public class MyBoolean {
      * @throws EmptyStackException when the stack doesn't contain at least two elements to compare.
      */
     public void greaterThanOrEqualTo() {
-        if (stack.count() < 2) {
-            throw new EmptyStackException();
-        }
-        Object first = stack.pop();
-        Object second = stack.pop();
-        stack.push(comparisonHelper(second, first) >= 0);
+        stack.pushBool(compareOperands() >= 0);
     }
 
     /**
@@ -113,12 +129,7 @@ public class MyBoolean {
      * @throws EmptyStackException when the stack doesn't contain at least two elements to compare.
      */
     public void lessThanOrEqualTo() {
-        if (stack.count() < 2) {
-            throw new EmptyStackException();
-        }
-        Object first = stack.pop();
-        Object second = stack.pop();
-        stack.push(comparisonHelper(second, first) <= 0);
+        stack.pushBool(compareOperands() <= 0);
     }
 
     /**
@@ -130,16 +141,18 @@ public class MyBoolean {
         if (stack.count() < 2) {
             throw new EmptyStackException();
         }
-        Object first = stack.pop();
-        Object second = stack.pop();
         // first check if the two elements to compare boolean types and compare them as such
-        if (second instanceof Boolean && first instanceof Boolean) {
-            stack.push((Boolean)second && (Boolean)first);
+        if (booleansOnTop()) {
+            boolean first = stack.popBool();
+            stack.pushBool(stack.popBool() & first);
         // if they aren't boolean, check if they're numeric and compare them as such
-        } else if (second instanceof Number && first instanceof Number) {
-            stack.push(((Number)second).intValue() & ((Number)first).intValue());
+        } else if (stack.numbersOnTop(2)) {
+            int first = (int) stack.popReal();
+            stack.pushInt((int) stack.popReal() & first);
         // and if they are neither, throw an error
         } else {
+            stack.pop();
+            stack.pop();
             throw new InputMismatchException("Type Error: Only tie booleans with booleans and numbers with numbers.");
         }
     }
@@ -154,13 +167,15 @@ public class MyBoolean {
         if (stack.count() < 2) {
             throw new EmptyStackException();
         }
-        Object first = stack.pop();
-        Object second = stack.pop();
-        if (second instanceof Boolean && first instanceof Boolean) {
-            stack.push((Boolean)second || (Boolean)first);
-        } else if (second instanceof Number && first instanceof Number) {
-            stack.push(((Number)second).intValue() | ((Number)first).intValue());
+        if (booleansOnTop()) {
+            boolean first = stack.popBool();
+            stack.pushBool(stack.popBool() | first);
+        } else if (stack.numbersOnTop(2)) {
+            int first = (int) stack.popReal();
+            stack.pushInt((int) stack.popReal() | first);
         } else {
+            stack.pop();
+            stack.pop();
             throw new InputMismatchException("Type Error: Only compare booleans with booleans and numbers with numbers.");
         }
     }
@@ -174,12 +189,13 @@ public class MyBoolean {
         if (stack.count() < 1) {
             throw new EmptyStackException();
         }
-        Object operand = stack.pop();
-        if (operand instanceof Boolean) {
-            stack.push(!(Boolean)operand);
-        } else if (operand instanceof Number) {
-            stack.push(~((Number)operand).intValue());
+        byte tag = stack.peekTag(0);
+        if (tag == MyStack.BOOL) {
+            stack.pushBool(!stack.popBool());
+        } else if (tag == MyStack.INT || tag == MyStack.REAL) {
+            stack.pushInt(~(int) stack.popReal());
         } else {
+            stack.pop();
             throw new InputMismatchException("Type Error: Only negate operands of numeric or boolean type.");
         }
     }
@@ -188,13 +204,13 @@ public class MyBoolean {
      * Pushes a boolean true onto the operand stack.
      */
     public void psTrue() {
-        stack.push(true);
+        stack.pushBool(true);
     }
 
     /**
      * Pushes a boolean false onto the operand stack.
      */
     public void psFalse() {
-        stack.push(false);
+        stack.pushBool(false);
     }
 }
\ No newline at end of file
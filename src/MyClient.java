@@ -0,0 +1,91 @@
+import java.io.*;
+import java.net.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+
+/**
+ * Thin client for MyDaemon. It sends the scripts to the daemon, or standard input when no scripts are
+ * named, and copies the output streamed back to its own standard output and error. The client does no
+ * interpreting itself, so it loads only a handful of classes and starts quickly.
+ * @author Aaron Howe
+ * @version Java 11
+ */
+public class MyClient {
+
+    /**
+     * Not instantiable.
+     */
+    private MyClient() {
+    }
+
+    /**
+     * Runs scripts on the daemon.
+     * @param socket Path of the daemon's socket.
+     * @param paths Scripts to run, in order; standard input is sent when there are none.
+     * @return Exit status of the request, 2 when no daemon is listening.
+     * @throws IOException when a script cannot be read, the connection fails part way, or the JVM is older
+     * than Java 16.
+     */
+    public static int run(Path socket, String[] paths) throws IOException {
+        SocketAddress address = MyDaemon.address(socket);
+        MyDaemon.privateDirectory(socket, false);
+        SocketChannel connection;
+        try {
+            connection = SocketChannel.open(address);
+        } catch (IOException e) {
+            System.err.println("Error: No daemon is listening on " + socket + ", start one with pj --daemon.");
+            return 2;
+        }
+        try (connection) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(connection)));
+            long total = 0;
+            for (int i = 0; i < Math.max(paths.length, 1); i++) {
+                String name = paths.length == 0 ? "%stdin" : paths[i];
+                byte[] source = paths.length == 0 ? System.in.readAllBytes() : Files.readAllBytes(Paths.get(name));
+                total += source.length;
+                // the daemon would refuse the request, which is told here rather than as a broken connection
+                if (total > MyDaemon.MAX_REQUEST) {
+                    System.err.println("Error: Scripts larger than the daemon's limit of " + MyDaemon.MAX_REQUEST
+                        + " bytes.");
+                    return 1;
+                }
+                send(out, name, source);
+            }
+            out.writeByte(MyDaemon.END);
+            out.flush();
+
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(connection)));
+            OutputStream stdout = new FileOutputStream(FileDescriptor.out);
+            byte[] chunk = new byte[64 * 1024];
+            for (int type = in.read(); type != -1; type = in.read()) {
+                if (type == MyDaemon.EXIT) {
+                    return in.readInt();
+                }
+                OutputStream target = type == MyDaemon.ERR ? System.err : stdout;
+                for (int length = in.readInt(); length > 0; ) {
+                    int count = in.read(chunk, 0, Math.min(length, chunk.length));
+                    if (count < 0) {
+                        throw new EOFException();
+                    }
+                    target.write(chunk, 0, count);
+                    length -= count;
+                }
+                target.flush();
+            }
+        }
+        System.err.println("Error: The daemon closed the connection before the script finished.");
+        return 1;
+    }
+
+    /**
+     * Sends a script frame.
+     * @param name Name of the script for error messages.
+     * @param source Bytes of the script.
+     */
+    private static void send(DataOutputStream out, String name, byte[] source) throws IOException {
+        out.writeByte(MyDaemon.SCRIPT);
+        out.writeUTF(name);
+        out.writeInt(source.length);
+        out.write(source);
+    }
+}
@@ -0,0 +1,241 @@
+import java.io.*;
+import java.lang.invoke.*;
+import java.util.*;
+
+/**
+ * Compiles a sequence of steps, each a MethodHandle taking and returning nothing, into a hidden class whose
+ * run() invokes the steps in order. Every step is loaded with a dynamic constant from the hidden class's data,
+ * so the JIT sees each handle, and the operands bound into it, as a constant and can inline the whole sequence
+ * into run(), which it cannot do through a switch over instructions held in an array.
+ * <p>
+ * The class file is written by hand, it only needs a constant pool, a constructor and run(), which has no
+ * branches and so no stack map frames. Hidden classes with class data came with Java 16, so the method
+ * defining them is looked up rather than linked against, and on older JVMs nothing is compiled and the
+ * interpreter keeps running procedures itself.
+ * @author Aaron Howe
+ * @version Java 11
+ */
+public final class MyCompiler {
+
+    // run() spends 6 bytes of code and 2 constants on each step, this keeps both well inside the class file limits
+    public static final int MAX_STEPS = 8000;
+
+    // constant pool entries shared by every generated class, the per-step entries follow them
+    private static final int THIS_CLASS = 2;
+    private static final int OBJECT_CLASS = 4;
+    private static final int RUNNABLE_CLASS = 6;
+    private static final int INIT_NAME = 7;
+    private static final int VOID_DESCRIPTOR = 8;
+    private static final int OBJECT_INIT = 10;
+    private static final int RUN_NAME = 11;
+    private static final int CODE = 12;
+    private static final int INVOKE_EXACT = 17;
+    private static final int CLASS_DATA_AT = 24;
+    private static final int BOOTSTRAP_METHODS = 25;
+    private static final int STEP_NAME_AND_TYPE = 28;
+    private static final int FIRST_STEP = 29;
+    // Lookup.defineHiddenClassWithClassData(bytes, classData, initialize) with no options, null before Java 16
+    private static final MethodHandle DEFINE_HIDDEN;
+
+    static {
+        MethodHandle define;
+        try {
+            Class<?> option = Class.forName("java.lang.invoke.MethodHandles$Lookup$ClassOption");
+            Class<?> options = java.lang.reflect.Array.newInstance(option, 0).getClass();
+            define = MethodHandles.publicLookup().findVirtual(MethodHandles.Lookup.class,
+                "defineHiddenClassWithClassData", MethodType.methodType(MethodHandles.Lookup.class, byte[].class,
+                Object.class, boolean.class, options));
+            define = MethodHandles.insertArguments(define, 4, java.lang.reflect.Array.newInstance(option, 0));
+        } catch (ReflectiveOperationException e) {
+            define = null;
+        }
+        DEFINE_HIDDEN = define;
+    }
+
+    /**
+     * Not instantiable.
+     */
+    private MyCompiler() {
+    }
+
+    /**
+     * Checks whether the JVM can define the hidden classes procedures are compiled into.
+     * @return True on Java 16 and later.
+     */
+    public static boolean available() {
+        return DEFINE_HIDDEN != null;
+    }
+
+    /**
+     * Compiles steps into a Runnable.
+     * @param lookup Lookup of the class the hidden class is defined next to.
+     * @param steps Handles of type ()void, invoked in order.
+     * @return Instance of the hidden class.
+     * @throws IllegalArgumentException when there are more than MAX_STEPS steps or a step has the wrong type.
+     * @throws IllegalAccessException when the lookup cannot define classes.
+     * @throws IllegalStateException when the JVM is older than Java 16.
+     */
+    public static Runnable compile(MethodHandles.Lookup lookup, List<MethodHandle> steps) throws IllegalAccessException {
+        if (DEFINE_HIDDEN == null) {
+            throw new IllegalStateException("Error: Compiling procedures needs Java 16 or later.");
+        }
+        if (steps.size() > MAX_STEPS) {
+            throw new IllegalArgumentException("Error: Too many steps to compile.");
+        }
+        for (MethodHandle step : steps) {
+            if (!step.type().equals(MethodType.methodType(void.class))) {
+                throw new IllegalArgumentException("Error: Steps take and return nothing.");
+            }
+        }
+        String name = lookup.lookupClass().getPackageName().replace('.', '/');
+        name = (name.isEmpty() ? "" : name + "/") + "MyCompiledProcedure";
+        try {
+            MethodHandles.Lookup hidden = (MethodHandles.Lookup) DEFINE_HIDDEN.invokeExact(lookup,
+                classFile(name, steps.size()), (Object) List.copyOf(steps), true);
+            return (Runnable) hidden.findConstructor(hidden.lookupClass(), MethodType.methodType(void.class)).invoke();
+        } catch (IllegalAccessException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Writes the class file of a final class implementing Runnable, whose run() invokes each element of its
+     * class data in turn.
+     * @param name Internal name of the class.
+     * @param steps Number of steps.
+     * @return Bytes of the class file.
+     */
+    private static byte[] classFile(String name, int steps) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 + 16 * steps);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            // version 55, Java 11, the first with dynamic constants
+            out.writeShort(0);
+            out.writeShort(55);
+            out.writeShort(FIRST_STEP + 2 * steps);
+            utf8(out, name);                                                    // 1
+            reference(out, 7, 1);                                               // 2 this class
+            utf8(out, "java/lang/Object");                                      // 3
+            reference(out, 7, 3);                                               // 4
+            utf8(out, "java/lang/Runnable");                                    // 5
+            reference(out, 7, 5);                                               // 6
+            utf8(out, "<init>");                                                // 7
+            utf8(out, "()V");                                                   // 8
+            pair(out, 12, INIT_NAME, VOID_DESCRIPTOR);                          // 9
+            pair(out, 10, OBJECT_CLASS, 9);                                     // 10 Object.<init>
+            utf8(out, "run");                                                   // 11
+            utf8(out, "Code");                                                  // 12
+            utf8(out, "java/lang/invoke/MethodHandle");                         // 13
+            reference(out, 7, 13);                                              // 14
+            utf8(out, "invokeExact");                                           // 15
+            pair(out, 12, 15, VOID_DESCRIPTOR);                                 // 16
+            pair(out, 10, 14, 16);                                              // 17 MethodHandle.invokeExact
+            utf8(out, "java/lang/invoke/MethodHandles");                        // 18
+            reference(out, 7, 18);                                              // 19
+            utf8(out, "classDataAt");                                           // 20
+            utf8(out, "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/Class;I)Ljava/lang/Object;");
+            pair(out, 12, 20, 21);                                              // 22
+            pair(out, 10, 19, 22);                                              // 23 MethodHandles.classDataAt
+            out.writeByte(15);                                                  // 24 handle invoking it statically
+            out.writeByte(6);
+            out.writeShort(23);
+            utf8(out, "BootstrapMethods");                                      // 25
+            utf8(out, "_");                                                     // 26
+            utf8(out, "Ljava/lang/invoke/MethodHandle;");                       // 27
+            pair(out, 12, 26, 27);                                              // 28
+            for (int i = 0; i < steps; i++) {
+                // the index into the class data, then the dynamic constant loading that element
+                out.writeByte(3);
+                out.writeInt(i);
+                pair(out, 17, i, STEP_NAME_AND_TYPE);
+            }
+
+            out.writeShort(0x0001 | 0x0010 | 0x0020);                         // public final super
+            out.writeShort(THIS_CLASS);
+            out.writeShort(OBJECT_CLASS);
+            out.writeShort(1);
+            out.writeShort(RUNNABLE_CLASS);
+            out.writeShort(0);                                                  // no fields
+
+            out.writeShort(2);
+            // public constructor calling Object's
+            method(out, INIT_NAME, new byte[] {0x2A, (byte) 0xB7, 0, OBJECT_INIT, (byte) 0xB1});
+            // public void run(), a ldc_w and invokevirtual per step, then return
+            byte[] code = new byte[6 * steps + 1];
+            for (int i = 0; i < steps; i++) {
+                int constant = FIRST_STEP + 2 * i + 1;
+                code[6 * i] = 0x13;
+                code[6 * i + 1] = (byte) (constant >> 8);
+                code[6 * i + 2] = (byte) constant;
+                code[6 * i + 3] = (byte) 0xB6;
+                code[6 * i + 4] = 0;
+                code[6 * i + 5] = INVOKE_EXACT;
+            }
+            code[6 * steps] = (byte) 0xB1;
+            method(out, RUN_NAME, code);
+
+            // one bootstrap method per step, MethodHandles.classDataAt with the step's index
+            out.writeShort(1);
+            out.writeShort(BOOTSTRAP_METHODS);
+            out.writeInt(2 + 6 * steps);
+            out.writeShort(steps);
+            for (int i = 0; i < steps; i++) {
+                out.writeShort(CLASS_DATA_AT);
+                out.writeShort(1);
+                out.writeShort(FIRST_STEP + 2 * i);
+            }
+        } catch (IOException e) {
+            // writing to memory does not fail
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes a public method taking and returning nothing, with a stack of one and only `this` as a local.
+     * @param name Constant holding the method's name.
+     * @param code Bytecode of the method.
+     */
+    private static void method(DataOutputStream out, int name, byte[] code) throws IOException {
+        out.writeShort(0x0001);
+        out.writeShort(name);
+        out.writeShort(VOID_DESCRIPTOR);
+        out.writeShort(1);
+        out.writeShort(CODE);
+        out.writeInt(12 + code.length);
+        out.writeShort(1);
+        out.writeShort(1);
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(0);
+        out.writeShort(0);
+    }
+
+    /**
+     * Writes a UTF-8 constant.
+     */
+    private static void utf8(DataOutputStream out, String text) throws IOException {
+        out.writeByte(1);
+        out.writeUTF(text);
+    }
+
+    /**
+     * Writes a constant holding one reference to another constant.
+     */
+    private static void reference(DataOutputStream out, int tag, int index) throws IOException {
+        out.writeByte(tag);
+        out.writeShort(index);
+    }
+
+    /**
+     * Writes a constant holding two references.
+     */
+    private static void pair(DataOutputStream out, int tag, int first, int second) throws IOException {
+        out.writeByte(tag);
+        out.writeShort(first);
+        out.writeShort(second);
+    }
+}
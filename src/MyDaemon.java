@@ -0,0 +1,348 @@
+import java.io.*;
+import java.lang.invoke.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Long-running interpreter server listening on a Unix domain socket, so running a script costs a round
+ * trip to a JIT-warm JVM instead of starting a new one. Every connection carries one request and gets a
+ * fresh MyInterpreter session on a thread of a bounded pool, so requests run side by side without seeing
+ * each other's definitions, and a session stops once its client goes away. MyClient is the other end.
+ * <p>
+ * Messages in both directions are frames of a type byte followed by a payload. The client sends SCRIPT
+ * frames, each holding a script's name and bytes, then an END frame. The daemon runs the scripts in order,
+ * streaming back OUT and ERR frames as the session writes, and finishes with an EXIT frame holding the
+ * exit status the script would have had under Main.
+ * @author Aaron Howe
+ * @version Java 11
+ */
+public class MyDaemon {
+
+    // frame types
+    static final int SCRIPT = 'S';
+    static final int END = 'E';
+    static final int OUT = 'O';
+    static final int ERR = 'R';
+    static final int EXIT = 'X';
+    // output is sent back whenever this much has been written, or the script flushes or ends
+    private static final int FRAME_SIZE = 16 * 1024;
+    // bytes of script a request may hold in all, read into memory before anything runs
+    static final int MAX_REQUEST = 64 * 1024 * 1024;
+    // requests run at once, and requests waiting for one of them to finish before the daemon turns more away
+    private static final int MAX_SESSIONS = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+    private static final int MAX_WAITING = 64;
+    // Unix domain sockets came with Java 16, so they are looked up here rather than linked against, which
+    // keeps everything else building and running on Java 11; both are null on older JVMs
+    private static final MethodHandle UNIX_ADDRESS;
+    private static final MethodHandle OPEN_SERVER;
+
+    static {
+        MethodHandle address = null;
+        MethodHandle open = null;
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> unixAddress = Class.forName("java.net.UnixDomainSocketAddress");
+            address = lookup.findStatic(unixAddress, "of", MethodType.methodType(unixAddress, Path.class))
+                .asType(MethodType.methodType(SocketAddress.class, Path.class));
+            open = MethodHandles.insertArguments(lookup.findStatic(ServerSocketChannel.class, "open",
+                MethodType.methodType(ServerSocketChannel.class, ProtocolFamily.class)), 0,
+                StandardProtocolFamily.valueOf("UNIX"));
+        } catch (ReflectiveOperationException | IllegalArgumentException e) {
+            address = null;
+            open = null;
+        }
+        UNIX_ADDRESS = address;
+        OPEN_SERVER = open;
+    }
+
+    /**
+     * Not instantiable.
+     */
+    private MyDaemon() {
+    }
+
+    /**
+     * Socket used when none is named: pj.sock in the user's runtime directory, $XDG_RUNTIME_DIR, or where
+     * there is none, in a directory pj-&lt;user&gt; of the temporary directory that only the user can enter,
+     * see privateDirectory().
+     * @return Path of the default socket.
+     */
+    public static Path defaultSocket() {
+        String runtime = System.getenv("XDG_RUNTIME_DIR");
+        if (runtime != null && !runtime.isEmpty() && Files.isDirectory(Paths.get(runtime))) {
+            return Paths.get(runtime, "pj.sock");
+        }
+        return Paths.get(System.getProperty("java.io.tmpdir"), "pj-" + System.getProperty("user.name"), "pj.sock");
+    }
+
+    /**
+     * Makes sure the directory holding the default socket in the temporary directory belongs to the user and
+     * that nobody else can enter it, since anyone can create files there and could otherwise put their own
+     * socket where the client looks for the daemon's. Other sockets are left to whoever named them.
+     * @param socket Path of the socket.
+     * @param create True to create the directory when it is missing, as the daemon does.
+     * @throws IOException when the directory is someone else's or others may use it, or cannot be created.
+     */
+    static void privateDirectory(Path socket, boolean create) throws IOException {
+        Path directory = socket.getParent();
+        String runtime = System.getenv("XDG_RUNTIME_DIR");
+        if (!socket.equals(defaultSocket()) || (runtime != null && directory.equals(Paths.get(runtime)))) {
+            return;
+        }
+        if (!directory.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            // without POSIX permissions the temporary directory is the user's own, as it is on Windows
+            if (create) {
+                Files.createDirectories(directory);
+            }
+            return;
+        }
+        if (create && Files.notExists(directory, LinkOption.NOFOLLOW_LINKS)) {
+            try {
+                Files.createDirectory(directory,
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+            } catch (FileAlreadyExistsException e) {
+                // created by another daemon starting at the same time, checked below like any other
+            }
+        }
+        if (Files.notExists(directory, LinkOption.NOFOLLOW_LINKS)) {
+            // no daemon has run yet, the client finds nothing listening
+            return;
+        }
+        PosixFileAttributes attributes = Files.readAttributes(directory, PosixFileAttributes.class,
+            LinkOption.NOFOLLOW_LINKS);
+        UserPrincipal user = directory.getFileSystem().getUserPrincipalLookupService()
+            .lookupPrincipalByName(System.getProperty("user.name"));
+        if (!attributes.isDirectory() || !attributes.owner().equals(user)
+                || !attributes.permissions().equals(PosixFilePermissions.fromString("rwx------"))) {
+            throw new IOException("Error: " + directory + " is not a directory only " + user.getName()
+                + " can use, remove it or pass --socket.");
+        }
+    }
+
+    /**
+     * Address of a Unix domain socket.
+     * @param socket Path of the socket.
+     * @return Address to bind or connect to.
+     * @throws IOException when the JVM is older than Java 16 and has no Unix domain sockets.
+     */
+    static SocketAddress address(Path socket) throws IOException {
+        if (UNIX_ADDRESS == null) {
+            throw new IOException("Error: The daemon and client need Java 16 or later.");
+        }
+        try {
+            return (SocketAddress) UNIX_ADDRESS.invokeExact(socket);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Accepts and serves connections until the process is killed. A socket file left behind by a daemon
+     * that did not shut down cleanly is replaced, one a daemon is still listening on is not.
+     * @param socket Path of the socket to listen on.
+     * @throws IOException when another daemon is listening on the socket, the socket cannot be bound, or the
+     * JVM is older than Java 16.
+     */
+    public static void serve(Path socket) throws IOException {
+        SocketAddress address = address(socket);
+        privateDirectory(socket, true);
+        if (Files.exists(socket, LinkOption.NOFOLLOW_LINKS)) {
+            try (SocketChannel probe = SocketChannel.open(address)) {
+                throw new IOException("Error: A daemon is already listening on " + socket + ".");
+            } catch (ConnectException e) {
+                // nothing answers, the file was left behind
+                Files.deleteIfExists(socket);
+            }
+        }
+        ServerSocketChannel server;
+        try {
+            server = (ServerSocketChannel) OPEN_SERVER.invokeExact();
+        } catch (IOException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+        server.bind(address);
+        // the file is only removed on shutdown while it is still this daemon's, not one that replaced it
+        Object bound = Files.readAttributes(socket, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).fileKey();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                Object current = Files.readAttributes(socket, BasicFileAttributes.class,
+                    LinkOption.NOFOLLOW_LINKS).fileKey();
+                if (bound != null && bound.equals(current)) {
+                    Files.delete(socket);
+                }
+            } catch (IOException e) {
+                // nothing left to report to
+            }
+        }));
+        ExecutorService sessions = new ThreadPoolExecutor(MAX_SESSIONS, MAX_SESSIONS, 0, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(MAX_WAITING), threads("pj-session"));
+        // every running session has one thread waiting for its client to go away
+        ExecutorService watchers = Executors.newFixedThreadPool(MAX_SESSIONS, threads("pj-watch"));
+        System.err.println("PostJava daemon listening on " + socket + ".");
+        while (true) {
+            SocketChannel connection = server.accept();
+            try {
+                sessions.execute(() -> handle(connection, watchers));
+            } catch (RejectedExecutionException e) {
+                refuse(connection);
+            }
+        }
+    }
+
+    /**
+     * Creates daemon threads with a name, so they never keep the JVM from shutting down.
+     * @param name Name of the threads.
+     * @return Thread factory.
+     */
+    private static ThreadFactory threads(String name) {
+        return task -> {
+            Thread thread = new Thread(task, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Turns a request away when the daemon is running and holding as many as it can.
+     * @param connection Connection from a client.
+     */
+    private static void refuse(SocketChannel connection) {
+        try (connection) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(connection)));
+            byte[] bytes = ("Error: The daemon is busy, try again later." + System.lineSeparator()).getBytes();
+            out.writeByte(ERR);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            out.writeByte(EXIT);
+            out.writeInt(1);
+            out.flush();
+        } catch (IOException e) {
+            // the client went away, there is nobody to tell
+        }
+    }
+
+    /**
+     * Serves one request: reads the scripts, runs them in a fresh session, and sends back the output and
+     * exit status. The session is cancelled if the client closes the connection before it finishes.
+     * @param connection Connection from a client.
+     * @param watchers Threads waiting for clients to go away.
+     */
+    private static void handle(SocketChannel connection, ExecutorService watchers) {
+        try (connection) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(connection)));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(connection)));
+            MyOutput output = new MyOutput(new FrameStream(out, OUT), FRAME_SIZE);
+            MyInterpreter interpreter = new MyInterpreter(output);
+            // the whole request is read before anything runs, so a client still sending can never be blocked
+            // behind output it is not reading yet
+            List<String> names = new ArrayList<>();
+            List<byte[]> sources = new ArrayList<>();
+            int status = 0;
+            long total = 0;
+            for (int type = in.read(); type == SCRIPT; type = in.read()) {
+                names.add(in.readUTF());
+                int length = in.readInt();
+                total += length;
+                // the length is checked before anything is allocated for it
+                if (length < 0 || total > MAX_REQUEST) {
+                    status = fail(output, out, "Exception: Error: Request larger than the daemon's limit of "
+                        + MAX_REQUEST + " bytes.");
+                    names.clear();
+                    break;
+                }
+                byte[] source = new byte[length];
+                in.readFully(source);
+                sources.add(source);
+            }
+            // the client sends nothing after its request, so a read only returns once it has closed the
+            // connection, or this session has and the read fails; it reads the channel itself, as its streams
+            // would block the session's writes until the read returned
+            watchers.execute(() -> {
+                try {
+                    connection.read(ByteBuffer.allocate(1));
+                } catch (IOException e) {
+                    // closed here once the session finished
+                }
+                interpreter.cancel();
+            });
+            // scripts run in order like files named on the command line, stopping at the first failure
+            for (int i = 0; i < names.size() && status == 0 && !interpreter.terminated(); i++) {
+                try {
+                    interpreter.runScript(names.get(i), Channels.newChannel(new ByteArrayInputStream(sources.get(i))));
+                } catch (Exception e) {
+                    status = fail(output, out, "Exception: " + e.getMessage());
+                } catch (StackOverflowError e) {
+                    status = fail(output, out, "Exception: Error: Stack overflow.");
+                }
+            }
+            output.flush();
+            out.writeByte(EXIT);
+            out.writeInt(status);
+            out.flush();
+        } catch (IOException | UncheckedIOException e) {
+            // the client went away, there is nobody to tell
+        }
+    }
+
+    /**
+     * Reports a failed script on the client's standard error, after whatever it printed before failing.
+     * @return Exit status of a failed script.
+     */
+    private static int fail(MyOutput output, DataOutputStream out, String message) throws IOException {
+        output.flush();
+        byte[] bytes = (message + System.lineSeparator()).getBytes();
+        out.writeByte(ERR);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        out.flush();
+        return 1;
+    }
+
+    /**
+     * Stream turning everything written to it into frames of one type on the connection.
+     */
+    private static final class FrameStream extends OutputStream {
+
+        private final DataOutputStream out;
+        private final int type;
+
+        /**
+         * Constructor.
+         * @param out Connection to the client.
+         * @param type Type of the frames written.
+         */
+        FrameStream(DataOutputStream out, int type) {
+            this.out = out;
+            this.type = type;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return;
+            }
+            out.writeByte(type);
+            out.writeInt(length);
+            out.write(bytes, offset, length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+    }
+}
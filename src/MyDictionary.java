@@ -1,20 +1,27 @@
 import java.util.*;
 
 /**
- * Associative array of key-value pairs.
+ * Associative array of key-value pairs. Keys given as strings are converted to names on the way in,
+ * so the dictionaries only ever hold interned names and compare them by identity.
  * @author Aaron Howe
  * @version Java 11
  */
 public class MyDictionary {
 
     private final MyStack stack;
-    private final Stack<Map<Object, Object>> dictionaryStack;
-    private final Map<Map<Object, Object>, Integer> capacity;
+    private final Stack<PSDict> dictionaryStack;
     // boolean flag for scope switching (dynamic by default)
     private boolean defaultScope = true;
     private Runnable procedure = null;
-    // storage for variables when in lexical scope
-    private final Map<Runnable, Map<Object, Object>> staticDictionary;
+    // storage for variables when in lexical scope, released along with the procedures that captured them
+    private final Map<Runnable, MyEnvironment> staticDictionary;
+    // lexical view of each level of the dictionary stack, maintained while lexical scoping is on and
+    // rebuilt on demand after it goes stale
+    private List<MyEnvironment> environments;
+    // advanced whenever the set of visible bindings may have changed shape, invalidating cached lookups
+    private int epoch = 1;
+    // visible binding of every key on the dictionary stack, each shadowing the bindings it links to
+    private final Map<Object, Binding> index;
 
     /**
      * Constructor.
@@ -22,12 +29,11 @@ public class MyDictionary {
     public MyDictionary(MyStack stack) {
         this.stack = stack;
         this.dictionaryStack = new Stack<>();
-        this.capacity = new HashMap<>();
-        this.staticDictionary = new HashMap<>();
-        Map<Object, Object> tempDict = new HashMap<>();
-        dictionaryStack.push(tempDict);
+        this.staticDictionary = new WeakHashMap<>();
+        this.index = new HashMap<>();
         // starting temporary dictionary with a default capacity of 32
-        capacity.put(tempDict, 32);
+        PSDict tempDict = new PSDict(32);
+        dictionaryStack.push(tempDict);
     }
 
     /**
@@ -45,10 +51,8 @@ public class MyDictionary {
             if (newCap < 0) {
                 throw new InputMismatchException("Dictionary capacity cannot be negative.");
             }
-            // initialize new dictionary and add it to the operand stack with a default capacity
-            Map<Object, Object> dictionary = new HashMap<>();
-            capacity.put(dictionary, newCap);
-            stack.push(dictionary);
+            // initialize new dictionary presized for its capacity and add it to the operand stack
+            stack.push(new PSDict(newCap));
         } else {
             throw new InputMismatchException("Dictionary capacity must be a number.");
         }
@@ -74,15 +78,9 @@ public class MyDictionary {
      */
     public void maxLength() {
         Object currentDictionary = stack.pop();
-        // check that the object popped from the stack is of type Map
-        if (currentDictionary instanceof Map) {
-            // initialzie new dictionary with state of popped dictionary
-            Map<Object, Object> dictionary = (Map<Object, Object>) currentDictionary;
-            Integer cap = capacity.get(dictionary);
-            if (cap == null) {
-                throw new InputMismatchException("Missing dictionary capacity.");
-            }
-            stack.push(cap);
+        // check that the object popped from the stack is a dictionary
+        if (currentDictionary instanceof PSDict) {
+            stack.pushInt(((PSDict) currentDictionary).capacity());
         } else {
             throw new InputMismatchException("Dictionary must be of type Map.");
         }
@@ -94,8 +92,19 @@ public class MyDictionary {
      */
     public void begin() {
         Object dictionary = stack.pop();
-        if (dictionary instanceof Map) {
-            dictionaryStack.push((Map<Object, Object>) dictionary);
+        if (dictionary instanceof PSDict) {
+            PSDict dict = (PSDict) dictionary;
+            dictionaryStack.push(dict);
+            // the dictionary's keys now shadow any other bindings of the same keys
+            for (Map.Entry<Object, Object> entry : dict.entrySet()) {
+                index.put(entry.getKey(), new Binding(dict, entry.getValue(), index.get(entry.getKey())));
+            }
+            if (!defaultScope && environments != null) {
+                environments.add(environment().putAll(dict));
+            } else {
+                environments = null;
+            }
+            epoch++;
         } else {
             throw new InputMismatchException("Dictionary must be of type Map.");
         }
@@ -107,7 +116,31 @@ public class MyDictionary {
      */
     public void end() {
         if (dictionaryStack.size() > 0) {
-            dictionaryStack.pop();
+            PSDict dict = dictionaryStack.pop();
+            epoch++;
+            if (!defaultScope && environments != null) {
+                environments.remove(environments.size() - 1);
+            } else {
+                environments = null;
+            }
+            // a dictionary begun more than once keeps its keys visible through its other occurrence
+            if (dictionaryStack.contains(dict)) {
+                rebuildIndex();
+                return;
+            }
+            // uncover the bindings the dictionary's keys were shadowing
+            for (Object key : dict.keySet()) {
+                Binding binding = index.get(key);
+                if (binding == null || binding.dict != dict) {
+                    rebuildIndex();
+                    return;
+                }
+                if (binding.next == null) {
+                    index.remove(key);
+                } else {
+                    index.put(key, binding.next);
+                }
+            }
         } else {
             throw new EmptyStackException();
         }
@@ -123,24 +156,213 @@ public class MyDictionary {
             throw new EmptyStackException();
         }
         Object value = stack.pop();
-        Object key = stack.pop();
+        bind(PSName.key(stack.pop()), value);
+    }
+
+    /**
+     * Defines a key known in advance to the value on top of the stack, as def does with the key below it.
+     * @param key Key to define.
+     * @throws EmptyStackException when the stack is empty.
+     */
+    public void def(Object key) {
+        if (stack.count() < 1) {
+            throw new EmptyStackException();
+        }
+        bind(PSName.key(key), stack.pop());
+    }
+
+    /**
+     * Associates a key with a value popped for def, capturing the environment of procedures defined under
+     * lexical scoping.
+     * @param key Key to define.
+     * @param value Value to associate with the key.
+     */
+    private void bind(Object key, Object value) {
         // if we've enabled lexical scoping, go here
         if (!defaultScope && value instanceof Runnable) {
-            Map<Object, Object> originals = new HashMap<>();
-            for (Map<Object, Object> dict : dictionaryStack) {
-                originals.putAll(dict);
+            // capture the environment as it is, later definitions derive new versions rather than changing it
+            MyEnvironment environment = environment();
+            staticDictionary.put((Runnable)value, environment);
+            if (value instanceof MyLexicalProcedure) {
+                ((MyLexicalProcedure) value).resolve(environment);
             }
-            // populate lexical dictionary with the first instances of defined variables
-            staticDictionary.put((Runnable)value, originals);
         }
-        // fetch current dictionary and get its capacity
-        Map<Object, Object> dictionary = dictionaryStack.peek();
-        Integer cap = capacity.get(dictionary);
+        define(key, value);
+    }
+
+    /**
+     * Associates a key with a value in the current dictionary, keeping the binding index up to date.
+     * @param key Key to define.
+     * @param value Value to associate with the key.
+     * @throws IllegalArgumentException when the current dictionary is full.
+     */
+    private void define(Object key, Object value) {
+        // fetch current dictionary
+        PSDict dictionary = dictionaryStack.peek();
+        boolean defined = dictionary.containsKey(key);
         // checking if the cap has been reached
-        if (cap != null && dictionary.size() >= cap && !dictionary.containsKey(key)) {
+        if (dictionary.size() >= dictionary.capacity() && !defined) {
             throw new IllegalArgumentException("Reached Maximum Capacity.");
         }
         dictionary.put(key, value);
+        if (!defaultScope && environments != null) {
+            int top = environments.size() - 1;
+            environments.set(top, environments.get(top).put(key, value));
+        } else {
+            environments = null;
+        }
+        Binding binding = index.get(key);
+        if (binding != null && binding.dict == dictionary) {
+            binding.value = value;
+        } else {
+            index.put(key, new Binding(dictionary, value, binding));
+        }
+        // a new key can shadow a binding further down the dictionary stack
+        if (!defined) {
+            epoch++;
+        }
+    }
+
+    /**
+     * Replaces the value of the topmost binding of a key, or defines it in the current dictionary
+     * if it is not defined anywhere on the dictionary stack.
+     * @throws EmptyStackException when the stack doesn't contain at least two elements.
+     */
+    public void store() {
+        if (stack.count() < 2) {
+            throw new EmptyStackException();
+        }
+        Object value = stack.pop();
+        Object key = PSName.key(stack.pop());
+        Binding binding = index.get(key);
+        if (binding == null) {
+            define(key, value);
+            return;
+        }
+        binding.dict.put(key, value);
+        // the binding may be visible through any number of the lexical views
+        environments = null;
+        // other occurrences of the same dictionary on the dictionary stack share the new value
+        for (Binding other = binding; other != null; other = other.next) {
+            if (other.dict == binding.dict) {
+                other.value = value;
+            }
+        }
+    }
+
+    /**
+     * Pushes the value of a key as seen by the current scope, without executing it.
+     * @throws IllegalArgumentException when the key is not defined.
+     */
+    public void load() {
+        Object key = PSName.key(stack.pop());
+        Object value = defHelper(key);
+        if (value == null) {
+            throw new IllegalArgumentException("Error: Undefined name " + key + ".");
+        }
+        stack.push(value);
+    }
+
+    /**
+     * Finds the dictionary defining a key, pushing the dictionary and true if there is one,
+     * or just false if there is none.
+     */
+    public void where() {
+        Object key = PSName.key(stack.pop());
+        PSDict dictionary = where(key);
+        if (dictionary != null) {
+            stack.push(dictionary);
+        }
+        stack.pushBool(dictionary != null);
+    }
+
+    /**
+     * Determines whether a dictionary defines a key.
+     * @throws EmptyStackException when the stack doesn't contain at least two elements.
+     * @throws InputMismatchException when the operand below the key is not a dictionary.
+     */
+    public void known() {
+        if (stack.count() < 2) {
+            throw new EmptyStackException();
+        }
+        Object key = PSName.key(stack.pop());
+        Object dictionary = stack.pop();
+        if (!(dictionary instanceof Map)) {
+            throw new InputMismatchException("Dictionary must be of type Map.");
+        }
+        stack.pushBool(((Map<?, ?>) dictionary).containsKey(key));
+    }
+
+    /**
+     * Removes a key from a dictionary, uncovering any binding it was shadowing.
+     * @throws EmptyStackException when the stack doesn't contain at least two elements.
+     * @throws InputMismatchException when the operand below the key is not a dictionary.
+     */
+    public void undef() {
+        if (stack.count() < 2) {
+            throw new EmptyStackException();
+        }
+        Object key = PSName.key(stack.pop());
+        Object dictionary = stack.pop();
+        if (!(dictionary instanceof PSDict)) {
+            throw new InputMismatchException("Dictionary must be of type Map.");
+        }
+        PSDict dict = (PSDict) dictionary;
+        if (!dict.containsKey(key)) {
+            return;
+        }
+        dict.remove(key);
+        environments = null;
+        // unlink every binding of the key that came from this dictionary
+        Binding head = index.get(key);
+        Binding previous = null;
+        for (Binding binding = head; binding != null; binding = binding.next) {
+            if (binding.dict == dict) {
+                if (previous == null) {
+                    head = binding.next;
+                } else {
+                    previous.next = binding.next;
+                }
+            } else {
+                previous = binding;
+            }
+        }
+        if (head == null) {
+            index.remove(key);
+        } else {
+            index.put(key, head);
+        }
+        epoch++;
+    }
+
+    /**
+     * Fetches the lexical environment formed by the whole dictionary stack, rebuilding the view of each
+     * level if it has gone stale.
+     * @return Environment binding every key to its topmost value.
+     */
+    private MyEnvironment environment() {
+        if (environments == null) {
+            environments = new ArrayList<>(dictionaryStack.size());
+            MyEnvironment environment = MyEnvironment.EMPTY;
+            for (PSDict dict : dictionaryStack) {
+                environment = environment.putAll(dict);
+                environments.add(environment);
+            }
+        }
+        return environments.isEmpty() ? MyEnvironment.EMPTY : environments.get(environments.size() - 1);
+    }
+
+    /**
+     * Recomputes the binding index from the dictionary stack.
+     */
+    private void rebuildIndex() {
+        environments = null;
+        index.clear();
+        for (PSDict dict : dictionaryStack) {
+            for (Map.Entry<Object, Object> entry : dict.entrySet()) {
+                index.put(entry.getKey(), new Binding(dict, entry.getValue(), index.get(entry.getKey())));
+            }
+        }
     }
 
     /**
@@ -148,12 +370,12 @@ public class MyDictionary {
      * @return a value associated with a key.
      */
     public Object defHelper(Object key) {
+        key = PSName.key(key);
         if (defaultScope) {
-            for (int i = dictionaryStack.size() - 1; i >= 0; i--) {
-                Object value = dictionaryStack.get(i).get(key);
-                if (value != null) {
-                    return value;
-                }
+            // the index holds the visible binding whatever the depth of the dictionary stack
+            Binding binding = index.get(key);
+            if (binding != null) {
+                return binding.value;
             }
         // if we've enabled lexical scoping, go here
         } else {
@@ -170,6 +392,43 @@ public class MyDictionary {
         return null;
     }
 
+    /**
+     * Looks a key up in the current dictionary only, which is where lexical scoping finds the names
+     * a procedure did not capture when it was defined.
+     * @param key Key to look up.
+     * @return Value in the dictionary on top of the dictionary stack, or null.
+     */
+    public Object currentLookup(Object key) {
+        return dictionaryStack.peek().get(PSName.key(key));
+    }
+
+    /**
+     * Finds the dictionary holding the visible binding of a key under dynamic scoping.
+     * @param key Key to search for.
+     * @return Topmost dictionary on the dictionary stack defining the key, or null if none does.
+     */
+    public PSDict where(Object key) {
+        Binding binding = index.get(PSName.key(key));
+        return binding == null ? null : binding.dict;
+    }
+
+    /**
+     * Userdict Getter Function.
+     * @return Dictionary at the bottom of the dictionary stack, which holds the top-level definitions.
+     */
+    public PSDict userDict() {
+        return dictionaryStack.firstElement();
+    }
+
+    /**
+     * Epoch Getter Function. A lookup made by where() stays valid while the epoch and the stamp of the
+     * dictionary it found are unchanged.
+     * @return Value that changes whenever the dictionary stack changes or a key is added to it.
+     */
+    public int epoch() {
+        return epoch;
+    }
+
     /**
      * Procedure Setter Function.
      * @param proc Procedure in execution.
@@ -199,6 +458,7 @@ public class MyDictionary {
      */
     public void dyn() {
         defaultScope = true;
+        epoch++;
     }
 
     /**
@@ -206,5 +466,29 @@ public class MyDictionary {
      */
     public void lex() {
         defaultScope = false;
+        epoch++;
+    }
+
+    /**
+     * Entry of the binding index, recording a dictionary on the dictionary stack that defines a key
+     * and the binding of the same key it shadows.
+     */
+    private static final class Binding {
+
+        final PSDict dict;
+        Object value;
+        Binding next;
+
+        /**
+         * Constructor.
+         * @param dict Dictionary defining the key.
+         * @param value Value of the key in that dictionary.
+         * @param next Binding shadowed by this one, or null.
+         */
+        Binding(PSDict dict, Object value, Binding next) {
+            this.dict = dict;
+            this.value = value;
+            this.next = next;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,211 @@
+import java.util.*;
+
+/**
+ * Immutable map of names to values used as a lexical environment. It is a hash array mapped trie, so adding
+ * a binding copies only the path to it and shares everything else with the environment it was derived from.
+ * Capturing an environment is therefore free, and every captured version stays valid as the session goes on.
+ * @author Aaron Howe
+ * @version Java 11
+ */
+public final class MyEnvironment {
+
+    // environment without any bindings
+    public static final MyEnvironment EMPTY = new MyEnvironment(new Node(0, new Object[0]), 0);
+
+    // bits of the hash consumed per level of the trie
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    private final Node root;
+    private final int size;
+
+    /**
+     * Constructor.
+     * @param root Root node of the trie.
+     * @param size Number of bindings.
+     */
+    private MyEnvironment(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Counts the bindings in the environment.
+     * @return Number of bindings.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Fetches the value bound to a key.
+     * @param key Key to look up.
+     * @return Bound value, or null if the key is not bound.
+     */
+    public Object get(Object key) {
+        int hash = hash(key);
+        Node node = root;
+        for (int shift = 0; ; shift += BITS) {
+            // keys whose hashes are equal share a node that is searched linearly
+            if (shift >= 32) {
+                for (int i = 0; i < node.array.length; i += 2) {
+                    if (key.equals(node.array[i])) {
+                        return node.array[i + 1];
+                    }
+                }
+                return null;
+            }
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+            int index = 2 * Integer.bitCount(node.bitmap & (bit - 1));
+            Object found = node.array[index];
+            if (found == null) {
+                node = (Node) node.array[index + 1];
+            } else {
+                return key.equals(found) ? node.array[index + 1] : null;
+            }
+        }
+    }
+
+    /**
+     * Derives an environment with a key bound to a value, leaving this environment unchanged.
+     * @param key Key to bind.
+     * @param value Value to bind the key to.
+     * @return Environment with the binding.
+     */
+    public MyEnvironment put(Object key, Object value) {
+        boolean[] added = new boolean[1];
+        Node newRoot = put(root, key, hash(key), value, 0, added);
+        return newRoot == root ? this : new MyEnvironment(newRoot, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * Derives an environment with every entry of a dictionary bound, shadowing existing bindings.
+     * @param bindings Entries to bind.
+     * @return Environment with the bindings.
+     */
+    public MyEnvironment putAll(Map<?, ?> bindings) {
+        MyEnvironment environment = this;
+        for (Map.Entry<?, ?> entry : bindings.entrySet()) {
+            environment = environment.put(entry.getKey(), entry.getValue());
+        }
+        return environment;
+    }
+
+    /**
+     * Spreads a key's hash code so that the low bits used by the top levels of the trie vary.
+     * @param key Key to hash.
+     * @return Spread hash.
+     */
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Binds a key in the subtrie rooted at a node, copying the nodes along the path.
+     * @param node Node to bind the key under.
+     * @param key Key to bind.
+     * @param hash Spread hash of the key.
+     * @param value Value to bind.
+     * @param shift Number of hash bits consumed above this node.
+     * @param added Set to true when the key was not bound before.
+     * @return Node with the binding, or the same node if the key was already bound to the value.
+     */
+    private static Node put(Node node, Object key, int hash, Object value, int shift, boolean[] added) {
+        if (shift >= 32) {
+            for (int i = 0; i < node.array.length; i += 2) {
+                if (key.equals(node.array[i])) {
+                    return node.array[i + 1] == value ? node : node.with(i + 1, value);
+                }
+            }
+            added[0] = true;
+            Object[] array = Arrays.copyOf(node.array, node.array.length + 2);
+            array[node.array.length] = key;
+            array[node.array.length + 1] = value;
+            return new Node(0, array);
+        }
+        int bit = 1 << ((hash >>> shift) & MASK);
+        int index = 2 * Integer.bitCount(node.bitmap & (bit - 1));
+        if ((node.bitmap & bit) == 0) {
+            added[0] = true;
+            Object[] array = new Object[node.array.length + 2];
+            System.arraycopy(node.array, 0, array, 0, index);
+            array[index] = key;
+            array[index + 1] = value;
+            System.arraycopy(node.array, index, array, index + 2, node.array.length - index);
+            return new Node(node.bitmap | bit, array);
+        }
+        Object found = node.array[index];
+        if (found == null) {
+            Node child = (Node) node.array[index + 1];
+            Node newChild = put(child, key, hash, value, shift + BITS, added);
+            return newChild == child ? node : node.with(index + 1, newChild);
+        }
+        if (key.equals(found)) {
+            return node.array[index + 1] == value ? node : node.with(index + 1, value);
+        }
+        // two keys share this slot, push both down into a new subtrie
+        added[0] = true;
+        Node child = pair(found, node.array[index + 1], hash(found), key, value, hash, shift + BITS);
+        Object[] array = node.array.clone();
+        array[index] = null;
+        array[index + 1] = child;
+        return new Node(node.bitmap, array);
+    }
+
+    /**
+     * Builds the smallest subtrie holding two bindings.
+     * @return Node holding both bindings.
+     */
+    private static Node pair(Object key1, Object value1, int hash1, Object key2, Object value2, int hash2, int shift) {
+        if (shift >= 32) {
+            return new Node(0, new Object[] {key1, value1, key2, value2});
+        }
+        int bit1 = 1 << ((hash1 >>> shift) & MASK);
+        int bit2 = 1 << ((hash2 >>> shift) & MASK);
+        if (bit1 == bit2) {
+            return new Node(bit1, new Object[] {null, pair(key1, value1, hash1, key2, value2, hash2, shift + BITS)});
+        }
+        // compared unsigned, as get() and put() place the entry at index 31 last even though its bit is negative
+        Object[] array = Integer.compareUnsigned(bit1, bit2) < 0
+            ? new Object[] {key1, value1, key2, value2}
+            : new Object[] {key2, value2, key1, value1};
+        return new Node(bit1 | bit2, array);
+    }
+
+    /**
+     * Trie node. Each set bit of the bitmap owns two array slots holding either a key and its value,
+     * or null and a child node. Below the last level the bitmap is unused and the array lists the
+     * bindings of keys with equal hashes.
+     */
+    private static final class Node {
+
+        final int bitmap;
+        final Object[] array;
+
+        /**
+         * Constructor.
+         * @param bitmap Occupied slots.
+         * @param array Keys, values and children.
+         */
+        Node(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        /**
+         * Copies the node with one array slot replaced.
+         * @param index Slot to replace.
+         * @param element New contents of the slot.
+         * @return Copied node.
+         */
+        Node with(int index, Object element) {
+            Object[] copy = array.clone();
+            copy[index] = element;
+            return new Node(bitmap, copy);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+
+/**
+ * Lexer that streams a PostScript file through a fixed-size character window instead of reading it line
+ * by line. Regular files are memory-mapped a region at a time, other channels such as pipes are read
+ * through a direct buffer, so even very large files are scanned without being held in memory. Bytes are
+ * decoded in the platform's default character set, the one input typed at the prompt is read in and output is
+ * written in, so text outside ASCII reads and prints the same from a file as from the prompt.
+ * @author Aaron Howe
+ * @version Java 11
+ */
+public class MyFileLexer extends MyLexer implements Closeable {
+
+    // characters decoded per refill, tokens longer than this grow the window
+    private static final int WINDOW_SIZE = 64 * 1024;
+    // bytes of a regular file mapped at a time
+    private static final long MAP_SIZE = 64L * 1024 * 1024;
+
+    private final ReadableByteChannel channel;
+    // bytes read or mapped from the channel but not yet decoded
+    private ByteBuffer bytes;
+    // offset in the file of the next region to map, or -1 when the channel cannot be mapped
+    private long mapOffset;
+    private final long fileSize;
+    private final CharsetDecoder decoder = Charset.defaultCharset().newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    /**
+     * Constructor for scanning a file.
+     * @param path File to scan.
+     * @throws IOException when the file cannot be opened.
+     */
+    public MyFileLexer(Path path) throws IOException {
+        this(FileChannel.open(path, StandardOpenOption.READ));
+    }
+
+    /**
+     * Constructor for scanning a channel, mapping it when it is a regular file.
+     * @param channel Source of the script's bytes.
+     * @throws IOException when the channel's size cannot be read.
+     */
+    public MyFileLexer(ReadableByteChannel channel) throws IOException {
+        super(new char[WINDOW_SIZE], 0, 0);
+        this.channel = channel;
+        long size = -1;
+        if (channel instanceof FileChannel) {
+            try {
+                size = ((FileChannel) channel).size();
+            } catch (IOException e) {
+                // special files report no size, read them as a stream instead
+                size = -1;
+            }
+        }
+        this.fileSize = size;
+        this.mapOffset = size > 0 ? 0 : -1;
+        if (mapOffset < 0) {
+            bytes = ByteBuffer.allocateDirect(WINDOW_SIZE);
+            bytes.flip();
+        } else {
+            bytes = ByteBuffer.allocate(0);
+        }
+    }
+
+    /**
+     * Slides the unfinished token to the front of the window and decodes the next run of bytes after it.
+     * @return True if at least one more character can be read at position.
+     * @throws UncheckedIOException when the channel cannot be read.
+     */
+    @Override
+    protected boolean fill() {
+        int keep = limit - tokenStart;
+        if (keep > 0 && tokenStart > 0) {
+            System.arraycopy(buffer, tokenStart, buffer, 0, keep);
+        }
+        position -= tokenStart;
+        tokenStart = 0;
+        limit = keep;
+        // a single token that fills the window grows it, leaving room for a character decoded into two chars
+        if (buffer.length - limit < 2) {
+            buffer = java.util.Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        try {
+            int start = limit;
+            while (limit == start) {
+                if (bytes.hasRemaining()) {
+                    decode();
+                }
+                // nothing decoded when the bytes ran out, or end in the middle of a character
+                if (limit == start && !nextBytes()) {
+                    if (bytes.hasRemaining()) {
+                        CharBuffer chars = CharBuffer.wrap(buffer, limit, buffer.length - limit);
+                        decoder.decode(bytes, chars, true);
+                        decoder.flush(chars);
+                        limit = chars.position();
+                    }
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return position < limit;
+    }
+
+    /**
+     * Decodes as many of the bytes as fit into the window, leaving a character cut off at their end for the
+     * next run of bytes.
+     */
+    private void decode() {
+        int count = Math.min(bytes.remaining(), buffer.length - limit);
+        int start = bytes.position();
+        // ASCII, which is nearly all of any script, is copied straight across
+        int i = 0;
+        while (i < count) {
+            byte b = bytes.get(start + i);
+            if (b < 0) {
+                break;
+            }
+            buffer[limit + i] = (char) b;
+            i++;
+        }
+        bytes.position(start + i);
+        limit += i;
+        if (i < count) {
+            CharBuffer chars = CharBuffer.wrap(buffer, limit, buffer.length - limit);
+            decoder.decode(bytes, chars, false);
+            limit = chars.position();
+        }
+    }
+
+    /**
+     * Fetches the next run of bytes, mapping the next region of a regular file or reading from a stream.
+     * Bytes left over from the last run, the start of a character cut off at its end, come first.
+     * @return False once the channel is exhausted.
+     * @throws IOException when the channel cannot be mapped or read.
+     */
+    private boolean nextBytes() throws IOException {
+        if (mapOffset >= 0) {
+            if (mapOffset >= fileSize) {
+                return false;
+            }
+            long start = mapOffset - bytes.remaining();
+            long length = Math.min(MAP_SIZE, fileSize - start);
+            bytes = ((FileChannel) channel).map(FileChannel.MapMode.READ_ONLY, start, length);
+            mapOffset = start + length;
+            return true;
+        }
+        bytes.compact();
+        int read;
+        do {
+            read = channel.read(bytes);
+        } while (read == 0);
+        bytes.flip();
+        return read > 0;
+    }
+
+    /**
+     * Closes the underlying channel.
+     * @throws IOException when the channel fails to close.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -8,7 +8,8 @@ import java.util.*;
 public class MyFlowControl {
 
     private final MyStack stack;
-    private boolean terminate = false;
+    // volatile, as cancel() sets it from another thread
+    private volatile boolean terminate = false;
 
     /**
      * Constructor.
@@ -70,7 +71,7 @@ public class MyFlowControl {
         // i = someStartingPoint
         double start = executeNum();
         for (double i = start; iterator >= 0 ? i <= end : i >= end; i+= iterator) {
-            stack.push((int)i);
+            stack.pushInt((int)i);
             procedure.run();
             if (terminate) {
                 break;
@@ -128,12 +129,11 @@ public class MyFlowControl {
      * @throws InputMismatchException when the provided argument is not a boolean type.
      */
     private boolean executeBool() {
-        Object args = stack.pop();
-        if (args instanceof Boolean) {
-            return (Boolean) args;
-        } else {
-            throw new InputMismatchException("Argument should be a boolean type.");
+        if (stack.peekTag(0) == MyStack.BOOL) {
+            return stack.popBool();
         }
+        stack.pop();
+        throw new InputMismatchException("Argument should be a boolean type.");
     }
 
     /**
@@ -142,12 +142,11 @@ public class MyFlowControl {
      * @throws InputMismatchException when the provided argument is not a numeric type.
      */
     private double executeNum() {
-        Object args = stack.pop();
-        if (args instanceof Number) {
-            return ((Number)args).doubleValue();
-        } else {
-            throw new InputMismatchException("Argument should be a numerical type.");
+        if (stack.numbersOnTop(1)) {
+            return stack.popReal();
         }
+        stack.pop();
+        throw new InputMismatchException("Argument should be a numerical type.");
     }
 
     /**
@@ -156,11 +155,10 @@ public class MyFlowControl {
      * @throws InputMismatchException when the provided argument is not an integer type.
      */
     private int executeInt() {
-        Object args = stack.pop();
-        if (args instanceof Number) {
-            return ((Number)args).intValue();
-        } else {
-            throw new InputMismatchException("Argument should be an integer type.");
+        if (stack.numbersOnTop(1)) {
+            return (int) stack.popReal();
         }
+        stack.pop();
+        throw new InputMismatchException("Argument should be an integer type.");
     }
 }
\ No newline at end of file
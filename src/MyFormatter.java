@@ -0,0 +1,316 @@
+import java.math.BigInteger;
+
+/**
+ * Formats numbers as ASCII bytes written straight into a caller's array, so printing a number allocates
+ * nothing. Reals are written with the fewest digits that read back as the same double, using Giulietti's
+ * Schubfach algorithm, and laid out the way Double.toString lays them out: plain notation from 10^-3 up
+ * to 10^7, scientific notation outside that range.
+ * @author Aaron Howe
+ * @version Java 11
+ */
+public final class MyFormatter {
+
+    // most bytes a single call to format() writes, as in -2.2250738585072014E-308
+    public static final int MAX_LENGTH = 24;
+
+    // binary exponent of the smallest subnormal double, and the significand of the smallest normal one
+    private static final int Q_MIN = -1074;
+    private static final long C_MIN = 1L << 52;
+    // subnormal significands below this are scaled up by ten so that they keep enough precision
+    private static final int C_TINY = 3;
+    // range of decimal exponents the table of powers of ten covers
+    private static final int K_MIN = -324;
+    private static final int K_MAX = 292;
+    private static final long MASK_63 = (1L << 63) - 1;
+    // powers of ten that fit in a long, for splitting a significand into digits
+    private static final long[] POWERS_OF_TEN = new long[19];
+    // 126-bit approximations of 10^-k as pairs of 63-bit halves, see table()
+    private static final long[] G = table();
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    /**
+     * Not instantiable, all of the formatting is static.
+     */
+    private MyFormatter() {
+    }
+
+    /**
+     * Writes an integer in decimal.
+     * @param value Integer to write.
+     * @param dest Array to write into, with at least 11 bytes free from pos.
+     * @param pos Index to write the first byte at.
+     * @return Index after the last byte written.
+     */
+    public static int format(int value, byte[] dest, int pos) {
+        long remaining = value;
+        if (remaining < 0) {
+            dest[pos++] = '-';
+            remaining = -remaining;
+        }
+        return digits(remaining, digitCount(remaining), dest, pos);
+    }
+
+    /**
+     * Writes an integer in any radix from 2 to 36, with upper case letters for digits above nine.
+     * Outside radix 10 the integer is read as its unsigned 32 bits, as cvrs does.
+     * @param value Integer to write.
+     * @param radix Base of the digits.
+     * @param dest Array to write into, with at least 32 bytes free from pos.
+     * @param pos Index to write the first byte at.
+     * @return Index after the last byte written.
+     */
+    public static int format(int value, int radix, byte[] dest, int pos) {
+        if (radix == 10) {
+            return format(value, dest, pos);
+        }
+        long remaining = value & 0xFFFFFFFFL;
+        int count = 1;
+        for (long scale = radix; scale <= remaining; scale *= radix) {
+            count++;
+        }
+        for (int i = pos + count - 1; i >= pos; i--) {
+            int digit = (int) (remaining % radix);
+            dest[i] = (byte) (digit < 10 ? '0' + digit : 'A' + digit - 10);
+            remaining /= radix;
+        }
+        return pos + count;
+    }
+
+    /**
+     * Writes a real with the fewest significant digits that read back as the same value.
+     * @param value Real to write.
+     * @param dest Array to write into, with at least MAX_LENGTH bytes free from pos.
+     * @param pos Index to write the first byte at.
+     * @return Index after the last byte written.
+     */
+    public static int format(double value, byte[] dest, int pos) {
+        long bits = Double.doubleToRawLongBits(value);
+        long t = bits & (C_MIN - 1);
+        int bq = (int) (bits >>> 52) & 0x7FF;
+        if (bq == 0x7FF) {
+            return ascii(t != 0 ? "NaN" : bits > 0 ? "Infinity" : "-Infinity", dest, pos);
+        }
+        if (bits < 0) {
+            dest[pos++] = '-';
+        }
+        if (bq != 0) {
+            // normal value c 2^q with the implicit leading bit restored
+            int mq = -Q_MIN + 1 - bq;
+            long c = C_MIN | t;
+            // small integers are exact, their digits are the answer
+            if (0 < mq && mq < 53) {
+                long f = c >> mq;
+                if (f << mq == c) {
+                    return layout(f, 0, dest, pos);
+                }
+            }
+            return toDecimal(-mq, c, 0, dest, pos);
+        }
+        if (t != 0) {
+            // subnormal value
+            return t < C_TINY ? toDecimal(Q_MIN, 10 * t, -1, dest, pos) : toDecimal(Q_MIN, t, 0, dest, pos);
+        }
+        return ascii("0.0", dest, pos);
+    }
+
+    /**
+     * Finds the shortest decimal in the rounding interval of c 2^q and writes it. The interval's bounds
+     * are scaled by a power of ten from the table so that the candidates can be compared as integers.
+     * @param q Binary exponent.
+     * @param c Binary significand.
+     * @param dk Correction to the decimal exponent when c was scaled up by ten.
+     * @return Index after the last byte written.
+     */
+    private static int toDecimal(int q, long c, int dk, byte[] dest, int pos) {
+        int out = (int) c & 0x1;
+        long cb = c << 2;
+        long cbr = cb + 2;
+        long cbl;
+        int k;
+        // the interval is asymmetric when c is a power of two, since the double below is closer
+        if (c != C_MIN || q == Q_MIN) {
+            cbl = cb - 2;
+            k = flog10pow2(q);
+        } else {
+            cbl = cb - 1;
+            k = flog10threeQuartersPow2(q);
+        }
+        int h = q + flog2pow10(-k) + 2;
+        long g1 = G[2 * (k - K_MIN)];
+        long g0 = G[2 * (k - K_MIN) + 1];
+        long vb = rop(g1, g0, cb << h);
+        long vbl = rop(g1, g0, cbl << h);
+        long vbr = rop(g1, g0, cbr << h);
+        long s = vb >> 2;
+        if (s >= 100) {
+            // try one digit fewer first
+            long sp10 = 10 * Math.multiplyHigh(s, 115_292_150_460_684_698L << 4);
+            long tp10 = sp10 + 10;
+            boolean upin = vbl + out <= sp10 << 2;
+            boolean wpin = (tp10 << 2) + out <= vbr;
+            if (upin != wpin) {
+                return layout(upin ? sp10 : tp10, k, dest, pos);
+            }
+        }
+        long t = s + 1;
+        boolean uin = vbl + out <= s << 2;
+        boolean win = (t << 2) + out <= vbr;
+        if (uin != win) {
+            return layout(uin ? s : t, k + dk, dest, pos);
+        }
+        // both candidates are in the interval, take the closer one, the even one on a tie
+        long cmp = vb - ((s + t) << 1);
+        return layout(cmp < 0 || cmp == 0 && (s & 0x1) == 0 ? s : t, k + dk, dest, pos);
+    }
+
+    /**
+     * Rounds the product of the 126-bit g and cp to odd, keeping its top 64 bits.
+     * @return Product, with the lowest bit set if any discarded bit was.
+     */
+    private static long rop(long g1, long g0, long cp) {
+        long x1 = Math.multiplyHigh(g0, cp);
+        long y0 = g1 * cp;
+        long y1 = Math.multiplyHigh(g1, cp);
+        long z = (y0 >>> 1) + x1;
+        long vbp = y1 + (z >>> 63);
+        return vbp | ((z & MASK_63) + MASK_63) >>> 63;
+    }
+
+    /**
+     * Lays out the decimal f 10^e the way Double.toString does.
+     * @param f Decimal significand, not zero.
+     * @param e Decimal exponent.
+     * @return Index after the last byte written.
+     */
+    private static int layout(long f, int e, byte[] dest, int pos) {
+        while (f % 10 == 0) {
+            f /= 10;
+            e++;
+        }
+        int n = digitCount(f);
+        // the value is 0.d1d2...dn 10^point
+        int point = n + e;
+        if (point > 0 && point <= 7) {
+            if (n <= point) {
+                pos = digits(f, n, dest, pos);
+                for (int i = n; i < point; i++) {
+                    dest[pos++] = '0';
+                }
+                return ascii(".0", dest, pos);
+            }
+            digits(f, n, dest, pos + 1);
+            // shift the integer digits left over the gap left for the point
+            System.arraycopy(dest, pos + 1, dest, pos, point);
+            dest[pos + point] = '.';
+            return pos + n + 1;
+        }
+        if (point > -3 && point <= 0) {
+            pos = ascii("0.", dest, pos);
+            for (int i = point; i < 0; i++) {
+                dest[pos++] = '0';
+            }
+            return digits(f, n, dest, pos);
+        }
+        // scientific notation with a single digit before the point
+        digits(f, n, dest, pos + 1);
+        dest[pos] = dest[pos + 1];
+        dest[pos + 1] = '.';
+        pos += n + 1;
+        if (n == 1) {
+            dest[pos++] = '0';
+        }
+        dest[pos++] = 'E';
+        return format(point - 1, dest, pos);
+    }
+
+    /**
+     * Writes the digits of a non-negative number.
+     * @param value Number to write.
+     * @param count Number of digits it has.
+     * @return Index after the last digit.
+     */
+    private static int digits(long value, int count, byte[] dest, int pos) {
+        for (int i = pos + count - 1; i >= pos; i--) {
+            dest[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return pos + count;
+    }
+
+    /**
+     * Counts the decimal digits of a non-negative number.
+     * @param value Number to measure.
+     * @return Number of digits, 1 for zero.
+     */
+    private static int digitCount(long value) {
+        int count = 1;
+        while (count < POWERS_OF_TEN.length && value >= POWERS_OF_TEN[count]) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Writes a constant ASCII string.
+     * @return Index after the last byte written.
+     */
+    private static int ascii(String text, byte[] dest, int pos) {
+        for (int i = 0; i < text.length(); i++) {
+            dest[pos++] = (byte) text.charAt(i);
+        }
+        return pos;
+    }
+
+    /**
+     * Computes floor(log10(2^e)).
+     */
+    private static int flog10pow2(int e) {
+        return (int) (e * 661_971_961_083L >> 41);
+    }
+
+    /**
+     * Computes floor(log10(3/4 2^e)).
+     */
+    private static int flog10threeQuartersPow2(int e) {
+        return (int) (e * 661_971_961_083L + -274_743_187_321L >> 41);
+    }
+
+    /**
+     * Computes floor(log2(10^e)).
+     */
+    private static int flog2pow10(int e) {
+        return (int) (e * 913_124_641_741L >> 38);
+    }
+
+    /**
+     * Computes the table of powers of ten. For each k, 10^-k = b 2^r with 2^125 <= b < 2^126, and the
+     * table holds g = floor(b) + 1 split into its upper and lower 63 bits. The table is computed once
+     * with exact arithmetic rather than being written out as several hundred literals.
+     * @return Upper and lower halves of g for every k from K_MIN to K_MAX.
+     */
+    private static long[] table() {
+        long[] table = new long[2 * (K_MAX - K_MIN + 1)];
+        BigInteger mask = BigInteger.ONE.shiftLeft(63).subtract(BigInteger.ONE);
+        for (int k = K_MIN; k <= K_MAX; k++) {
+            int e = -k;
+            int r = flog2pow10(e) - 125;
+            BigInteger numerator = e >= 0 ? BigInteger.TEN.pow(e) : BigInteger.ONE;
+            BigInteger denominator = e >= 0 ? BigInteger.ONE : BigInteger.TEN.pow(-e);
+            if (r >= 0) {
+                denominator = denominator.shiftLeft(r);
+            } else {
+                numerator = numerator.shiftLeft(-r);
+            }
+            BigInteger g = numerator.divide(denominator).add(BigInteger.ONE);
+            table[2 * (k - K_MIN)] = g.shiftRight(63).longValue();
+            table[2 * (k - K_MIN) + 1] = g.and(mask).longValue();
+        }
+        return table;
+    }
+}
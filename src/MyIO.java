@@ -1,19 +1,39 @@
 import java.util.*;
 
 /**
- * Implements input/output operations.
+ * Implements input/output operations. Output goes through a buffered MyOutput sink rather than straight to
+ * System.out, so it only reaches the terminal or pipe when the sink fills up or is flushed.
  * @author Aaron Howe
  * @version Java 11
  */
 public class MyIO {
 
     private final MyStack stack;
+    private final MyOutput output;
 
     /**
-     * Constructor
+     * Constructor writing to System.out.
      */
     public MyIO(MyStack stack) {
+        this(stack, new MyOutput(System.out));
+    }
+
+    /**
+     * Constructor.
+     * @param stack Operand stack.
+     * @param output Sink the operators write to.
+     */
+    public MyIO(MyStack stack, MyOutput output) {
         this.stack = stack;
+        this.output = output;
+    }
+
+    /**
+     * Output Getter Function.
+     * @return Sink the operators write to.
+     */
+    public MyOutput output() {
+        return output;
     }
 
     /**
@@ -24,7 +44,12 @@ public class MyIO {
         if (stack.count() < 1) {
             throw new EmptyStackException();
         }
-        System.out.println(stack.pop());
+        // numbers are written without boxing them
+        if (!writeNumber()) {
+            Object contents = stack.pop();
+            output.print(contents instanceof CharSequence ? (CharSequence) contents : String.valueOf(contents));
+        }
+        output.println();
     }
 
     /**
@@ -36,8 +61,10 @@ public class MyIO {
         if (stack.count() < 1) {
             throw new EmptyStackException();
         }
-        Object contents = stack.pop();
-        System.out.println(elementToString(contents));
+        if (!writeNumber()) {
+            writeElement(stack.pop());
+        }
+        output.println();
     }
 
     /**
@@ -49,44 +76,100 @@ public class MyIO {
             throw new EmptyStackException();
         }
         Object contents = stack.pop();
-        System.out.println(subElementToString(contents));
+        writeSubElement(contents);
+        output.println();
+    }
+
+    /**
+     * Writes any buffered output to standard output.
+     */
+    public void flush() {
+        output.flush();
+    }
+
+    /**
+     * Pops a file and writes any output buffered for it. Standard output is the only file there is,
+     * named (%stdout) as in PostScript.
+     * @throws InputMismatchException when the operand is not the name of an open file.
+     */
+    public void flushFile() {
+        Object file = stack.pop();
+        String name = String.valueOf(file);
+        if (!(file instanceof CharSequence || file instanceof PSName)
+                || !(name.equals("%stdout") || name.equals("%stderr"))) {
+            throw new InputMismatchException("flushfile requires an open file.");
+        }
+        // standard error is written unbuffered, so only standard output has anything to flush
+        if (name.equals("%stdout")) {
+            output.flush();
+        }
     }
 
     /**
-     * Converts an operand to string to be written to the standard output.
-     * @return Popped operand converted to string formatted dependendent on the type of data returned by the operand.
+     * Pops and writes the top operand if it is a number, formatting it straight into the output buffer.
+     * @return False if the top operand is not a number and was left on the stack.
      */
-    private String elementToString(Object data) {
+    private boolean writeNumber() {
+        byte tag = stack.peekTag(0);
+        if (tag == MyStack.INT) {
+            output.print(stack.popInt());
+        } else if (tag == MyStack.REAL) {
+            output.print(stack.popReal());
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Writes an operand to the standard output.
+     * @param data Popped operand, formatted dependendent on its type.
+     */
+    private void writeElement(Object data) {
         // element is a string
-        if (data instanceof String) {
-            return "(" + data + ")";
+        if (data instanceof CharSequence) {
+            output.print("(");
+            output.print((CharSequence) data);
+            output.print(")");
+        // element is a name
+        } else if (data instanceof PSName) {
+            output.print("/");
+            output.print(data.toString());
         // element is a dictionary
         } else if (data instanceof Map) {
-            return "-dict-";
+            output.print("-dict-");
+        // element is a real
+        } else if (data instanceof Double) {
+            output.print((double) (Double) data);
+        // element is a built-in operator
+        } else if (data instanceof MyOperator) {
+            output.print(data.toString());
         // element is a procedure
         } else if (data instanceof Runnable) {
-            return "-procedure-";
+            output.print("-procedure-");
         } else {
-            return data.toString();
+            output.print(data.toString());
         }
     }
 
     /**
-     * Converts an operand to string to be written to the standard output, with detailed array contents
-     * displayed.
-     * @return Popped operand converted to string formatted dependent on the type of data returned by the operand with
-     * sub-data for each type.
+     * Writes an operand to the standard output, with detailed array contents displayed.
+     * @param data Popped operand, formatted dependent on its type with sub-data for each type.
      */
-    private String subElementToString(Object data) {
-        if (data instanceof String) {
-            return "(" + data + ") -string-";
+    private void writeSubElement(Object data) {
+        if (data instanceof CharSequence) {
+            writeElement(data);
+            output.print(" -string-");
+        } else if (data instanceof PSName) {
+            writeElement(data);
+            output.print(" -name-");
         } else if (data instanceof Map) {
             Map<?, ?> dictionary = (Map<?, ?>) data;
-            return "-dict- contains " + dictionary.size() + " elements";
-        } else if (data instanceof Runnable) {
-            return "-procedure-";
+            output.print("-dict- contains ");
+            output.print(dictionary.size());
+            output.print(" elements");
         } else {
-            return data.toString();
+            writeElement(data);
         }
     }
-}
\ No newline at end of file
+}
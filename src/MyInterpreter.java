@@ -0,0 +1,1037 @@
+import java.io.*;
+import java.lang.invoke.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.*;
+
+/**
+ * Interpreter session owning its operand stack, dictionary stack, operators and output, so a JVM can host
+ * any number of independent sessions. A session is not thread-safe and belongs to the thread using it, but
+ * separate sessions share nothing mutable apart from the synchronized table of interned names, so they can
+ * run side by side on as many threads as needed.
+ * @author Aaron Howe
+ * @version Java 11
+ */
+public class MyInterpreter {
+
+    // runs of a procedure after which the compiling tier compiles it
+    private static final int COMPILE_THRESHOLD = 1000;
+    // the pieces compiled procedures are built from, see RunProcedure.compile()
+    private static final MethodHandle PUSH_INT;
+    private static final MethodHandle PUSH_REAL;
+    private static final MethodHandle PUSH;
+    private static final MethodHandle EXECUTE_NAME;
+    private static final MethodHandle EXECUTE_REGION;
+    private static final MethodHandle EXECUTE_FUSED;
+
+    static {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            PUSH_INT = lookup.findVirtual(MyStack.class, "pushInt", MethodType.methodType(void.class, int.class));
+            PUSH_REAL = lookup.findVirtual(MyStack.class, "pushReal", MethodType.methodType(void.class, double.class));
+            PUSH = lookup.findVirtual(MyStack.class, "push", MethodType.methodType(void.class, Object.class));
+            EXECUTE_NAME = lookup.findVirtual(MyInterpreter.class, "executeName", MethodType.methodType(void.class,
+                Instruction.class, RunProcedure.class, MyOperator.class));
+            EXECUTE_REGION = lookup.findVirtual(MyInterpreter.class, "executeRegion", MethodType.methodType(void.class,
+                Instruction.class, RunProcedure.class));
+            EXECUTE_FUSED = lookup.findVirtual(MyInterpreter.class, "executeFused", MethodType.methodType(void.class,
+                Instruction.class, RunProcedure.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // class references
+    private final MyStack stack;
+    private final MyDictionary dict;
+    private final MyFlowControl flow;
+    private final MyOperators operators;
+    private final MyOutput output;
+    // instructions of the procedures still waiting for their closing brace, innermost on top
+    private final Deque<List<Instruction>> procedures = new ArrayDeque<>();
+    // instructions executed since the session started, reported by the benchmark runner
+    private long executed;
+    // true when procedures that keep being run are compiled into hidden classes
+    private final boolean compiling;
+    // true when register blocks are checked against the instructions they stand for on every run
+    private boolean verifying;
+    // profile the runs of procedures are counted in, or null
+    private MyNgramProfile profile;
+
+    /**
+     * Constructor, starting a fresh session that interprets procedures.
+     * @param output Sink the session's output is written to.
+     */
+    public MyInterpreter(MyOutput output) {
+        this(output, false);
+    }
+
+    /**
+     * Constructor, starting a fresh session.
+     * @param output Sink the session's output is written to.
+     * @param compiling True to compile procedures into hidden classes once they have run COMPILE_THRESHOLD
+     * times, so the JIT can inline their instructions.
+     */
+    public MyInterpreter(MyOutput output, boolean compiling) {
+        this.compiling = compiling;
+        this.output = output;
+        this.stack = new MyStack();
+        this.dict = new MyDictionary(stack);
+        this.flow = new MyFlowControl(stack);
+        this.operators = new MyOperators(stack, new MyArithmetic(stack), dict, new MyString(stack),
+            new MyBoolean(stack), flow, new MyIO(stack, output));
+        operators.define("run", this::run);
+    }
+
+    /**
+     * Stack Getter Function.
+     * @return Operand stack of the session.
+     */
+    public MyStack stack() {
+        return stack;
+    }
+
+    /**
+     * Dictionary Getter Function.
+     * @return Dictionary stack of the session.
+     */
+    public MyDictionary dictionary() {
+        return dict;
+    }
+
+    /**
+     * Output Getter Function.
+     * @return Sink the session writes to.
+     */
+    public MyOutput output() {
+        return output;
+    }
+
+    /**
+     * Checks whether the session has executed quit.
+     * @return True once quit has run.
+     */
+    public boolean terminated() {
+        return flow.terminated();
+    }
+
+    /**
+     * Stops the session from another thread as if it had executed quit, such as when the client a daemon runs
+     * it for has gone away: loops end before their next iteration and nothing more is read.
+     */
+    public void cancel() {
+        flow.quit();
+    }
+
+    /**
+     * Checks whether a procedure has been opened and not yet closed, so more input is needed to finish it.
+     * @return True while a procedure is waiting for its closing brace.
+     */
+    public boolean pending() {
+        return !procedures.isEmpty();
+    }
+
+    /**
+     * Throws away any procedures still waiting for their closing brace, as after an error.
+     */
+    public void reset() {
+        procedures.clear();
+    }
+
+    /**
+     * Turns the optimizer's verifier on or off. While it is on, every register block that computes its results
+     * also has the instructions it stands for run, and the stack they leave is compared with the block's.
+     * @param verifying True to verify register blocks.
+     */
+    public void setVerifying(boolean verifying) {
+        this.verifying = verifying;
+    }
+
+    /**
+     * Starts or stops profiling. Procedures compiled while a profile is set report their runs to it, so it
+     * counts the sequences of instructions that run inside procedures.
+     * @param profile Profile to count in, or null to stop profiling procedures compiled from now on; those
+     * compiled before keep reporting to the profile they were compiled under.
+     */
+    public void setProfile(MyNgramProfile profile) {
+        this.profile = profile;
+    }
+
+    /**
+     * Counts the instructions executed since the session started.
+     * @return Number of instructions executed.
+     */
+    public long executed() {
+        return executed;
+    }
+
+    /**
+     * Compiles and executes source text, as if it had been entered at the prompt. A procedure left open
+     * at the end of the text is continued by the next call.
+     * @param source PostScript source.
+     */
+    public void evaluate(String source) {
+        interpret(new MyLexer(source));
+    }
+
+    /**
+     * Runs a program compiled ahead of time, without scanning its source again.
+     * @param program Program to run.
+     */
+    public void run(MyProgram program) {
+        interpret(program.lexer());
+    }
+
+    /**
+     * Executes a PostScript file, equivalent to the `run` operator.
+     * @param path Path of the file.
+     * @throws UncheckedIOException when the file cannot be read.
+     * @throws IllegalArgumentException when the file ends inside a procedure.
+     */
+    public void runFile(String path) {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error: Cannot read " + path + ".", e);
+        }
+        runScript(path, channel);
+    }
+
+    /**
+     * Executes a script read from a channel, such as one sent to the daemon, closing the channel afterwards.
+     * @param name Name of the script for error messages.
+     * @param source Bytes of the script.
+     * @throws UncheckedIOException when the script cannot be read.
+     * @throws IllegalArgumentException when the script ends inside a procedure.
+     */
+    public void runScript(String name, ReadableByteChannel source) {
+        try (MyFileLexer lexer = new MyFileLexer(source)) {
+            interpret(lexer);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error: Cannot read " + name + ".", e);
+        }
+        if (!procedures.isEmpty()) {
+            procedures.clear();
+            throw new IllegalArgumentException("Syntax Error: " + name + " ends inside a procedure.");
+        }
+    }
+
+    /**
+     * Pops a file name from the operand stack and executes the file.
+     * @throws InputMismatchException when the operand is not a string.
+     */
+    private void run() {
+        Object path = stack.pop();
+        if (!(path instanceof CharSequence)) {
+            throw new InputMismatchException("run requires a file name string.");
+        }
+        runFile(path.toString());
+    }
+
+    /**
+     * Compiles and executes tokens until the lexer is exhausted or the interpreter quits. Procedures may
+     * span several lines of input, their instructions are collected until the closing brace.
+     * @param lexer Source of tokens.
+     */
+    private void interpret(MyLexer lexer) {
+        for (int token = lexer.next(); token != MyLexer.EOF && !flow.terminated(); token = lexer.next()) {
+            switch (token) {
+                case MyLexer.PROC_BEGIN:
+                    procedures.push(new ArrayList<>());
+                    break;
+                case MyLexer.PROC_END:
+                    if (procedures.isEmpty()) {
+                        throw new IllegalArgumentException("Syntax Error: unmatched '}'.");
+                    }
+                    // the procedure is compiled once here, so its body never has to be scanned again
+                    List<Instruction> body = procedures.pop();
+                    RunProcedure procedure = new RunProcedure(optimize(body));
+                    if (profile != null) {
+                        procedure.profile = profile;
+                        procedure.profiled = profile.procedure(profileNames(body, true));
+                    }
+                    if (procedures.isEmpty()) {
+                        stack.push(procedure);
+                    } else {
+                        // nested procedures are pushed as the same object on every run of the enclosing one
+                        procedures.peek().add(new Instruction(Instruction.PUSH_PROC, procedure, null));
+                    }
+                    break;
+                default:
+                    Instruction instruction = compileToken(lexer, token);
+                    if (procedures.isEmpty()) {
+                        execute(instruction, null);
+                    } else {
+                        procedures.peek().add(instruction);
+                    }
+            }
+        }
+    }
+
+    /**
+     * Decodes the token the lexer has just scanned into an instruction.
+     * @param lexer Lexer positioned after the token.
+     * @param token Type of the token.
+     * @return Instruction pushing the token's literal value, or executing the token as a name.
+     */
+    private Instruction compileToken(MyLexer lexer, int token) {
+        switch (token) {
+            case MyLexer.INTEGER:
+                return new Instruction(Instruction.PUSH_INT, lexer.intValue(), null);
+            case MyLexer.REAL:
+                return new Instruction(Instruction.PUSH_REAL, lexer.realValue(), null);
+            case MyLexer.STRING:
+                // a literal in a procedure is the same string object on every run, as in PostScript
+                return new Instruction(Instruction.PUSH_STRING, PSString.of(lexer.text()), null);
+            case MyLexer.LITERAL_NAME:
+                return new Instruction(Instruction.PUSH_NAME, lexer.name(), null);
+            case MyLexer.IMMEDIATE_NAME:
+                // immediately evaluated names are replaced by their current value
+                return new Instruction(Instruction.PUSH_NAME, immediateValue(lexer.name()), null);
+            default:
+                // anything else is looked up when executed, resolving the built-in operator up front
+                PSName name = lexer.name();
+                MyOperator operator = operators.lookup(name.toString());
+                // arithmetic and comparisons in a procedure get a node of their own, which specializes on the
+                // operands seen at that spot; top-level code runs once and gains nothing from it
+                if (!procedures.isEmpty() && MyNumericNode.specializes(operator)) {
+                    operator = new MyOperator(operator.getName(), new MyNumericNode(stack, operator));
+                }
+                return new Instruction(Instruction.EXEC_NAME, name, operator);
+        }
+    }
+
+    /**
+     * Replaces each straight-line run of a procedure body whose stack effects are known with a register block,
+     * then rewrites if on a literal condition or an empty procedure, and the sequences the superinstruction
+     * table lists into fused operations. Every rewritten instruction keeps the instructions it stands for to
+     * fall back on.
+     * @param body Instructions of a procedure that has just been closed.
+     * @return Optimized body.
+     */
+    private Instruction[] optimize(List<Instruction> body) {
+        return superinstructions(peephole(blocks(body))).toArray(new Instruction[0]);
+    }
+
+    /**
+     * Replaces each straight-line run whose stack effects are known with a register block.
+     * @param body Instructions of a procedure, or part of one.
+     * @return Instructions with the blocks in place.
+     */
+    private static List<Instruction> blocks(List<Instruction> body) {
+        List<Instruction> optimized = new ArrayList<>(body.size());
+        List<Object> code = new ArrayList<>();
+        for (int i = 0; i < body.size(); ) {
+            code.clear();
+            for (int j = i; j < body.size(); j++) {
+                Object item = registerCode(body.get(j));
+                if (item == null) {
+                    break;
+                }
+                code.add(item);
+            }
+            MyRegisterBlock block = code.isEmpty() ? null : MyRegisterBlock.compile(code);
+            if (block == null) {
+                optimized.add(body.get(i++));
+                continue;
+            }
+            Instruction[] region = body.subList(i, i + block.length()).toArray(new Instruction[0]);
+            optimized.add(new Instruction(Instruction.REGION, region, block));
+            i += block.length();
+        }
+        return optimized;
+    }
+
+    /**
+     * Rewrites if whose condition is known when the procedure is compiled into running the procedure or
+     * nothing, and if on an empty procedure into popping the condition.
+     * @param body Procedure body with its register blocks in place.
+     * @return Rewritten body.
+     */
+    private static List<Instruction> peephole(List<Instruction> body) {
+        List<Instruction> rewritten = new ArrayList<>(body.size());
+        for (Instruction instruction : body) {
+            rewritten.add(instruction);
+            int size = rewritten.size();
+            if (instruction.kind != Instruction.EXEC_NAME || instruction.operator == null
+                    || !instruction.operator.getName().equals("if") || size < 2
+                    || rewritten.get(size - 2).kind != Instruction.PUSH_PROC) {
+                continue;
+            }
+            RunProcedure procedure = (RunProcedure) rewritten.get(size - 2).operand;
+            Boolean condition = size < 3 ? null : constantCondition(rewritten.get(size - 3));
+            List<Instruction> tail = rewritten.subList(size - (condition == null ? 2 : 3), size);
+            List<Instruction> region = new ArrayList<>();
+            for (Instruction replaced : tail) {
+                if (replaced.region == null) {
+                    region.add(replaced);
+                } else {
+                    region.addAll(Arrays.asList(replaced.region));
+                }
+            }
+            Instruction fused;
+            if (condition != null) {
+                fused = new Instruction(Instruction.IF_CONSTANT, region.toArray(new Instruction[0]),
+                    condition ? procedure : null);
+            } else if (procedure.body.length == 0) {
+                fused = new Instruction(Instruction.EMPTY_IF, region.toArray(new Instruction[0]), (Object) null);
+            } else {
+                continue;
+            }
+            tail.clear();
+            rewritten.add(fused);
+        }
+        return rewritten;
+    }
+
+    /**
+     * Fetches the boolean an instruction always pushes.
+     * @param instruction Instruction of a procedure body.
+     * @return Value of true, false, or a register block pushing nothing but a literal boolean; null for any
+     * other instruction.
+     */
+    private static Boolean constantCondition(Instruction instruction) {
+        if (instruction.kind == Instruction.REGION) {
+            return ((MyRegisterBlock) instruction.operand).constantCondition();
+        }
+        if (instruction.kind == Instruction.EXEC_NAME && instruction.operator != null) {
+            String name = instruction.operator.getName();
+            return name.equals("true") ? Boolean.TRUE : name.equals("false") ? Boolean.FALSE : null;
+        }
+        return null;
+    }
+
+    /**
+     * Rewrites the sequences of instructions the superinstruction table lists into their fused operations.
+     * A sequence may start inside a register block when it goes on past the block's end, as an exch ending a
+     * block does when an integer literal and put follow it; what is left of the block is formed into blocks
+     * again.
+     * @param body Procedure body with its register blocks and rewritten ifs in place.
+     * @return Rewritten body.
+     */
+    private List<Instruction> superinstructions(List<Instruction> body) {
+        List<Instruction> rewritten = new ArrayList<>(body.size());
+        List<Instruction> originals = new ArrayList<>();
+        List<Integer> ends = new ArrayList<>();
+        for (int i = 0; i < body.size(); i++) {
+            // the instructions the next few stand for, and where each of them ends among those
+            originals.clear();
+            ends.clear();
+            for (int j = i; j < body.size() && j <= i + MySuperinstructions.LONGEST && fusable(body.get(j)); j++) {
+                Instruction instruction = body.get(j);
+                if (instruction.region == null) {
+                    originals.add(instruction);
+                } else {
+                    originals.addAll(Arrays.asList(instruction.region));
+                }
+                ends.add(originals.size());
+            }
+            Instruction first = body.get(i);
+            List<String> names = profileNames(originals, false);
+            int starts = first.kind == Instruction.REGION ? first.region.length : 1;
+            boolean fused = false;
+            for (int start = 0; start < starts && !fused; start++) {
+                int op = MySuperinstructions.match(names, start);
+                int consumed = op < 0 ? -1 : ends.indexOf(start + MySuperinstructions.length(op));
+                // a sequence inside a block is better left to the block
+                if (consumed < 0 || (start > 0 && consumed == 0)) {
+                    continue;
+                }
+                Instruction[] region = originals.subList(start, ends.get(consumed)).toArray(new Instruction[0]);
+                rewritten.addAll(blocks(originals.subList(0, start)));
+                rewritten.add(new Instruction(Instruction.SUPERINSTRUCTION, region, fusedOperation(op, region)));
+                i += consumed;
+                fused = true;
+            }
+            if (!fused) {
+                rewritten.add(first);
+            }
+        }
+        return rewritten;
+    }
+
+    /**
+     * Checks whether a fused operation can take in an instruction.
+     * @param instruction Instruction of a procedure body.
+     * @return True for literals, names and register blocks.
+     */
+    private static boolean fusable(Instruction instruction) {
+        return instruction.kind <= Instruction.REGION;
+    }
+
+    /**
+     * Builds the fused operation standing for a sequence of instructions, with its literals taken out of
+     * their instructions once here, so that running it only calls one method.
+     * @param op Fused operation of MySuperinstructions.
+     * @param region Instructions the operation stands for.
+     * @return Operation returning false, having left the stack alone, when the instructions it stands for
+     * have to run instead.
+     */
+    private BooleanSupplier fusedOperation(int op, Instruction[] region) {
+        List<Object> literals = new ArrayList<>();
+        for (Instruction instruction : region) {
+            if (instruction.kind == Instruction.PUSH_INT || instruction.kind == Instruction.PUSH_NAME) {
+                literals.add(instruction.operand);
+            }
+        }
+        switch (op) {
+            case MySuperinstructions.DUP_MUL:
+                return stack::dupMul;
+            case MySuperinstructions.EXCH_SUB:
+                return stack::exchSub;
+            case MySuperinstructions.ADD_INT: {
+                int addend = (Integer) literals.get(0);
+                return () -> stack.addInt(addend);
+            }
+            case MySuperinstructions.SUB_INT: {
+                int subtrahend = (Integer) literals.get(0);
+                return () -> stack.subInt(subtrahend);
+            }
+            case MySuperinstructions.DEF_NAME: {
+                Object key = literals.get(0);
+                return () -> defineTop(key);
+            }
+            case MySuperinstructions.EXCH_PUT: {
+                int value = (Integer) literals.get(0);
+                return () -> putIntoString(value);
+            }
+            default:
+                throw new IllegalArgumentException("Error: Unknown fused operation " + op + ".");
+        }
+    }
+
+    /**
+     * Writes out a procedure body as MyNgramProfile counts it.
+     * @param body Instructions of the procedure as compiled from the source.
+     * @param values True to write integer and name literals as they are, false to write them as the patterns
+     * of MySuperinstructions do, which builds no new strings.
+     * @return One name per instruction.
+     */
+    private static List<String> profileNames(List<Instruction> body, boolean values) {
+        List<String> names = new ArrayList<>(body.size());
+        for (Instruction instruction : body) {
+            switch (instruction.kind) {
+                case Instruction.PUSH_REAL:
+                    names.add("<real>");
+                    break;
+                case Instruction.PUSH_STRING:
+                    names.add("(...)");
+                    break;
+                case Instruction.PUSH_INT:
+                    names.add(values ? instruction.operand.toString() : "<int>");
+                    break;
+                case Instruction.PUSH_NAME:
+                    names.add(values ? "/" + instruction.operand : "/<name>");
+                    break;
+                case Instruction.PUSH_PROC:
+                    names.add(((RunProcedure) instruction.operand).body.length == 0 ? "{}" : "{...}");
+                    break;
+                default:
+                    names.add(instruction.operand.toString());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Describes an instruction the way MyRegisterBlock takes it in.
+     * @param instruction Instruction of a procedure body.
+     * @return Integer or Double literal, name of the built-in operator, or null if a block cannot take it in.
+     */
+    private static Object registerCode(Instruction instruction) {
+        switch (instruction.kind) {
+            case Instruction.PUSH_INT:
+            case Instruction.PUSH_REAL:
+                return instruction.operand;
+            case Instruction.EXEC_NAME:
+                MyOperator operator = instruction.operator;
+                return operator != null && MyRegisterBlock.handles(operator.getName()) ? operator.getName() : null;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Looks up the current value of an immediately evaluated name.
+     * @param name Name without its leading slashes.
+     * @return Value on the dictionary stack, or the built-in operator of that name.
+     * @throws IllegalArgumentException when the name is undefined.
+     */
+    private Object immediateValue(PSName name) {
+        Object value = dict.defHelper(name);
+        if (value == null) {
+            value = operators.lookup(name.toString());
+        }
+        if (value == null) {
+            throw new IllegalArgumentException("Error: Undefined name " + name + ".");
+        }
+        return value;
+    }
+
+    /**
+     * Executes a single decoded instruction.
+     * @param instruction Instruction to execute.
+     * @param scope Procedure whose body holds the instruction, or null at the top level.
+     */
+    private void execute(Instruction instruction, RunProcedure scope) {
+        executed++;
+        switch (instruction.kind) {
+            // numbers are pushed unboxed
+            case Instruction.PUSH_INT:
+                stack.pushInt((Integer) instruction.operand);
+                break;
+            case Instruction.PUSH_REAL:
+                stack.pushReal((Double) instruction.operand);
+                break;
+            case Instruction.PUSH_STRING:
+            case Instruction.PUSH_NAME:
+            case Instruction.PUSH_PROC:
+                stack.push(instruction.operand);
+                break;
+            case Instruction.REGION:
+            case Instruction.IF_CONSTANT:
+            case Instruction.EMPTY_IF:
+                // a region counts the instructions it stands for itself
+                executed--;
+                executeRegion(instruction, scope);
+                break;
+            case Instruction.SUPERINSTRUCTION:
+                executed--;
+                executeFused(instruction, scope);
+                break;
+            default:
+                executeName(instruction, scope, instruction.operator);
+        }
+    }
+
+    /**
+     * Executes an instruction standing for several: a register block, or an if rewritten by the peephole pass.
+     * When one of their names no longer means the built-in operator, or the block gives up on its operands, or
+     * the condition of an if on an empty procedure is not a boolean, the instructions it stands for run instead.
+     * @param instruction Instruction holding the region.
+     * @param scope Procedure whose body holds the instruction.
+     * @throws IllegalStateException when verifying and a block's results differ from the instructions'.
+     */
+    private void executeRegion(Instruction instruction, RunProcedure scope) {
+        // the names are looked up again only when a definition may have shadowed one of them
+        int epoch = dict.epoch();
+        if (instruction.cachedEpoch != epoch) {
+            instruction.cachedEpoch = epoch;
+            instruction.cachedValue = unbound(instruction.region) ? Boolean.TRUE : null;
+        }
+        if (instruction.cachedValue != null) {
+            switch (instruction.kind) {
+                case Instruction.IF_CONSTANT:
+                    executed += instruction.region.length;
+                    if (instruction.operand != null) {
+                        ((Runnable) instruction.operand).run();
+                    }
+                    return;
+                case Instruction.EMPTY_IF:
+                    if (stack.count() > 0 && stack.peekTag(0) == MyStack.BOOL) {
+                        executed += instruction.region.length;
+                        stack.drop(1);
+                        return;
+                    }
+                    break;
+                default:
+                    MyRegisterBlock block = (MyRegisterBlock) instruction.operand;
+                    if (block.evaluate(stack)) {
+                        materialize(instruction, block, scope);
+                        return;
+                    }
+            }
+        }
+        for (Instruction original : instruction.region) {
+            execute(original, scope);
+        }
+    }
+
+    /**
+     * Executes a superinstruction. Each fused operation is an object of its own, so that the code of the
+     * operations a program never runs stays out of execute(). When one of its names no longer means the
+     * built-in operator, or the operation gives up on its operands, the instructions it stands for run instead.
+     * @param instruction Superinstruction.
+     * @param scope Procedure whose body holds the instruction.
+     */
+    private void executeFused(Instruction instruction, RunProcedure scope) {
+        int epoch = dict.epoch();
+        if (instruction.cachedEpoch != epoch) {
+            instruction.cachedEpoch = epoch;
+            instruction.cachedValue = unbound(instruction.region) ? Boolean.TRUE : null;
+        }
+        if (instruction.cachedValue != null && ((BooleanSupplier) instruction.operand).getAsBoolean()) {
+            executed += instruction.region.length;
+            return;
+        }
+        for (Instruction original : instruction.region) {
+            execute(original, scope);
+        }
+    }
+
+    /**
+     * Runs /name exch def as a fused operation.
+     * @param key Name literal to define.
+     * @return False, having left the stack alone, when the stack is empty.
+     */
+    private boolean defineTop(Object key) {
+        if (stack.count() < 1) {
+            return false;
+        }
+        dict.def(key);
+        return true;
+    }
+
+    /**
+     * Runs exch followed by an integer literal and put, as a fused operation on an index and a string.
+     * @param value Character code to store.
+     * @return False, having left the stack alone, when there is no string on top of an integer.
+     */
+    private boolean putIntoString(int value) {
+        if (stack.count() < 2 || stack.peekTag(1) != MyStack.INT || !(stack.peek() instanceof PSString)) {
+            return false;
+        }
+        PSString string = (PSString) stack.peek();
+        int index = stack.intAt(1);
+        stack.drop(2);
+        string.put(index, value);
+        return true;
+    }
+
+    /**
+     * Pushes the results of a register block that has computed them, or when verifying, runs the instructions
+     * the block stands for and checks they leave the same results.
+     * @param instruction Instruction holding the block.
+     * @param block Block whose evaluate() has succeeded.
+     * @param scope Procedure whose body holds the instruction.
+     * @throws IllegalStateException when verifying and the block's results differ from the instructions'.
+     */
+    private void materialize(Instruction instruction, MyRegisterBlock block, RunProcedure scope) {
+        if (!verifying) {
+            executed += instruction.region.length;
+            block.materialize(stack);
+            return;
+        }
+        int expected = stack.count() - block.inputs() + block.outputs();
+        try {
+            for (Instruction original : instruction.region) {
+                execute(original, scope);
+            }
+        } catch (RuntimeException e) {
+            throw new IllegalStateException("Error: Optimized code computed " + block + " where the procedure "
+                + "failed with " + e.getMessage() + ".");
+        }
+        if (stack.count() != expected || !block.matches(stack)) {
+            throw new IllegalStateException("Error: Optimized code computed " + block + " where the procedure "
+                + "left a different stack.");
+        }
+    }
+
+    /**
+     * Checks that none of the names in a region is defined, so that each of them means its built-in operator.
+     * @param region Instructions a register block stands for.
+     * @return True when every name would run its built-in operator.
+     */
+    private boolean unbound(Instruction[] region) {
+        for (Instruction instruction : region) {
+            if (instruction.kind != Instruction.EXEC_NAME) {
+                continue;
+            }
+            // the same lookups executeName() makes inside a procedure
+            boolean bound = dict.getScope() ? dict.where(instruction.operand) != null
+                : instruction.lexicalSlot >= 0 || dict.currentLookup(instruction.operand) != null;
+            if (bound) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Executes a name, giving definitions on the dictionary stack precedence over built-in operators
+     * so that a user definition shadows an operator of the same name.
+     * @param instruction Instruction naming the value to execute.
+     * @param scope Procedure whose body holds the instruction, or null at the top level.
+     * @param operator Built-in operator registered under the name, passed separately so that compiled
+     * procedures can bind it as a constant.
+     */
+    private void executeName(Instruction instruction, RunProcedure scope, MyOperator operator) {
+        // fetch function/variable
+        Object element;
+        if (dict.getScope()) {
+            element = cachedLookup(instruction);
+        } else if (scope == null) {
+            element = dict.defHelper(instruction.operand);
+        } else if (instruction.lexicalSlot >= 0) {
+            // names resolved when the procedure was defined are read from the frame of the defining procedure
+            RunProcedure frame = scope;
+            for (int depth = instruction.lexicalDepth; depth > 0; depth--) {
+                frame = frame.enclosing;
+            }
+            element = frame.frame[instruction.lexicalSlot];
+        } else {
+            // names the procedure did not capture are only looked for in the current dictionary
+            element = dict.currentLookup(instruction.operand);
+        }
+        if (element != null) {
+            // function execution
+            if (element instanceof Runnable) {
+                ((Runnable)element).run();
+                return;
+            }
+            // push variable if not function
+            stack.push(element);
+            return;
+        }
+        if (operator == null) {
+            throw new IllegalArgumentException("Error: Command Not Recognized.");
+        }
+        operator.run();
+    }
+
+    /**
+     * Looks a name up under dynamic scoping through the instruction's inline cache. The cached binding is
+     * reused until the dictionary stack's epoch or the stamp of the dictionary it was found in changes.
+     * @param instruction Instruction naming the value to look up.
+     * @return Visible value of the name, or null if it is not defined.
+     */
+    private Object cachedLookup(Instruction instruction) {
+        int epoch = dict.epoch();
+        PSDict found = instruction.cachedDict;
+        if (instruction.cachedEpoch != epoch || (found != null && found.stamp() != instruction.cachedStamp)) {
+            found = dict.where(instruction.operand);
+            instruction.cachedDict = found;
+            instruction.cachedEpoch = epoch;
+            if (found != null) {
+                instruction.cachedStamp = found.stamp();
+                instruction.cachedValue = found.get(instruction.operand);
+            } else {
+                instruction.cachedValue = null;
+            }
+        }
+        return instruction.cachedValue;
+    }
+
+    /**
+     * Pre-decoded unit of a compiled procedure body.
+     */
+    private static final class Instruction {
+
+        // instruction kinds
+        static final int PUSH_INT = 0;
+        static final int PUSH_REAL = 1;
+        static final int PUSH_STRING = 2;
+        static final int PUSH_NAME = 3;
+        static final int PUSH_PROC = 4;
+        static final int EXEC_NAME = 5;
+        static final int REGION = 6;
+        static final int IF_CONSTANT = 7;
+        static final int EMPTY_IF = 8;
+        static final int SUPERINSTRUCTION = 9;
+
+        final int kind;
+        // literal value, nested procedure, or interned name to execute
+        final Object operand;
+        // built-in operator registered under the name, only set on EXEC_NAME
+        final MyOperator operator;
+        // instructions a REGION, IF_CONSTANT, EMPTY_IF or superinstruction stands for, null on any other kind
+        final Instruction[] region;
+        // inline cache of the name's binding: the dictionary stack epoch and the stamp of the dictionary
+        // holding the binding at the time of the lookup; an instruction with a region caches TRUE while none of
+        // the region's names is bound, and null otherwise
+        int cachedEpoch;
+        PSDict cachedDict;
+        int cachedStamp;
+        Object cachedValue;
+        // position of the name in the frame of the procedure defined under lexical scoping that resolved it,
+        // which is lexicalDepth procedures out from the one holding the instruction; -1 when unresolved
+        int lexicalDepth;
+        int lexicalSlot = -1;
+
+        /**
+         * Constructor.
+         * @param kind Instruction kind.
+         * @param operand Literal value, nested procedure, or name to execute.
+         * @param operator Built-in operator registered under the name.
+         */
+        Instruction(int kind, Object operand, MyOperator operator) {
+            this.kind = kind;
+            this.operand = operand;
+            this.operator = operator;
+            this.region = null;
+        }
+
+        /**
+         * Constructor of an instruction standing for several.
+         * @param kind REGION, IF_CONSTANT, EMPTY_IF or SUPERINSTRUCTION.
+         * @param region Instructions it stands for.
+         * @param operand Register block of a REGION, procedure an IF_CONSTANT runs, fused operation
+         * of a superinstruction, or null.
+         */
+        Instruction(int kind, Instruction[] region, Object operand) {
+            this.kind = kind;
+            this.operand = operand;
+            this.operator = null;
+            this.region = region;
+        }
+    }
+
+    /**
+     * Inner-class that servers to implement the Runnable interface for instantiation and procedural execution.
+     * Procedures run in the session that compiled them.
+     */
+    private final class RunProcedure implements MyLexicalProcedure {
+
+        private final Instruction[] body;
+        // instructions of the body that do not stand for others, which count themselves when they run
+        private final int counted;
+        // values of the names resolved when the procedure was defined under lexical scoping
+        private Object[] frame;
+        // procedure whose body pushes this one, for reaching the frames of enclosing procedures
+        private RunProcedure enclosing;
+        // times the procedure has run while interpreted, and its compiled body once it has one
+        private int runs;
+        private Runnable compiled;
+        // profile the procedure's runs are reported to, and the number they are reported under
+        private MyNgramProfile profile;
+        private int profiled;
+
+        /**
+         * Constructor
+         * @param body Compiled instructions of the procedure.
+         */
+        RunProcedure(Instruction[] body) {
+            this.body = body;
+            int regions = 0;
+            for (Instruction instruction : body) {
+                regions += instruction.region != null ? 1 : 0;
+            }
+            this.counted = body.length - regions;
+        }
+
+        /**
+         * Resolves the names the procedure and its nested procedures refer to into slots of this procedure's frame.
+         * @param environment Environment captured when the procedure is defined.
+         */
+        @Override
+        public void resolve(MyEnvironment environment) {
+            List<Object> values = new ArrayList<>();
+            resolve(body, environment, 0, values, new HashMap<>());
+            frame = values.toArray();
+        }
+
+        /**
+         * Assigns a frame slot to every name in the body that the environment defines.
+         * @param instructions Instructions of the body, or of a region in it.
+         * @param environment Environment captured when the outermost procedure is defined.
+         * @param depth Number of procedures between this one and the outermost procedure.
+         * @param values Contents of the outermost procedure's frame.
+         * @param slots Slot already assigned to each name.
+         */
+        private void resolve(Instruction[] instructions, MyEnvironment environment, int depth, List<Object> values,
+                             Map<Object, Integer> slots) {
+            for (Instruction instruction : instructions) {
+                if (instruction.kind == Instruction.EXEC_NAME) {
+                    Object value = environment.get(instruction.operand);
+                    if (value == null) {
+                        instruction.lexicalSlot = -1;
+                        continue;
+                    }
+                    Integer slot = slots.get(instruction.operand);
+                    if (slot == null) {
+                        slot = values.size();
+                        slots.put(instruction.operand, slot);
+                        values.add(value);
+                    }
+                    instruction.lexicalDepth = depth;
+                    instruction.lexicalSlot = slot;
+                } else if (instruction.kind == Instruction.PUSH_PROC) {
+                    RunProcedure nested = (RunProcedure) instruction.operand;
+                    nested.enclosing = this;
+                    nested.resolve(nested.body, environment, depth + 1, values, slots);
+                } else if (instruction.region != null) {
+                    // the region's names have to be looked at again once they may have been captured
+                    instruction.cachedEpoch = 0;
+                    resolve(instruction.region, environment, depth, values, slots);
+                }
+            }
+        }
+
+        /**
+         * Heart of the thread, defining the code for execution at its start.
+         */
+        @Override
+        public void run() {
+            if (profile != null) {
+                profile.ran(profiled);
+            }
+            if (compiling && compiled == null && ++runs == COMPILE_THRESHOLD) {
+                compiled = compile();
+            }
+            Runnable originalProc = dict.getProc();
+            dict.setProc(this);
+            try {
+                if (compiled != null) {
+                    // compiled bodies are counted as a whole, as if every instruction ran
+                    executed += counted;
+                    compiled.run();
+                    return;
+                }
+                for (Instruction instruction : body) {
+                    execute(instruction, this);
+                }
+            } finally {
+                dict.setProc(originalProc);
+            }
+        }
+
+        /**
+         * Compiles the body into a hidden class with a step per instruction: literals are pushed straight onto
+         * the stack, names go through the same lookup as when interpreted, with the instruction, the procedure
+         * and the built-in operator bound in as constants.
+         * @return Compiled body, or null if it cannot be compiled, in which case it stays interpreted.
+         */
+        private Runnable compile() {
+            if (body.length > MyCompiler.MAX_STEPS) {
+                return null;
+            }
+            List<MethodHandle> steps = new ArrayList<>(body.length);
+            for (Instruction instruction : body) {
+                switch (instruction.kind) {
+                    case Instruction.PUSH_INT:
+                        steps.add(MethodHandles.insertArguments(PUSH_INT, 0, stack, instruction.operand));
+                        break;
+                    case Instruction.PUSH_REAL:
+                        steps.add(MethodHandles.insertArguments(PUSH_REAL, 0, stack, instruction.operand));
+                        break;
+                    case Instruction.PUSH_STRING:
+                    case Instruction.PUSH_NAME:
+                    case Instruction.PUSH_PROC:
+                        steps.add(MethodHandles.insertArguments(PUSH, 0, stack, instruction.operand));
+                        break;
+                    case Instruction.REGION:
+                    case Instruction.IF_CONSTANT:
+                    case Instruction.EMPTY_IF:
+                        steps.add(MethodHandles.insertArguments(EXECUTE_REGION, 0, MyInterpreter.this, instruction,
+                            this));
+                        break;
+                    case Instruction.SUPERINSTRUCTION:
+                        steps.add(MethodHandles.insertArguments(EXECUTE_FUSED, 0, MyInterpreter.this, instruction,
+                            this));
+                        break;
+                    default:
+                        steps.add(MethodHandles.insertArguments(EXECUTE_NAME, 0, MyInterpreter.this, instruction,
+                            this, instruction.operator));
+                }
+            }
+            try {
+                return MyCompiler.compile(MethodHandles.lookup(), steps);
+            } catch (IllegalAccessException | RuntimeException | LinkageError e) {
+                // the interpreter runs anything the compiler cannot handle
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,516 @@
+/**
+ * Single-pass PostScript lexer that turns a character buffer into typed tokens. Numbers are recognised
+ * while scanning rather than by catching parse failures, and procedure braces, strings, and names are
+ * self-delimiting, so `{1 2 add}` needs no surrounding whitespace.
+ * @author Aaron Howe
+ * @version Java 11
+ */
+public class MyLexer {
+
+    // token types
+    public static final int EOF = 0;
+    public static final int INTEGER = 1;
+    public static final int REAL = 2;
+    public static final int STRING = 3;
+    public static final int NAME = 4;
+    public static final int LITERAL_NAME = 5;
+    public static final int IMMEDIATE_NAME = 6;
+    public static final int PROC_BEGIN = 7;
+    public static final int PROC_END = 8;
+
+    // powers of ten that are exactly representable as doubles
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    // character buffer being scanned, and the bounds of its unread contents
+    protected char[] buffer;
+    protected int position;
+    protected int limit;
+    // start of the token being scanned
+    protected int tokenStart;
+
+    // value of the most recently scanned token
+    private int intValue;
+    private double realValue;
+    private String text;
+    private PSName name;
+    // storage for string contents, which can differ from the source characters due to escapes
+    private char[] scratch = new char[64];
+
+    /**
+     * Constructor.
+     * @param input Source text to scan.
+     */
+    public MyLexer(String input) {
+        this(input.toCharArray(), 0, input.length());
+    }
+
+    /**
+     * Constructor for scanning part of an existing character buffer without copying it.
+     * @param buffer Source characters.
+     * @param offset Index of the first character to scan.
+     * @param length Number of characters to scan.
+     */
+    public MyLexer(char[] buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    /**
+     * Makes more source characters available once the buffer has been consumed. Implementations may move
+     * the buffer's contents but must keep every character from tokenStart onward, adjusting tokenStart,
+     * position, and limit to match. The base lexer scans a single fixed buffer and has nothing more to offer.
+     * @return True if at least one more character can be read at position.
+     */
+    protected boolean fill() {
+        return false;
+    }
+
+    /**
+     * Refills the buffer while skipping characters that are not part of any token.
+     * @return True if at least one more character can be read at position.
+     */
+    private boolean skip() {
+        tokenStart = position;
+        return fill();
+    }
+
+    /**
+     * Scans the next token.
+     * @return Type of the token, or EOF when the source is exhausted.
+     * @throws IllegalArgumentException when the source contains a malformed string or stray delimiter.
+     */
+    public int next() {
+        while (true) {
+            // nothing before position is needed any more when the buffer is refilled between tokens
+            tokenStart = position;
+            if (position >= limit && !fill()) {
+                return EOF;
+            }
+            char c = buffer[position];
+            if (isWhitespace(c)) {
+                position++;
+                continue;
+            }
+            // comments run to the end of the line
+            if (c == '%') {
+                while ((position < limit || skip()) && buffer[position] != '\n' && buffer[position] != '\r') {
+                    position++;
+                }
+                continue;
+            }
+            tokenStart = position++;
+            switch (c) {
+                case '{':
+                    return PROC_BEGIN;
+                case '}':
+                    return PROC_END;
+                case '(':
+                    return scanString();
+                case ')':
+                    throw new IllegalArgumentException("Syntax Error: unmatched ')'.");
+                case '<':
+                    if (peek() == '<') {
+                        position++;
+                        return name(tokenStart, 2);
+                    }
+                    return scanHexString();
+                case '>':
+                    if (peek() == '>') {
+                        position++;
+                        return name(tokenStart, 2);
+                    }
+                    throw new IllegalArgumentException("Syntax Error: unmatched '>'.");
+                case '[':
+                    return name(tokenStart, 1);
+                case ']':
+                    return name(tokenStart, 1);
+                case '/':
+                    int type = LITERAL_NAME;
+                    if (peek() == '/') {
+                        position++;
+                        type = IMMEDIATE_NAME;
+                    }
+                    tokenStart = position;
+                    scanRegular();
+                    name(tokenStart, position - tokenStart);
+                    return type;
+                default:
+                    scanRegular();
+                    int number = scanNumber(tokenStart, position);
+                    if (number != NAME) {
+                        return number;
+                    }
+                    return name(tokenStart, position - tokenStart);
+            }
+        }
+    }
+
+    /**
+     * Integer Value Getter Function.
+     * @return Value of the last INTEGER token.
+     */
+    public int intValue() {
+        return intValue;
+    }
+
+    /**
+     * Real Value Getter Function.
+     * @return Value of the last REAL token.
+     */
+    public double realValue() {
+        return realValue;
+    }
+
+    /**
+     * Text Getter Function.
+     * @return Contents of the last STRING token, or the name of the last name token without its slashes.
+     */
+    public String text() {
+        return text;
+    }
+
+    /**
+     * Name Getter Function.
+     * @return Interned name of the last name token, without its slashes.
+     */
+    public PSName name() {
+        return name;
+    }
+
+    /**
+     * Interns the characters of a name token, which allocates nothing once the name has been seen.
+     * @param start Index of the first character of the name.
+     * @param length Number of characters.
+     * @return NAME.
+     */
+    private int name(int start, int length) {
+        name = PSName.intern(buffer, start, length);
+        text = name.toString();
+        return NAME;
+    }
+
+    /**
+     * Checks whether a character separates tokens.
+     * @param c Character to check.
+     * @return True for PostScript whitespace.
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\f' || c == '\0';
+    }
+
+    /**
+     * Checks whether a character can be part of a number or name.
+     * @param c Character to check.
+     * @return True unless the character is whitespace or a delimiter.
+     */
+    private static boolean isRegular(char c) {
+        switch (c) {
+            case '(': case ')': case '<': case '>': case '[': case ']':
+            case '{': case '}': case '/': case '%':
+                return false;
+            default:
+                return !isWhitespace(c);
+        }
+    }
+
+    /**
+     * Looks at the next character without consuming it.
+     * @return Next character, or -1 when the source is exhausted.
+     */
+    private int peek() {
+        if (position >= limit && !fill()) {
+            return -1;
+        }
+        return buffer[position];
+    }
+
+    /**
+     * Advances past the regular characters making up a number or name.
+     */
+    private void scanRegular() {
+        while ((position < limit || fill()) && isRegular(buffer[position])) {
+            position++;
+        }
+    }
+
+    /**
+     * Classifies a run of regular characters as an integer, real or radix number.
+     * @param start Index of the first character.
+     * @param end Index past the last character.
+     * @return INTEGER or REAL with the value stored, or NAME if the characters are not a number.
+     */
+    private int scanNumber(int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (buffer[i] == '+' || buffer[i] == '-') {
+            negative = buffer[i] == '-';
+            i++;
+        }
+        // significant digits of the mantissa, and how many digits did not fit into it
+        long mantissa = 0;
+        int significant = 0;
+        int integerDigits = 0;
+        int fractionDigits = 0;
+        while (i < end && isDigit(buffer[i])) {
+            if (mantissa != 0 || buffer[i] != '0') {
+                significant++;
+            }
+            if (significant <= 18) {
+                mantissa = mantissa * 10 + (buffer[i] - '0');
+            }
+            integerDigits++;
+            i++;
+        }
+        // radix numbers such as 16#FF or 2#1010
+        if (i < end && buffer[i] == '#' && i > start && buffer[start] != '+' && buffer[start] != '-') {
+            return scanRadix(start, i, end);
+        }
+        boolean real = false;
+        if (i < end && buffer[i] == '.') {
+            real = true;
+            i++;
+            while (i < end && isDigit(buffer[i])) {
+                if (mantissa != 0 || buffer[i] != '0') {
+                    significant++;
+                }
+                if (significant <= 18) {
+                    mantissa = mantissa * 10 + (buffer[i] - '0');
+                    fractionDigits++;
+                }
+                i++;
+            }
+            if (integerDigits == 0 && i == start + (negative || buffer[start] == '+' ? 2 : 1)) {
+                return NAME;
+            }
+        } else if (integerDigits == 0) {
+            return NAME;
+        }
+        int exponent = 0;
+        if (i < end && (buffer[i] == 'e' || buffer[i] == 'E')) {
+            real = true;
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (buffer[i] == '+' || buffer[i] == '-')) {
+                negativeExponent = buffer[i] == '-';
+                i++;
+            }
+            int exponentStart = i;
+            while (i < end && isDigit(buffer[i])) {
+                // saturate rather than overflow, the result is zero or infinite anyway
+                if (exponent < 100000) {
+                    exponent = exponent * 10 + (buffer[i] - '0');
+                }
+                i++;
+            }
+            if (i == exponentStart) {
+                return NAME;
+            }
+            if (negativeExponent) {
+                exponent = -exponent;
+            }
+        }
+        if (i != end) {
+            return NAME;
+        }
+        // digits beyond the mantissa's capacity still scale the integer part
+        int dropped = Math.max(0, significant - 18);
+        if (!real) {
+            long value = negative ? -mantissa : mantissa;
+            if (significant <= 10 && value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                intValue = (int) value;
+                return INTEGER;
+            }
+            // integers that overflow become reals, as in PostScript
+            if (dropped == 0) {
+                realValue = value;
+                return REAL;
+            }
+        } else {
+            int scale = exponent - fractionDigits;
+            if (significant <= 15 && scale >= -22 && scale <= 22) {
+                double value = scale < 0 ? mantissa / POWERS_OF_TEN[-scale] : mantissa * POWERS_OF_TEN[scale];
+                realValue = negative ? -value : value;
+                return REAL;
+            }
+        }
+        // the syntax has been validated, only rounding of long mantissas is left to the library
+        realValue = Double.parseDouble(new String(buffer, start, end - start));
+        return REAL;
+    }
+
+    /**
+     * Parses a radix number of the form base#digits.
+     * @param start Index of the first character of the base.
+     * @param hash Index of the '#' separator.
+     * @param end Index past the last digit.
+     * @return INTEGER with the value stored, or NAME if the characters are not a valid radix number.
+     */
+    private int scanRadix(int start, int hash, int end) {
+        int base = 0;
+        for (int i = start; i < hash; i++) {
+            base = base * 10 + (buffer[i] - '0');
+            if (base > 36) {
+                return NAME;
+            }
+        }
+        if (base < 2 || hash + 1 == end) {
+            return NAME;
+        }
+        long value = 0;
+        for (int i = hash + 1; i < end; i++) {
+            int digit = Character.digit(buffer[i], base);
+            if (digit < 0) {
+                return NAME;
+            }
+            value = value * base + digit;
+            if (value > 0xFFFFFFFFL) {
+                return NAME;
+            }
+        }
+        // radix numbers denote the 32 bits of an integer, so 16#FFFFFFFF is -1
+        intValue = (int) value;
+        return INTEGER;
+    }
+
+    /**
+     * Checks whether a character is a decimal digit.
+     * @param c Character to check.
+     * @return True for 0 through 9.
+     */
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Scans a string literal after its opening parenthesis, honouring nested balanced parentheses
+     * and backslash escapes.
+     * @return STRING with the text stored.
+     * @throws IllegalArgumentException when the string is not terminated.
+     */
+    private int scanString() {
+        int depth = 1;
+        int length = 0;
+        while (true) {
+            if (position >= limit && !skip()) {
+                throw new IllegalArgumentException("Syntax Error: unterminated string.");
+            }
+            // string contents are collected in the scratch buffer, the source characters need not be kept
+            tokenStart = position;
+            char c = buffer[position++];
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                if (--depth == 0) {
+                    break;
+                }
+            } else if (c == '\r') {
+                // end-of-line sequences inside strings read as a single newline
+                if (peek() == '\n') {
+                    position++;
+                }
+                c = '\n';
+            } else if (c == '\\') {
+                int escaped = peek();
+                if (escaped < 0) {
+                    throw new IllegalArgumentException("Syntax Error: unterminated string.");
+                }
+                position++;
+                switch (escaped) {
+                    case 'n':
+                        c = '\n';
+                        break;
+                    case 'r':
+                        c = '\r';
+                        break;
+                    case 't':
+                        c = '\t';
+                        break;
+                    case 'b':
+                        c = '\b';
+                        break;
+                    case 'f':
+                        c = '\f';
+                        break;
+                    case '\r':
+                        if (peek() == '\n') {
+                            position++;
+                        }
+                        continue;
+                    case '\n':
+                        // a backslash before a line break continues the string on the next line
+                        continue;
+                    default:
+                        if (escaped >= '0' && escaped <= '7') {
+                            int code = escaped - '0';
+                            for (int digits = 1; digits < 3 && peek() >= '0' && peek() <= '7'; digits++) {
+                                code = code * 8 + (buffer[position++] - '0');
+                            }
+                            c = (char) (code & 0xFF);
+                        } else {
+                            // unknown escapes, including \\ \( and \), stand for the character itself
+                            c = (char) escaped;
+                        }
+                }
+            }
+            length = append(length, c);
+        }
+        text = new String(scratch, 0, length);
+        return STRING;
+    }
+
+    /**
+     * Scans a hexadecimal string literal after its opening angle bracket.
+     * @return STRING with the decoded text stored.
+     * @throws IllegalArgumentException when the string is not terminated or contains a non-hex character.
+     */
+    private int scanHexString() {
+        int length = 0;
+        int high = -1;
+        while (true) {
+            if (position >= limit && !skip()) {
+                throw new IllegalArgumentException("Syntax Error: unterminated hex string.");
+            }
+            char c = buffer[position++];
+            if (c == '>') {
+                break;
+            }
+            if (isWhitespace(c)) {
+                continue;
+            }
+            int digit = Character.digit(c, 16);
+            if (digit < 0) {
+                throw new IllegalArgumentException("Syntax Error: invalid character in hex string.");
+            }
+            if (high < 0) {
+                high = digit;
+            } else {
+                length = append(length, (char) (high << 4 | digit));
+                high = -1;
+            }
+        }
+        // an odd final digit is padded with zero
+        if (high >= 0) {
+            length = append(length, (char) (high << 4));
+        }
+        text = new String(scratch, 0, length);
+        return STRING;
+    }
+
+    /**
+     * Appends a character to the string scratch buffer, growing it when full.
+     * @param length Number of characters already in the scratch buffer.
+     * @param c Character to append.
+     * @return New length.
+     */
+    private int append(int length, char c) {
+        if (length == scratch.length) {
+            scratch = java.util.Arrays.copyOf(scratch, length * 2);
+        }
+        scratch[length] = c;
+        return length + 1;
+    }
+}
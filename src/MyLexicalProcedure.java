@@ -0,0 +1,14 @@
+/**
+ * Procedure that resolves the names it refers to against the lexical environment it is defined in,
+ * so that they need not be looked up by name each time it runs.
+ * @author Aaron Howe
+ * @version Java 11
+ */
+public interface MyLexicalProcedure extends Runnable {
+
+    /**
+     * Binds every name the procedure and its nested procedures refer to that the environment defines.
+     * @param environment Environment captured when the procedure is defined.
+     */
+    void resolve(MyEnvironment environment);
+}
@@ -0,0 +1,67 @@
+import java.util.*;
+
+/**
+ * Counts how often each short sequence of consecutive instructions, such as a bigram or trigram, runs inside
+ * procedures, across any number of sessions, so the sequences worth a superinstruction can be read off real
+ * programs. Sessions report each procedure body once when it is compiled and then every run of it, so profiling
+ * costs one increment per run; a body's sequences are only added up, weighted by its runs, when the counts are
+ * asked for.
+ * <p>
+ * Instructions are written the way they appear in the source, except that procedure literals are written as
+ * {} when empty and {...} otherwise, strings as (...) and reals as &lt;real&gt;, so that no instruction holds a
+ * space.
+ * @author Aaron Howe
+ * @version Java 11
+ */
+public final class MyNgramProfile {
+
+    // instructions of each profiled body, and the times it has run
+    private final List<String[]> bodies = new ArrayList<>();
+    private long[] runs = new long[64];
+
+    /**
+     * Registers a procedure body.
+     * @param instructions Body as written, one instruction per element.
+     * @return Number the body's runs are reported under.
+     */
+    public int procedure(List<String> instructions) {
+        if (bodies.size() == runs.length) {
+            runs = Arrays.copyOf(runs, runs.length * 2);
+        }
+        bodies.add(instructions.toArray(new String[0]));
+        return bodies.size() - 1;
+    }
+
+    /**
+     * Records a run of a procedure body.
+     * @param procedure Number procedure() returned for the body.
+     */
+    public void ran(int procedure) {
+        runs[procedure]++;
+    }
+
+    /**
+     * Adds up how often each sequence of n instructions has run.
+     * @param n Length of the sequences, 2 for bigrams and 3 for trigrams.
+     * @return Count of each sequence, instructions separated by spaces, most frequent first.
+     */
+    public Map<String, Long> counts(int n) {
+        Map<String, Long> counts = new HashMap<>();
+        for (int i = 0; i < bodies.size(); i++) {
+            String[] body = bodies.get(i);
+            if (runs[i] == 0) {
+                continue;
+            }
+            for (int start = 0; start + n <= body.length; start++) {
+                counts.merge(String.join(" ", Arrays.asList(body).subList(start, start + n)), runs[i], Long::sum);
+            }
+        }
+        List<Map.Entry<String, Long>> sorted = new ArrayList<>(counts.entrySet());
+        sorted.sort(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+        Map<String, Long> ordered = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> entry : sorted) {
+            ordered.put(entry.getKey(), entry.getValue());
+        }
+        return ordered;
+    }
+}
@@ -0,0 +1,212 @@
+import java.util.*;
+
+/**
+ * Arithmetic or comparison operator at one place in a procedure body, which specializes itself on the types of
+ * the operands it sees there. The first run records whether the operands are two integers, two reals, or an
+ * integer and a real, and later runs take the matching fast path behind a single check of both operands' tags.
+ * Operands of another type deoptimize the node to the generic operator for good, so a site that sees several
+ * kinds of operands stops checking for one of them.
+ * <p>
+ * Each fast path gives exactly the result of the generic operator: integer arithmetic wraps, arithmetic on
+ * reals holding whole values gives an integer, and comparisons of booleans, strings, or names are left to the
+ * generic operator.
+ * @author Aaron Howe
+ * @version Java 11
+ */
+public final class MyNumericNode implements Runnable {
+
+    // node states
+    public static final int UNINITIALIZED = 0;
+    public static final int INT_INT = 1;
+    public static final int REAL_REAL = 2;
+    public static final int MIXED = 3;
+    public static final int GENERIC = 4;
+
+    // operators with a node of their own, in the order of the operation codes below
+    private static final List<String> OPERATORS = List.of("add", "sub", "mul", "eq", "ne", "gt", "lt", "ge", "le");
+    private static final int ADD = 0;
+    private static final int SUB = 1;
+    private static final int MUL = 2;
+    private static final int EQ = 3;
+    private static final int NE = 4;
+    private static final int GT = 5;
+    private static final int LT = 6;
+    private static final int GE = 7;
+
+    private final MyStack stack;
+    private final MyOperator generic;
+    private final int operation;
+    private int state = UNINITIALIZED;
+
+    /**
+     * Constructor.
+     * @param stack Operand stack of the session.
+     * @param generic Built-in operator the node stands for, one that specializes() accepts.
+     * @throws IllegalArgumentException when the operator has no node.
+     */
+    public MyNumericNode(MyStack stack, MyOperator generic) {
+        this.stack = stack;
+        this.generic = generic;
+        this.operation = OPERATORS.indexOf(generic.getName());
+        if (operation < 0) {
+            throw new IllegalArgumentException("Error: No node for " + generic + ".");
+        }
+    }
+
+    /**
+     * Checks whether an operator gets a self-specializing node.
+     * @param operator Built-in operator, or null.
+     * @return True for the arithmetic and comparison operators on numbers.
+     */
+    public static boolean specializes(MyOperator operator) {
+        return operator != null && OPERATORS.contains(operator.getName());
+    }
+
+    /**
+     * Runs the operator, through the fast path the node has specialized on when its guard holds.
+     */
+    @Override
+    public void run() {
+        int tags = stack.pairTags();
+        switch (state) {
+            case INT_INT:
+                if (tags == MyStack.INT_INT) {
+                    ints(stack.intAt(1), stack.intAt(0));
+                    return;
+                }
+                break;
+            case REAL_REAL:
+                if (tags == MyStack.REAL_REAL) {
+                    reals(stack.realAt(1), stack.realAt(0));
+                    return;
+                }
+                break;
+            case MIXED:
+                if (tags == MyStack.INT_REAL || tags == MyStack.REAL_INT) {
+                    reals(stack.realAt(1), stack.realAt(0));
+                    return;
+                }
+                break;
+            case GENERIC:
+                generic.run();
+                return;
+            default:
+                // first run, specialize on what is here and go again
+                state = specialization(tags);
+                run();
+                return;
+        }
+        // the guard failed, this site sees more than one kind of operands
+        state = GENERIC;
+        generic.run();
+    }
+
+    /**
+     * State Getter Function.
+     * @return UNINITIALIZED, INT_INT, REAL_REAL, MIXED or GENERIC.
+     */
+    public int state() {
+        return state;
+    }
+
+    /**
+     * Picks the state for the operands on top of the stack.
+     * @param tags Tags of the two top elements, as pairTags() reports them.
+     * @return State whose fast path handles them, or GENERIC.
+     */
+    private static int specialization(int tags) {
+        switch (tags) {
+            case MyStack.INT_INT:
+                return INT_INT;
+            case MyStack.REAL_REAL:
+                return REAL_REAL;
+            case MyStack.INT_REAL:
+            case MyStack.REAL_INT:
+                return MIXED;
+            default:
+                return GENERIC;
+        }
+    }
+
+    /**
+     * Fast path for two integers.
+     * @param second Element below the top.
+     * @param first Top element.
+     */
+    private void ints(int second, int first) {
+        switch (operation) {
+            case ADD:
+                stack.collapseInt(second + first);
+                return;
+            case SUB:
+                stack.collapseInt(second - first);
+                return;
+            case MUL:
+                stack.collapseInt(second * first);
+                return;
+            default:
+                compared(Integer.compare(second, first));
+        }
+    }
+
+    /**
+     * Fast path for two numbers of which at least one is a real.
+     * @param second Element below the top.
+     * @param first Top element.
+     */
+    private void reals(double second, double first) {
+        // whole values give an integer, as in MyArithmetic
+        boolean whole = MyArithmetic.isWhole(second) && MyArithmetic.isWhole(first);
+        switch (operation) {
+            case ADD:
+                if (whole) {
+                    stack.collapseInt((int) second + (int) first);
+                } else {
+                    stack.collapseReal(second + first);
+                }
+                return;
+            case SUB:
+                if (whole) {
+                    stack.collapseInt((int) second - (int) first);
+                } else {
+                    stack.collapseReal(second - first);
+                }
+                return;
+            case MUL:
+                if (whole) {
+                    stack.collapseInt((int) second * (int) first);
+                } else {
+                    stack.collapseReal(second * first);
+                }
+                return;
+            default:
+                compared(Double.compare(second, first));
+        }
+    }
+
+    /**
+     * Replaces the operands with the result of a comparison.
+     * @param comparison Sign of the comparison of the element below the top with the top element.
+     */
+    private void compared(int comparison) {
+        switch (operation) {
+            case EQ:
+                stack.collapseBool(comparison == 0);
+                return;
+            case NE:
+                stack.collapseBool(comparison != 0);
+                return;
+            case GT:
+                stack.collapseBool(comparison > 0);
+                return;
+            case LT:
+                stack.collapseBool(comparison < 0);
+                return;
+            case GE:
+                stack.collapseBool(comparison >= 0);
+                return;
+            default:
+                stack.collapseBool(comparison <= 0);
+        }
+    }
+}
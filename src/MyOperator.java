@@ -0,0 +1,45 @@
+/**
+ * Built-in operator registered in the operator table, executed by name from the interpreter.
+ * @author Aaron Howe
+ * @version Java 11
+ */
+public final class MyOperator implements Runnable {
+
+    private final String name;
+    private final Runnable action;
+
+    /**
+     * Constructor.
+     * @param name Name the operator is registered under.
+     * @param action Operation performed when the operator is executed.
+     */
+    public MyOperator(String name, Runnable action) {
+        this.name = name;
+        this.action = action;
+    }
+
+    /**
+     * Executes the operator.
+     */
+    @Override
+    public void run() {
+        action.run();
+    }
+
+    /**
+     * Name Getter Function.
+     * @return Name the operator is registered under.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Formats the operator the way PostScript displays operators.
+     * @return Operator name enclosed in double dashes.
+     */
+    @Override
+    public String toString() {
+        return "--" + name + "--";
+    }
+}
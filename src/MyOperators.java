@@ -0,0 +1,133 @@
+import java.util.*;
+
+/**
+ * Table of built-in operators, playing the role of PostScript's systemdict. Operators are registered
+ * once under interned names so resolving a name is a single hash lookup instead of a string switch.
+ * @author Aaron Howe
+ * @version Java 11
+ */
+public class MyOperators {
+
+    private final Map<String, MyOperator> operators;
+
+    /**
+     * Constructor, registers every built-in operator against the given interpreter components.
+     */
+    public MyOperators(MyStack stack, MyArithmetic arith, MyDictionary dict, MyString string,
+                       MyBoolean bool, MyFlowControl flow, MyIO io) {
+        this.operators = new HashMap<>(128);
+        // stack
+        define("exch", stack::exch);
+        define("pop", stack::pop);
+        define("copy", stack::copy);
+        define("dup", stack::dup);
+        define("clear", stack::clear);
+        define("count", stack::count);
+        // arithmetic
+        define("add", arith::add);
+        define("sub", arith::sub);
+        define("mul", arith::mul);
+        define("div", arith::div);
+        define("idiv", arith::iDiv);
+        define("mod", arith::mod);
+        define("abs", arith::abs);
+        define("neg", arith::neg);
+        define("ceiling", arith::ceiling);
+        define("floor", arith::floor);
+        define("round", arith::round);
+        define("sqrt", arith::sqrt);
+        // dictionary
+        define("dict", dict::dict);
+        define("maxlength", dict::maxLength);
+        define("begin", dict::begin);
+        define("end", dict::end);
+        define("def", dict::def);
+        define("store", dict::store);
+        define("load", dict::load);
+        define("where", dict::where);
+        define("known", dict::known);
+        define("undef", dict::undef);
+        define("dyn", dict::dyn);
+        define("lex", dict::lex);
+        // length contains extra logic to account for its ambiguity
+        define("length", () -> {
+            Object operand = stack.peek();
+            // call length on dict if the operand at the top of the stack is a Map
+            if (operand instanceof Map) {
+                dict.length();
+            // or call length on string if the operand at the top of the stack is a String
+            } else if (operand instanceof CharSequence || operand instanceof PSName) {
+                string.length();
+            } else {
+                throw new IllegalArgumentException("length can only be called on strings or dictionaries");
+            }
+        });
+        // string
+        define("string", string::newString);
+        define("get", string::get);
+        define("put", string::put);
+        define("getinterval", string::getInterval);
+        define("putinterval", string::putInterval);
+        define("cvs", string::cvs);
+        define("cvrs", string::cvrs);
+        // boolean
+        define("eq", bool::isEqual);
+        define("ne", bool::notEqual);
+        define("gt", bool::greaterThan);
+        define("lt", bool::lessThan);
+        define("ge", bool::greaterThanOrEqualTo);
+        define("le", bool::lessThanOrEqualTo);
+        define("and", bool::and);
+        define("or", bool::or);
+        define("not", bool::not);
+        define("true", bool::psTrue);
+        define("false", bool::psFalse);
+        // flow control
+        define("if", flow::ifCondition);
+        define("ifelse", flow::ifElseCondition);
+        define("for", flow::forLoop);
+        define("repeat", flow::repeat);
+        define("quit", flow::quit);
+        // input/output
+        define("print", io::print);
+        define("=", io::printElement);
+        define("==", io::printArray);
+        define("flush", io::flush);
+        define("flushfile", io::flushFile);
+    }
+
+    /**
+     * Registers an operator under the given name, replacing any operator of the same name.
+     * @param name Operator name.
+     * @param action Operation performed when the operator is executed.
+     */
+    public void define(String name, Runnable action) {
+        String key = name.intern();
+        operators.put(key, new MyOperator(key, action));
+    }
+
+    /**
+     * Resolves a name to its built-in operator. Operator names are matched case-insensitively, but
+     * the lowercased copy is only made when the exact name is not registered.
+     * @param name Name to resolve.
+     * @return Registered operator, or null when the name is not an operator.
+     */
+    public MyOperator lookup(String name) {
+        MyOperator operator = operators.get(name);
+        if (operator == null) {
+            String lower = name.toLowerCase();
+            if (!lower.equals(name)) {
+                operator = operators.get(lower);
+            }
+        }
+        return operator;
+    }
+
+    /**
+     * Counts the registered operators.
+     * @return Number of operators in the table.
+     */
+    public int count() {
+        return operators.size();
+    }
+}
@@ -0,0 +1,339 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+
+/**
+ * Buffered sink for everything the interpreter writes to standard output. Text is encoded straight into a
+ * large direct buffer that is only written out when it fills up or is flushed, instead of taking the
+ * stream's lock and flushing on every line. Optionally a background thread does the writing, fed through
+ * a ring buffer, so the interpreter keeps running while a slow pipe drains.
+ * @author Aaron Howe
+ * @version Java 11
+ */
+public class MyOutput implements Closeable {
+
+    // bytes collected before they are handed on
+    private static final int BUFFER_SIZE = 256 * 1024;
+    // bytes the background writer can fall behind by before the interpreter has to wait for it
+    private static final int RING_SIZE = 4 * 1024 * 1024;
+    private static final byte[] NEWLINE = System.lineSeparator().getBytes(StandardCharsets.ISO_8859_1);
+
+    private final WritableByteChannel channel;
+    // stream behind the channel that needs flushing itself, or null when the channel is unbuffered
+    private final Flushable stream;
+    private final ByteBuffer buffer;
+    private final Charset charset = Charset.defaultCharset();
+    // background writer, or null when the interpreter writes to the channel itself
+    private final Ring ring;
+    // numbers are formatted here before being copied into the buffer
+    private final byte[] scratch = new byte[MyFormatter.MAX_LENGTH];
+
+    /**
+     * Constructor for writing to a stream, such as the one tests or an embedding application capture.
+     * @param out Stream to write to.
+     */
+    public MyOutput(OutputStream out) {
+        this(out, BUFFER_SIZE);
+    }
+
+    /**
+     * Constructor for writing to a stream through a buffer of a given size, such as the small in-memory
+     * sinks of the scripts in a batch. The stream is handed a byte array anyway, so the buffer is on the heap.
+     * @param out Stream to write to.
+     * @param bufferSize Bytes collected before they are written to the stream.
+     */
+    public MyOutput(OutputStream out, int bufferSize) {
+        this.channel = Channels.newChannel(out);
+        this.stream = out;
+        this.buffer = ByteBuffer.allocate(bufferSize);
+        this.ring = null;
+    }
+
+    /**
+     * Constructor for writing to a channel.
+     * @param channel Channel to write to.
+     * @param background True to write from a background thread.
+     */
+    public MyOutput(WritableByteChannel channel, boolean background) {
+        this.channel = channel;
+        this.stream = null;
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.ring = background ? new Ring() : null;
+        if (ring != null) {
+            Thread thread = new Thread(ring, "pj-output");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Creates a sink writing to the process's standard output file descriptor, bypassing System.out.
+     * @param background True to write from a background thread.
+     * @return Sink for standard output.
+     */
+    public static MyOutput standardOutput(boolean background) {
+        return new MyOutput(new FileOutputStream(FileDescriptor.out).getChannel(), background);
+    }
+
+    /**
+     * Writes text, encoding ASCII directly and anything else in the platform's default character set.
+     * @param text Text to write.
+     */
+    public void print(CharSequence text) {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                write((byte) c);
+                continue;
+            }
+            // runs of other characters are rare, they go through the charset
+            int end = i + 1;
+            while (end < length && text.charAt(end) >= 0x80) {
+                end++;
+            }
+            for (byte b : text.subSequence(i, end).toString().getBytes(charset)) {
+                write(b);
+            }
+            i = end - 1;
+        }
+    }
+
+    /**
+     * Writes an integer in decimal without creating a string for it.
+     * @param value Integer to write.
+     */
+    public void print(int value) {
+        write(scratch, 0, MyFormatter.format(value, scratch, 0));
+    }
+
+    /**
+     * Writes a real with the fewest digits that read back as the same value, without creating a string for it.
+     * @param value Real to write.
+     */
+    public void print(double value) {
+        write(scratch, 0, MyFormatter.format(value, scratch, 0));
+    }
+
+    /**
+     * Writes part of a byte array, such as output another sink collected.
+     * @param bytes Bytes to write.
+     * @param offset Index of the first byte.
+     * @param length Number of bytes to write.
+     */
+    public void write(byte[] bytes, int offset, int length) {
+        while (length > 0) {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.put(bytes, offset, count);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Ends the current line.
+     */
+    public void println() {
+        for (byte b : NEWLINE) {
+            write(b);
+        }
+    }
+
+    /**
+     * Writes a single byte.
+     * @param b Byte to write.
+     */
+    public void write(byte b) {
+        if (!buffer.hasRemaining()) {
+            drain();
+        }
+        buffer.put(b);
+    }
+
+    /**
+     * Writes out everything written so far and waits until it has reached the channel.
+     * @throws UncheckedIOException when the output cannot be written.
+     */
+    public void flush() {
+        drain();
+        try {
+            if (ring != null) {
+                ring.awaitDrained();
+            }
+            if (stream != null) {
+                stream.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Flushes the output and stops the background writer. The channel itself is left open, since it
+     * is usually standard output.
+     * @throws UncheckedIOException when the output cannot be written.
+     */
+    @Override
+    public void close() {
+        flush();
+        if (ring != null) {
+            ring.stop();
+        }
+    }
+
+    /**
+     * Hands the buffered bytes on, to the background writer if there is one, otherwise to the channel.
+     * Unlike flush() this does not wait for a background writer to catch up.
+     * @throws UncheckedIOException when the output cannot be written.
+     */
+    private void drain() {
+        buffer.flip();
+        try {
+            if (ring != null) {
+                ring.put(buffer);
+            } else {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Ring buffer between the interpreter and the background writer thread. The interpreter fills it
+     * from the tail and the writer drains it from the head, each only touching its own part of the array,
+     * so the slow write to the channel happens outside the lock.
+     */
+    private final class Ring implements Runnable {
+
+        private final byte[] bytes = new byte[RING_SIZE];
+        // total bytes written out and total bytes put in, the difference is what the ring holds
+        private long head;
+        private long tail;
+        private boolean stopped;
+        // failure of the writer thread, reported to the interpreter on its next put or flush
+        private IOException failure;
+
+        /**
+         * Copies bytes into the ring, waiting only while the ring is full.
+         * @param source Bytes to copy.
+         * @throws IOException when the writer thread has failed.
+         */
+        synchronized void put(ByteBuffer source) throws IOException {
+            boolean interrupted = false;
+            try {
+                while (source.hasRemaining()) {
+                    while (tail - head == bytes.length && failure == null) {
+                        interrupted |= waitUninterruptibly();
+                    }
+                    if (failure != null) {
+                        throw failure;
+                    }
+                    int start = (int) (tail % bytes.length);
+                    int count = (int) Math.min(source.remaining(),
+                        Math.min(bytes.length - (tail - head), bytes.length - start));
+                    source.get(bytes, start, count);
+                    tail += count;
+                    notifyAll();
+                }
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        /**
+         * Waits until the writer thread has written out everything put into the ring.
+         * @throws IOException when the writer thread has failed.
+         */
+        synchronized void awaitDrained() throws IOException {
+            boolean interrupted = false;
+            while (head < tail && failure == null) {
+                interrupted |= waitUninterruptibly();
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        /**
+         * Tells the writer thread to finish once the ring is empty.
+         */
+        synchronized void stop() {
+            stopped = true;
+            notifyAll();
+        }
+
+        /**
+         * Body of the writer thread, writing out whatever the ring holds until it is stopped.
+         */
+        @Override
+        public void run() {
+            // an interrupt is only passed on when the thread ends, as writing to an interruptible channel
+            // with it set would close the channel
+            boolean interrupted = false;
+            try {
+                while (true) {
+                    int start;
+                    int count;
+                    synchronized (this) {
+                        while (head == tail && !stopped) {
+                            interrupted |= waitUninterruptibly();
+                        }
+                        if (head == tail) {
+                            return;
+                        }
+                        start = (int) (head % bytes.length);
+                        count = (int) Math.min(tail - head, bytes.length - start);
+                    }
+                    try {
+                        ByteBuffer chunk = ByteBuffer.wrap(bytes, start, count);
+                        while (chunk.hasRemaining()) {
+                            channel.write(chunk);
+                        }
+                    } catch (IOException e) {
+                        synchronized (this) {
+                            failure = e;
+                            notifyAll();
+                        }
+                        return;
+                    }
+                    synchronized (this) {
+                        head += count;
+                        notifyAll();
+                    }
+                }
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        /**
+         * Waits on the ring's monitor, putting off an interrupt so that no output is lost. Waiting again with
+         * the interrupt status set would return at once, so the caller restores it once it stops waiting.
+         * @return True when the wait was interrupted.
+         */
+        private boolean waitUninterruptibly() {
+            try {
+                wait();
+                return false;
+            } catch (InterruptedException e) {
+                return true;
+            }
+        }
+    }
+}
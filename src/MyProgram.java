@@ -0,0 +1,128 @@
+import java.util.*;
+
+/**
+ * PostScript source that has been scanned once into its tokens, with numbers already parsed and names already
+ * interned, so it can be run any number of times without lexing it again. A program holds nothing that belongs
+ * to a session, so one program can be run by many sessions, even at the same time.
+ * @author Aaron Howe
+ * @version Java 11
+ */
+public final class MyProgram {
+
+    // token types as MyLexer reports them
+    private final int[] tokens;
+    // value of each token: Integer, Double, String contents, interned PSName, or null for braces
+    private final Object[] values;
+
+    /**
+     * Constructor, only used by compile().
+     */
+    private MyProgram(int[] tokens, Object[] values) {
+        this.tokens = tokens;
+        this.values = values;
+    }
+
+    /**
+     * Scans source text into a program.
+     * @param source PostScript source.
+     * @return Program holding the source's tokens.
+     * @throws IllegalArgumentException when the source has a syntax error or unbalanced braces.
+     */
+    public static MyProgram compile(String source) {
+        MyLexer lexer = new MyLexer(source);
+        int[] tokens = new int[64];
+        List<Object> values = new ArrayList<>();
+        int depth = 0;
+        for (int token = lexer.next(); token != MyLexer.EOF; token = lexer.next()) {
+            if (values.size() == tokens.length) {
+                tokens = Arrays.copyOf(tokens, tokens.length * 2);
+            }
+            tokens[values.size()] = token;
+            switch (token) {
+                case MyLexer.INTEGER:
+                    values.add(lexer.intValue());
+                    break;
+                case MyLexer.REAL:
+                    values.add(lexer.realValue());
+                    break;
+                case MyLexer.STRING:
+                    values.add(lexer.text());
+                    break;
+                case MyLexer.PROC_BEGIN:
+                    depth++;
+                    values.add(null);
+                    break;
+                case MyLexer.PROC_END:
+                    if (--depth < 0) {
+                        throw new IllegalArgumentException("Syntax Error: unmatched '}'.");
+                    }
+                    values.add(null);
+                    break;
+                default:
+                    values.add(lexer.name());
+            }
+        }
+        if (depth > 0) {
+            throw new IllegalArgumentException("Syntax Error: program ends inside a procedure.");
+        }
+        return new MyProgram(Arrays.copyOf(tokens, values.size()), values.toArray());
+    }
+
+    /**
+     * Counts the tokens of the program.
+     * @return Number of tokens.
+     */
+    public int size() {
+        return tokens.length;
+    }
+
+    /**
+     * Creates a lexer replaying the program's tokens, for a session to run.
+     * @return Lexer positioned before the first token.
+     */
+    MyLexer lexer() {
+        return new Replay();
+    }
+
+    /**
+     * Lexer handing out the stored tokens instead of scanning characters.
+     */
+    private final class Replay extends MyLexer {
+
+        // index of the current token
+        private int index = -1;
+
+        /**
+         * Constructor.
+         */
+        Replay() {
+            super(new char[0], 0, 0);
+        }
+
+        @Override
+        public int next() {
+            return ++index < tokens.length ? tokens[index] : EOF;
+        }
+
+        @Override
+        public int intValue() {
+            return (Integer) values[index];
+        }
+
+        @Override
+        public double realValue() {
+            return (Double) values[index];
+        }
+
+        @Override
+        public String text() {
+            Object value = values[index];
+            return value instanceof String ? (String) value : String.valueOf(value);
+        }
+
+        @Override
+        public PSName name() {
+            return (PSName) values[index];
+        }
+    }
+}
@@ -0,0 +1,653 @@
+import java.util.*;
+
+/**
+ * Straight-line run of a procedure body whose stack effects are known when the procedure is compiled: number
+ * literals, true and false, the stack operators dup, exch, pop and copy with a literal count, arithmetic,
+ * comparisons, and not, and and or. The run is interpreted abstractly into registers, one per value it loads from
+ * the stack, per literal and per operation, so the stack operators turn into nothing but a choice of registers.
+ * Operations on literals are folded into literals, and literals and inputs that are popped unused are dropped;
+ * operations are kept even when their results are popped unused, since they still check the types of their
+ * operands. Running the block reads its operands from the stack once, computes in the registers, and only writes
+ * the values left at the end back onto the stack; a block that leaves the stack as it found it, such as exch exch
+ * or dup pop, only checks that the stack is deep enough.
+ * <p>
+ * A block never changes the stack until it has computed everything, and computes only what the operators would
+ * compute. When an operand is not a number, or an operation would fail, evaluate() gives up before touching the
+ * stack and the instructions the block stands for run instead, failing the way they always did. A block that
+ * has given up once stays given up, as a site that sees such operands tends to keep seeing them.
+ * @author Aaron Howe
+ * @version Java 11
+ */
+public final class MyRegisterBlock {
+
+    // operators a block can take in, apart from the operations below
+    private static final List<String> OPERATORS = List.of("dup", "exch", "pop", "copy", "true", "false");
+    // operators computing a register, in the order of their register kinds
+    private static final List<String> OPERATIONS = List.of("add", "sub", "mul", "neg", "abs", "sqrt", "floor",
+        "ceiling", "round", "eq", "ne", "gt", "lt", "ge", "le", "not", "and", "or");
+    // register kinds: loaded from the stack, a literal, or the result of an operation
+    private static final byte INPUT = 0;
+    private static final byte CONSTANT = 1;
+    private static final byte ADD = 2;
+    private static final byte SUB = 3;
+    private static final byte MUL = 4;
+    private static final byte NEG = 5;
+    private static final byte ABS = 6;
+    private static final byte SQRT = 7;
+    private static final byte FLOOR = 8;
+    private static final byte CEILING = 9;
+    private static final byte ROUND = 10;
+    private static final byte EQ = 11;
+    private static final byte NE = 12;
+    private static final byte GT = 13;
+    private static final byte LT = 14;
+    private static final byte GE = 15;
+    private static final byte LE = 16;
+    private static final byte NOT = 17;
+    private static final byte AND = 18;
+    private static final byte OR = 19;
+    // copy duplicates at most this many elements in a block
+    private static final int MAX_COPY = 16;
+
+    private final byte[] kinds;
+    // depth of an input below the top of the stack as the block starts, or an operation's first operand
+    private final int[] left;
+    // an operation's second operand, the one that was on top
+    private final int[] right;
+    // register file, holding values as MyStack does; literals are filled in once
+    private final byte[] tags;
+    private final long[] values;
+    // elements the block takes off the stack, and the registers it pushes in their place, bottom first
+    private final int inputs;
+    private final int[] outputs;
+    // instructions the block stands for
+    private final int length;
+    // outputs that are inputs left where they were, at the bottom of the block's results, which are not rewritten
+    private final int kept;
+    // true when the block leaves its inputs as they were
+    private final boolean identity;
+    private boolean failed;
+
+    /**
+     * Constructor, only used by Analysis.
+     */
+    private MyRegisterBlock(byte[] kinds, int[] left, int[] right, byte[] tags, long[] values, int inputs,
+                            int[] outputs, int length) {
+        this.kinds = kinds;
+        this.left = left;
+        this.right = right;
+        this.tags = tags;
+        this.values = values;
+        this.inputs = inputs;
+        this.outputs = outputs;
+        this.length = length;
+        int unchanged = 0;
+        while (unchanged < outputs.length && kinds[outputs[unchanged]] == INPUT
+                && left[outputs[unchanged]] == inputs - 1 - unchanged) {
+            unchanged++;
+        }
+        this.kept = unchanged;
+        this.identity = unchanged == inputs && outputs.length == inputs && kinds.length == inputs;
+    }
+
+    /**
+     * Checks whether a block can take in an operator.
+     * @param name Name of a built-in operator.
+     * @return True for the stack, arithmetic and comparison operators blocks know the effects of.
+     */
+    public static boolean handles(String name) {
+        return OPERATORS.contains(name) || OPERATIONS.contains(name);
+    }
+
+    /**
+     * Builds a block from the longest prefix of a run of code it can take in.
+     * @param code Integer and Double literals, and names of operators that handles() accepts.
+     * @return Block standing for the prefix, or null when it would stand for fewer than two instructions.
+     */
+    public static MyRegisterBlock compile(List<?> code) {
+        Analysis analysis = new Analysis();
+        int length = 0;
+        while (length < code.size() && analysis.step(code.get(length))) {
+            length++;
+        }
+        return length < 2 ? null : analysis.block(length);
+    }
+
+    /**
+     * Counts the instructions the block stands for.
+     * @return Number of instructions.
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Counts the elements the block takes off the stack.
+     * @return Number of elements.
+     */
+    public int inputs() {
+        return inputs;
+    }
+
+    /**
+     * Counts the elements the block leaves on the stack in place of its inputs.
+     * @return Number of elements.
+     */
+    public int outputs() {
+        return outputs.length;
+    }
+
+    /**
+     * Fetches the condition the block always computes, for a procedure body that runs if on it.
+     * @return The boolean the block pushes when all it holds is a single literal boolean, null otherwise. A block
+     * still holding an operation, even one whose result is popped, may fail and so cannot be skipped.
+     */
+    public Boolean constantCondition() {
+        if (kinds.length != 1 || inputs > 0 || outputs.length != 1 || kinds[outputs[0]] != CONSTANT
+                || tags[outputs[0]] != MyStack.BOOL) {
+            return null;
+        }
+        return values[outputs[0]] != 0;
+    }
+
+    /**
+     * Computes the block's results in its registers, without changing the stack.
+     * @param stack Stack holding the block's inputs.
+     * @return True when the results are ready for materialize(), false when the block gives up, in which case
+     * the instructions it stands for have to run instead.
+     */
+    public boolean evaluate(MyStack stack) {
+        if (failed || stack.count() < inputs) {
+            failed = true;
+            return false;
+        }
+        if (identity) {
+            return true;
+        }
+        for (int r = 0; r < kinds.length; r++) {
+            switch (kinds[r]) {
+                case CONSTANT:
+                    break;
+                case INPUT:
+                    byte tag = stack.peekTag(left[r]);
+                    if (tag != MyStack.INT && tag != MyStack.REAL) {
+                        failed = true;
+                        return false;
+                    }
+                    tags[r] = tag;
+                    values[r] = stack.bitsAt(left[r]);
+                    break;
+                default:
+                    if (!compute(r)) {
+                        failed = true;
+                        return false;
+                    }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Replaces the block's inputs on the stack with its results, once evaluate() has computed them.
+     * @param stack Stack the block was evaluated against.
+     */
+    public void materialize(MyStack stack) {
+        if (identity) {
+            return;
+        }
+        stack.drop(inputs - kept);
+        for (int i = kept; i < outputs.length; i++) {
+            stack.pushBits(tags[outputs[i]], values[outputs[i]]);
+        }
+    }
+
+    /**
+     * Checks whether the top of the stack holds the results evaluate() computed, for comparing the block with
+     * the instructions it stands for.
+     * @param stack Stack after the instructions have run.
+     * @return True when the top elements have the types and values of the block's results.
+     */
+    public boolean matches(MyStack stack) {
+        if (stack.count() < outputs.length) {
+            return false;
+        }
+        // a block leaving its inputs alone never reads them
+        if (identity) {
+            return true;
+        }
+        for (int i = 0; i < outputs.length; i++) {
+            int depth = outputs.length - 1 - i;
+            if (stack.peekTag(depth) != tags[outputs[i]] || stack.bitsAt(depth) != values[outputs[i]]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Describes the block's results.
+     * @return Results bottom first, the way = prints them.
+     */
+    @Override
+    public String toString() {
+        if (identity) {
+            return "[" + inputs + " elements unchanged]";
+        }
+        StringJoiner results = new StringJoiner(" ", "[", "]");
+        for (int output : outputs) {
+            switch (tags[output]) {
+                case MyStack.INT:
+                    results.add(String.valueOf((int) values[output]));
+                    break;
+                case MyStack.REAL:
+                    results.add(String.valueOf(real(output)));
+                    break;
+                default:
+                    results.add(String.valueOf(values[output] != 0));
+            }
+        }
+        return results.toString();
+    }
+
+    /**
+     * Computes an operation from the registers of its operands, as the operator would.
+     * @param r Register of the operation.
+     * @return False when the operator would fail, as sqrt does on negative numbers.
+     */
+    private boolean compute(int r) {
+        int a = left[r];
+        switch (kinds[r]) {
+            case ADD:
+            case SUB:
+            case MUL:
+                arithmetic(r);
+                return true;
+            case NEG:
+            case ABS:
+                if (tags[a] == MyStack.INT) {
+                    int value = (int) values[a];
+                    setInt(r, kinds[r] == NEG ? -value : Math.abs(value));
+                } else {
+                    double value = real(a);
+                    setReal(r, kinds[r] == NEG ? -value : Math.abs(value));
+                }
+                return true;
+            case SQRT:
+                double radicand = real(a);
+                if (radicand < 0) {
+                    return false;
+                }
+                setReal(r, Math.sqrt(radicand));
+                return true;
+            case FLOOR:
+            case CEILING:
+            case ROUND:
+                rounded(r);
+                return true;
+            case NOT:
+                // booleans are negated, numbers complemented bitwise
+                if (tags[a] == MyStack.BOOL) {
+                    setBool(r, values[a] == 0);
+                } else {
+                    setInt(r, ~(int) real(a));
+                }
+                return true;
+            case AND:
+            case OR:
+                logical(r);
+                return true;
+            default:
+                if (tags[a] == MyStack.BOOL) {
+                    // only eq and ne take booleans
+                    compared(r, Long.compare(values[a], values[right[r]]));
+                } else {
+                    compared(r, Double.compare(real(a), real(right[r])));
+                }
+                return true;
+        }
+    }
+
+    /**
+     * Replaces operations on literals with their results, only where the literals' types are ones the operator
+     * takes, and except those that would fail, which are left for the block to give up on when it runs.
+     */
+    private void fold() {
+        for (int r = 0; r < kinds.length; r++) {
+            if (kinds[r] > CONSTANT && kinds[left[r]] == CONSTANT && (right[r] < 0 || kinds[right[r]] == CONSTANT)
+                    && typed(r) && compute(r)) {
+                kinds[r] = CONSTANT;
+                left[r] = -1;
+                right[r] = -1;
+            }
+        }
+    }
+
+    /**
+     * Checks that the literal operands of an operation have types the operator takes, so that folding it cannot
+     * hide the error the operator would raise.
+     * @param r Register of an operation on literals.
+     * @return True for numbers, booleans for not, and two booleans for eq, ne, and and or.
+     */
+    private boolean typed(int r) {
+        boolean bool = tags[left[r]] == MyStack.BOOL;
+        boolean number = tags[left[r]] == MyStack.INT || tags[left[r]] == MyStack.REAL;
+        if (right[r] < 0) {
+            return number || (bool && kinds[r] == NOT);
+        }
+        boolean rightBool = tags[right[r]] == MyStack.BOOL;
+        boolean rightNumber = tags[right[r]] == MyStack.INT || tags[right[r]] == MyStack.REAL;
+        boolean booleans = kinds[r] == EQ || kinds[r] == NE || kinds[r] == AND || kinds[r] == OR;
+        return (number && rightNumber) || (booleans && bool && rightBool);
+    }
+
+    /**
+     * Drops the literals and inputs nothing the block computes or pushes depends on. Every operation is kept,
+     * with its operands, whether or not its result is used: it fails on operands of the wrong type, and sqrt
+     * on negative numbers, where the operator would fail.
+     * @return Block holding only the registers it needs.
+     */
+    private MyRegisterBlock compact() {
+        int count = kinds.length;
+        boolean[] live = new boolean[count];
+        for (int r : outputs) {
+            live[r] = true;
+        }
+        for (int r = count - 1; r >= 0; r--) {
+            if (kinds[r] > CONSTANT) {
+                live[r] = true;
+                live[left[r]] = true;
+                if (right[r] >= 0) {
+                    live[right[r]] = true;
+                }
+            }
+        }
+        int[] renumbered = new int[count];
+        int size = 0;
+        for (int r = 0; r < count; r++) {
+            renumbered[r] = live[r] ? size++ : -1;
+        }
+        byte[] liveKinds = new byte[size];
+        int[] liveLeft = new int[size];
+        int[] liveRight = new int[size];
+        byte[] liveTags = new byte[size];
+        long[] liveValues = new long[size];
+        for (int r = 0; r < count; r++) {
+            if (!live[r]) {
+                continue;
+            }
+            int i = renumbered[r];
+            liveKinds[i] = kinds[r];
+            liveLeft[i] = kinds[r] > CONSTANT ? renumbered[left[r]] : left[r];
+            liveRight[i] = right[r] < 0 ? -1 : renumbered[right[r]];
+            liveTags[i] = tags[r];
+            liveValues[i] = values[r];
+        }
+        int[] liveOutputs = new int[outputs.length];
+        for (int i = 0; i < outputs.length; i++) {
+            liveOutputs[i] = renumbered[outputs[i]];
+        }
+        return new MyRegisterBlock(liveKinds, liveLeft, liveRight, liveTags, liveValues, inputs, liveOutputs, length);
+    }
+
+    /**
+     * Reads a number register as a real.
+     */
+    private double real(int r) {
+        return tags[r] == MyStack.INT ? (int) values[r] : Double.longBitsToDouble(values[r]);
+    }
+
+    /**
+     * Sets a register to an integer.
+     */
+    private void setInt(int r, int value) {
+        tags[r] = MyStack.INT;
+        values[r] = value;
+    }
+
+    /**
+     * Sets a register to a boolean.
+     */
+    private void setBool(int r, boolean value) {
+        tags[r] = MyStack.BOOL;
+        values[r] = value ? 1 : 0;
+    }
+
+    /**
+     * Sets a register to a real.
+     */
+    private void setReal(int r, double value) {
+        tags[r] = MyStack.REAL;
+        values[r] = Double.doubleToRawLongBits(value);
+    }
+
+    /**
+     * Computes add, sub or mul as MyArithmetic does: integers wrap, and reals holding whole values give an
+     * integer.
+     * @param r Register of the operation.
+     */
+    private void arithmetic(int r) {
+        int a = left[r];
+        int b = right[r];
+        if (tags[a] == MyStack.INT && tags[b] == MyStack.INT) {
+            int second = (int) values[a];
+            int first = (int) values[b];
+            setInt(r, kinds[r] == ADD ? second + first : kinds[r] == SUB ? second - first : second * first);
+            return;
+        }
+        double second = real(a);
+        double first = real(b);
+        if (MyArithmetic.isWhole(second) && MyArithmetic.isWhole(first)) {
+            int x = (int) second;
+            int y = (int) first;
+            setInt(r, kinds[r] == ADD ? x + y : kinds[r] == SUB ? x - y : x * y);
+        } else {
+            setReal(r, kinds[r] == ADD ? second + first : kinds[r] == SUB ? second - first : second * first);
+        }
+    }
+
+    /**
+     * Computes floor, ceiling or round, which leave integers alone and turn reals into integers.
+     * @param r Register of the operation.
+     */
+    private void rounded(int r) {
+        int a = left[r];
+        if (tags[a] == MyStack.INT) {
+            setInt(r, (int) values[a]);
+            return;
+        }
+        double value = real(a);
+        switch (kinds[r]) {
+            case FLOOR:
+                setInt(r, (int) Math.floor(value));
+                break;
+            case CEILING:
+                setInt(r, (int) Math.ceil(value));
+                break;
+            default:
+                setInt(r, (int) Math.round(value));
+        }
+    }
+
+    /**
+     * Computes and or or as MyBoolean does: on two booleans, or bitwise on two numbers taken as integers.
+     * @param r Register of the operation.
+     */
+    private void logical(int r) {
+        int a = left[r];
+        int b = right[r];
+        if (tags[a] == MyStack.BOOL) {
+            setBool(r, kinds[r] == AND ? (values[a] & values[b]) != 0 : (values[a] | values[b]) != 0);
+        } else {
+            int second = (int) real(a);
+            int first = (int) real(b);
+            setInt(r, kinds[r] == AND ? second & first : second | first);
+        }
+    }
+
+    /**
+     * Sets a register to the result of a comparison.
+     * @param r Register of the operation.
+     * @param comparison Sign of the comparison of the first operand with the second.
+     */
+    private void compared(int r, int comparison) {
+        boolean result;
+        switch (kinds[r]) {
+            case EQ:
+                result = comparison == 0;
+                break;
+            case NE:
+                result = comparison != 0;
+                break;
+            case GT:
+                result = comparison > 0;
+                break;
+            case LT:
+                result = comparison < 0;
+                break;
+            case GE:
+                result = comparison >= 0;
+                break;
+            default:
+                result = comparison <= 0;
+        }
+        setBool(r, result);
+    }
+
+    /**
+     * Abstract interpretation of a run of code, tracking which register each element above the block's
+     * inputs comes from.
+     */
+    private static final class Analysis {
+
+        private final List<Byte> kinds = new ArrayList<>();
+        private final List<Integer> left = new ArrayList<>();
+        private final List<Integer> right = new ArrayList<>();
+        // literal values, with the tag of each literal, BOOL for comparisons and REF for numbers only known
+        // when the block runs
+        private final List<Byte> tags = new ArrayList<>();
+        private final List<Long> values = new ArrayList<>();
+        // registers on the stack above the elements still untouched, bottom first
+        private final List<Integer> stack = new ArrayList<>();
+        private int inputs;
+
+        /**
+         * Takes in one instruction, leaving the analysis as it was when it cannot.
+         * @param item Integer or Double literal, or operator name.
+         * @return True if the instruction is part of the block.
+         */
+        boolean step(Object item) {
+            if (item instanceof Integer) {
+                stack.add(register(CONSTANT, -1, -1, MyStack.INT, (Integer) item));
+                return true;
+            }
+            if (item instanceof Double) {
+                stack.add(register(CONSTANT, -1, -1, MyStack.REAL, Double.doubleToRawLongBits((Double) item)));
+                return true;
+            }
+            int top = stack.size() - 1;
+            switch ((String) item) {
+                case "true":
+                case "false":
+                    stack.add(register(CONSTANT, -1, -1, MyStack.BOOL, item.equals("true") ? 1 : 0));
+                    return true;
+                case "dup":
+                    reach(1);
+                    stack.add(stack.get(stack.size() - 1));
+                    return true;
+                case "exch":
+                    reach(2);
+                    stack.add(stack.remove(stack.size() - 2));
+                    return true;
+                case "pop":
+                    reach(1);
+                    stack.remove(stack.size() - 1);
+                    return true;
+                case "copy":
+                    // only a count pushed as a literal inside the block is known here
+                    if (top < 0 || kinds.get(stack.get(top)) != CONSTANT || tags.get(stack.get(top)) != MyStack.INT
+                            || values.get(stack.get(top)) < 0 || values.get(stack.get(top)) > MAX_COPY) {
+                        return false;
+                    }
+                    int n = (int) (long) values.get(stack.remove(top));
+                    reach(n);
+                    int from = stack.size() - n;
+                    for (int i = 0; i < n; i++) {
+                        stack.add(stack.get(from + i));
+                    }
+                    return true;
+                default:
+                    byte kind = (byte) (OPERATIONS.indexOf(item) + ADD);
+                    boolean binary = kind <= MUL || (kind >= EQ && kind != NOT);
+                    boolean bool = binary ? bool(1) : bool(0);
+                    // arithmetic and ordering take numbers; eq, ne, and and or take two numbers or two
+                    // booleans; not takes either
+                    boolean typed = kind == NOT || (kind == EQ || kind == NE || kind >= AND ? bool == bool(0) : !bool);
+                    if (!typed || (binary && !bool && bool(0))) {
+                        return false;
+                    }
+                    reach(binary ? 2 : 1);
+                    int second = stack.remove(stack.size() - 1);
+                    int first = binary ? stack.remove(stack.size() - 1) : second;
+                    boolean result = kind >= EQ && kind <= LE || (kind >= NOT && bool);
+                    stack.add(register(kind, first, binary ? second : -1, result ? MyStack.BOOL : MyStack.REF, 0));
+                    return true;
+            }
+        }
+
+        /**
+         * Checks whether an element is known to be a boolean.
+         * @param depth Distance from the top of the tracked stack, deeper ones being inputs, which are numbers.
+         */
+        private boolean bool(int depth) {
+            return depth < stack.size() && tags.get(stack.get(stack.size() - 1 - depth)) == MyStack.BOOL;
+        }
+
+        /**
+         * Makes sure the tracked stack holds at least n elements, loading inputs beneath it.
+         */
+        private void reach(int n) {
+            while (stack.size() < n) {
+                stack.add(0, register(INPUT, inputs++, -1, MyStack.REF, 0));
+            }
+        }
+
+        /**
+         * Adds a register.
+         * @return Its index.
+         */
+        private int register(byte kind, int first, int second, byte tag, long value) {
+            kinds.add(kind);
+            left.add(first);
+            right.add(second);
+            tags.add(tag);
+            values.add(value);
+            return kinds.size() - 1;
+        }
+
+        /**
+         * Builds the block, folding operations on literals and leaving out unused registers.
+         * @param length Instructions taken in.
+         * @return Block standing for them.
+         */
+        MyRegisterBlock block(int length) {
+            int count = kinds.size();
+            byte[] blockKinds = new byte[count];
+            int[] blockLeft = new int[count];
+            int[] blockRight = new int[count];
+            byte[] blockTags = new byte[count];
+            long[] blockValues = new long[count];
+            for (int r = 0; r < count; r++) {
+                blockKinds[r] = kinds.get(r);
+                blockLeft[r] = left.get(r);
+                blockRight[r] = right.get(r);
+                blockTags[r] = tags.get(r);
+                blockValues[r] = values.get(r);
+            }
+            int[] outputs = stack.stream().mapToInt(Integer::intValue).toArray();
+            MyRegisterBlock block = new MyRegisterBlock(blockKinds, blockLeft, blockRight, blockTags, blockValues,
+                inputs, outputs, length);
+            block.fold();
+            return block.compact();
+        }
+    }
+}
@@ -0,0 +1,223 @@
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.*;
+import javax.script.*;
+
+/**
+ * javax.script engine running PostScript in PostJava. Compiling a script scans it once into a CompiledScript
+ * holding its tokens, which can then be evaluated any number of times, from any number of threads, without
+ * lexing the source again. Procedures are still compiled into instructions and optimized on every evaluation,
+ * since compiled procedures belong to the session running them, with caches and state no other session may
+ * share. Every evaluation runs in a fresh session:
+ * <ul>
+ * <li>the global and then the engine bindings are defined in userdict, with Java values converted to
+ * PostScript ones (strings become PostScript strings, maps become dictionaries);</li>
+ * <li>whatever the script prints is written to the context's writer when the evaluation ends;</li>
+ * <li>userdict, apart from procedures, is copied back into the engine bindings, and the operand on top of
+ * the stack is returned, both converted to Java values (integers, doubles, booleans, strings, and maps for
+ * dictionaries).</li>
+ * </ul>
+ * @author Aaron Howe
+ * @version Java 11
+ */
+public class MyScriptEngine extends AbstractScriptEngine implements Compilable {
+
+    // scripts usually print little, so the session's output starts small
+    private static final int OUTPUT_BUFFER_SIZE = 8 * 1024;
+
+    private final ScriptEngineFactory factory;
+
+    /**
+     * Constructor.
+     * @param factory Factory that created the engine.
+     */
+    public MyScriptEngine(ScriptEngineFactory factory) {
+        this.factory = factory;
+    }
+
+    @Override
+    public Object eval(String script, ScriptContext context) throws ScriptException {
+        return compile(script).eval(context);
+    }
+
+    @Override
+    public Object eval(Reader reader, ScriptContext context) throws ScriptException {
+        return compile(reader).eval(context);
+    }
+
+    @Override
+    public Bindings createBindings() {
+        return new SimpleBindings();
+    }
+
+    @Override
+    public ScriptEngineFactory getFactory() {
+        return factory;
+    }
+
+    /**
+     * Scans a script once so that it can be evaluated many times without lexing it again.
+     * @param script PostScript source.
+     * @return Compiled script.
+     * @throws ScriptException when the script has a syntax error.
+     */
+    @Override
+    public CompiledScript compile(String script) throws ScriptException {
+        try {
+            return new Compiled(MyProgram.compile(script));
+        } catch (RuntimeException e) {
+            throw new ScriptException(e.getMessage());
+        }
+    }
+
+    @Override
+    public CompiledScript compile(Reader script) throws ScriptException {
+        StringWriter source = new StringWriter();
+        try {
+            script.transferTo(source);
+        } catch (IOException e) {
+            throw new ScriptException(e);
+        }
+        return compile(source.toString());
+    }
+
+    /**
+     * Converts a Java value to the PostScript value it is defined as.
+     * @param value Java value.
+     * @return PostScript value.
+     */
+    private static Object toPostScript(Object value) {
+        if (value instanceof Long || value instanceof Short || value instanceof Byte) {
+            long number = ((Number) value).longValue();
+            return number == (int) number ? (Object) (int) number : (Object) (double) number;
+        }
+        if (value instanceof Float) {
+            return ((Float) value).doubleValue();
+        }
+        if (value instanceof CharSequence && !(value instanceof PSString)) {
+            return PSString.of((CharSequence) value);
+        }
+        if (value instanceof Map && !(value instanceof PSDict)) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            PSDict dict = new PSDict(Math.max(map.size(), 1));
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                dict.put(PSName.key(String.valueOf(entry.getKey())), toPostScript(entry.getValue()));
+            }
+            return dict;
+        }
+        return value;
+    }
+
+    /**
+     * Converts a PostScript value to a Java value. Procedures and operators are returned as they are.
+     * @param value PostScript value.
+     * @param converted Dictionaries converted so far, so that a dictionary holding itself is converted once.
+     * @return Java value.
+     */
+    private static Object toJava(Object value, Map<Object, Object> converted) {
+        if (value instanceof CharSequence || value instanceof PSName) {
+            return value.toString();
+        }
+        if (value instanceof PSDict) {
+            Object done = converted.get(value);
+            if (done != null) {
+                return done;
+            }
+            Map<String, Object> map = new LinkedHashMap<>();
+            converted.put(value, map);
+            for (Map.Entry<Object, Object> entry : ((PSDict) value).entrySet()) {
+                map.put(entry.getKey().toString(), toJava(entry.getValue(), converted));
+            }
+            return map;
+        }
+        return value;
+    }
+
+    /**
+     * Script scanned once and evaluated in a fresh session each time, which compiles its procedures again.
+     */
+    private final class Compiled extends CompiledScript {
+
+        private final MyProgram program;
+
+        /**
+         * Constructor.
+         * @param program Scanned script.
+         */
+        Compiled(MyProgram program) {
+            this.program = program;
+        }
+
+        @Override
+        public ScriptEngine getEngine() {
+            return MyScriptEngine.this;
+        }
+
+        /**
+         * Runs the script in a fresh session against the context's bindings.
+         * @param context Bindings and writers to use.
+         * @return Operand on top of the stack, converted to a Java value, or null when the stack is empty.
+         * @throws ScriptException when the script fails.
+         */
+        @Override
+        public Object eval(ScriptContext context) throws ScriptException {
+            ByteArrayOutputStream captured = new ByteArrayOutputStream();
+            MyInterpreter interpreter = new MyInterpreter(new MyOutput(captured, OUTPUT_BUFFER_SIZE));
+            MyStack stack = interpreter.stack();
+            Bindings engine = context.getBindings(ScriptContext.ENGINE_SCOPE);
+            define(interpreter, context.getBindings(ScriptContext.GLOBAL_SCOPE));
+            define(interpreter, engine);
+            try {
+                interpreter.run(program);
+            } catch (RuntimeException | StackOverflowError e) {
+                throw new ScriptException(e instanceof StackOverflowError ? "Error: Stack overflow." : e.getMessage());
+            } finally {
+                interpreter.output().flush();
+                write(captured, context.getWriter());
+            }
+            Map<Object, Object> converted = new IdentityHashMap<>();
+            if (engine != null) {
+                for (Map.Entry<Object, Object> entry : interpreter.dictionary().userDict().entrySet()) {
+                    // procedures belong to the session that compiled them, which ends here
+                    if (!(entry.getValue() instanceof Runnable)) {
+                        engine.put(entry.getKey().toString(), toJava(entry.getValue(), converted));
+                    }
+                }
+            }
+            return stack.count() == 0 ? null : toJava(stack.pop(), converted);
+        }
+
+        /**
+         * Defines bindings in the session's userdict.
+         * @param bindings Bindings to define, or null.
+         */
+        private void define(MyInterpreter interpreter, Bindings bindings) {
+            if (bindings == null) {
+                return;
+            }
+            for (Map.Entry<String, Object> entry : bindings.entrySet()) {
+                // the key javax.script keeps its current file name under is not a PostScript definition
+                if (!entry.getKey().equals(ScriptEngine.FILENAME)) {
+                    interpreter.stack().push(PSName.intern(entry.getKey()));
+                    interpreter.stack().push(toPostScript(entry.getValue()));
+                    interpreter.dictionary().def();
+                }
+            }
+        }
+
+        /**
+         * Writes the session's output to the context's writer.
+         */
+        private void write(ByteArrayOutputStream captured, Writer writer) throws ScriptException {
+            if (captured.size() == 0 || writer == null) {
+                return;
+            }
+            try {
+                writer.write(captured.toString(Charset.defaultCharset()));
+                writer.flush();
+            } catch (IOException e) {
+                throw new ScriptException(e);
+            }
+        }
+    }
+}
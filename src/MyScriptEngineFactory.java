@@ -0,0 +1,106 @@
+import java.util.*;
+import javax.script.*;
+
+/**
+ * Factory registering PostJava with javax.script, so a JVM service can look it up with
+ * new ScriptEngineManager().getEngineByName("postjava"). The factory is listed in
+ * META-INF/services/javax.script.ScriptEngineFactory.
+ * @author Aaron Howe
+ * @version Java 11
+ */
+public class MyScriptEngineFactory implements ScriptEngineFactory {
+
+    private static final List<String> NAMES = List.of("postjava", "PostJava", "postscript", "PostScript");
+    private static final List<String> EXTENSIONS = List.of("ps");
+    private static final List<String> MIME_TYPES = List.of("application/postscript");
+
+    @Override
+    public String getEngineName() {
+        return "PostJava";
+    }
+
+    @Override
+    public String getEngineVersion() {
+        return "1.0";
+    }
+
+    @Override
+    public List<String> getExtensions() {
+        return EXTENSIONS;
+    }
+
+    @Override
+    public List<String> getMimeTypes() {
+        return MIME_TYPES;
+    }
+
+    @Override
+    public List<String> getNames() {
+        return NAMES;
+    }
+
+    @Override
+    public String getLanguageName() {
+        return "PostScript";
+    }
+
+    @Override
+    public String getLanguageVersion() {
+        return "1";
+    }
+
+    /**
+     * Every evaluation runs in a session of its own, so the engine can be used from several threads at once
+     * as long as each thread evaluates against its own bindings.
+     * @param key Parameter to look up.
+     * @return Value of the parameter, or null if there is none.
+     */
+    @Override
+    public Object getParameter(String key) {
+        switch (key) {
+            case ScriptEngine.ENGINE:
+                return getEngineName();
+            case ScriptEngine.ENGINE_VERSION:
+                return getEngineVersion();
+            case ScriptEngine.NAME:
+                return NAMES.get(0);
+            case ScriptEngine.LANGUAGE:
+                return getLanguageName();
+            case ScriptEngine.LANGUAGE_VERSION:
+                return getLanguageVersion();
+            case "THREADING":
+                return "MULTITHREADED";
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Operands come first in PostScript, then the operator.
+     * @return Source calling the method.
+     */
+    @Override
+    public String getMethodCallSyntax(String obj, String m, String... args) {
+        StringBuilder call = new StringBuilder();
+        for (String arg : args) {
+            call.append(arg).append(' ');
+        }
+        return call.append(obj).append(' ').append(m).toString();
+    }
+
+    @Override
+    public String getOutputStatement(String toDisplay) {
+        // parentheses and backslashes are the only characters a string literal needs escaped
+        return "(" + toDisplay.replace("\\", "\\\\").replace("(", "\\(").replace(")", "\\)") + ") print";
+    }
+
+    @Override
+    public String getProgram(String... statements) {
+        return String.join("\n", statements);
+    }
+
+    @Override
+    public ScriptEngine getScriptEngine() {
+        return new MyScriptEngine(this);
+    }
+}
@@ -2,18 +2,37 @@ import java.util.*;
 
 /**
  * Operand stack to store values returned by user entries and arithmetic operations.
+ * Values are kept unboxed in parallel arrays: a type tag per slot, a primitive payload holding the bits
+ * of integers, reals and booleans, and an object slot used only for references such as strings,
+ * dictionaries and procedures. Numeric operations can therefore push and pop without allocating.
  * @author Aaron Howe
  * @version Java 11
  */
 public class MyStack {
 
-    private Stack<Object> stack;
+    // value tags
+    public static final byte INT = 0;
+    public static final byte REAL = 1;
+    public static final byte BOOL = 2;
+    public static final byte REF = 3;
+    // tags of the two top elements as pairTags() reports them, the deeper element's first
+    public static final int INT_INT = INT << 2 | INT;
+    public static final int INT_REAL = INT << 2 | REAL;
+    public static final int REAL_INT = REAL << 2 | INT;
+    public static final int REAL_REAL = REAL << 2 | REAL;
+
+    private byte[] tags;
+    private long[] values;
+    private Object[] refs;
+    private int size;
 
     /**
      * Default constructor.
      */
     public MyStack() {
-        stack = new Stack<>();
+        tags = new byte[64];
+        values = new long[64];
+        refs = new Object[64];
     }
 
     /**
@@ -23,21 +42,71 @@ public class MyStack {
     public void push(Object operand) {
         // if operand is a double, push right away
         if (operand instanceof Double) {
-            stack.push(operand);
-        // check if operand is a number
+            pushReal((Double) operand);
+        } else if (operand instanceof Integer) {
+            pushInt((Integer) operand);
+        // check if operand is some other kind of number
         } else if (operand instanceof Number) {
             // holds the number as its numerical (type flexible) value
             double num = ((Number) operand).doubleValue();
             // check if its a whole number, and if it is, push it as an integer
             if (num == Math.floor(num) && !Double.isInfinite(num)) {
-                stack.push(((Number) operand).intValue());
+                pushInt(((Number) operand).intValue());
             // otherwise push the double
             } else {
-                stack.push(num);
+                pushReal(num);
             }
+        } else if (operand instanceof Boolean) {
+            pushBool((Boolean) operand);
         } else {
-            stack.push(operand);
+            int slot = grow();
+            tags[slot] = REF;
+            refs[slot] = operand;
+        }
+    }
+
+    /**
+     * Pushes an integer without boxing it.
+     * @param value Integer to be added.
+     */
+    public void pushInt(int value) {
+        int slot = grow();
+        tags[slot] = INT;
+        values[slot] = value;
+    }
+
+    /**
+     * Pushes a real without boxing it.
+     * @param value Real to be added.
+     */
+    public void pushReal(double value) {
+        int slot = grow();
+        tags[slot] = REAL;
+        values[slot] = Double.doubleToRawLongBits(value);
+    }
+
+    /**
+     * Pushes a boolean without boxing it.
+     * @param value Boolean to be added.
+     */
+    public void pushBool(boolean value) {
+        int slot = grow();
+        tags[slot] = BOOL;
+        values[slot] = value ? 1 : 0;
+    }
+
+    /**
+     * Reserves the slot above the top of the stack, enlarging the arrays when they are full.
+     * @return Index of the new top slot.
+     */
+    private int grow() {
+        if (size == tags.length) {
+            int capacity = size * 2;
+            tags = Arrays.copyOf(tags, capacity);
+            values = Arrays.copyOf(values, capacity);
+            refs = Arrays.copyOf(refs, capacity);
         }
+        return size++;
     }
 
     /**
@@ -45,15 +114,29 @@ public class MyStack {
      */
     public void exch() {
 
-        if (stack.size() < 2) {
+        if (size < 2) {
             throw new EmptyStackException();
         }
 
-        // pop the first two elements from the stack and then return them in reverse order.
-        Object first = pop();
-        Object second = pop();
-        push(first);
-        push(second);
+        // swap the two top slots in place
+        swap(size - 1, size - 2);
+    }
+
+    /**
+     * Exchanges the contents of two slots.
+     * @param a Index of the first slot.
+     * @param b Index of the second slot.
+     */
+    private void swap(int a, int b) {
+        byte tag = tags[a];
+        tags[a] = tags[b];
+        tags[b] = tag;
+        long value = values[a];
+        values[a] = values[b];
+        values[b] = value;
+        Object ref = refs[a];
+        refs[a] = refs[b];
+        refs[b] = ref;
     }
 
     /**
@@ -62,10 +145,64 @@ public class MyStack {
      */
     public Object pop() {
 
-        if (stack.size() < 1) {
+        if (size < 1) {
+            throw new EmptyStackException();
+        }
+        Object element = box(--size);
+        refs[size] = null;
+        return element;
+    }
+
+    /**
+     * Removes an integer from the top of the stack without boxing it.
+     * @return Integer to be removed.
+     * @throws InputMismatchException when the element is not an integer.
+     */
+    public int popInt() {
+        if (size < 1) {
             throw new EmptyStackException();
         }
-        return stack.pop();
+        if (tags[size - 1] != INT) {
+            pop();
+            throw new InputMismatchException("Operand must be an integer.");
+        }
+        return (int) values[--size];
+    }
+
+    /**
+     * Removes a number from the top of the stack without boxing it, converting integers to reals.
+     * @return Number to be removed.
+     * @throws InputMismatchException when the element is not a number.
+     */
+    public double popReal() {
+        if (size < 1) {
+            throw new EmptyStackException();
+        }
+        byte tag = tags[--size];
+        if (tag == REAL) {
+            return Double.longBitsToDouble(values[size]);
+        }
+        if (tag == INT) {
+            return (int) values[size];
+        }
+        refs[size] = null;
+        throw new InputMismatchException("Operand must be a number.");
+    }
+
+    /**
+     * Removes a boolean from the top of the stack without boxing it.
+     * @return Boolean to be removed.
+     * @throws InputMismatchException when the element is not a boolean.
+     */
+    public boolean popBool() {
+        if (size < 1) {
+            throw new EmptyStackException();
+        }
+        if (tags[size - 1] != BOOL) {
+            pop();
+            throw new InputMismatchException("Operand must be a boolean.");
+        }
+        return values[--size] != 0;
     }
 
     /**
@@ -73,10 +210,271 @@ public class MyStack {
      * @return Element to be 'examined'
      */
     public Object peek() {
-        if (stack.size() < 1) {
+        if (size < 1) {
+            throw new EmptyStackException();
+        }
+        return box(size - 1);
+    }
+
+    /**
+     * Fetches the type of an element without removing it.
+     * @param depth Distance from the top of the stack, 0 being the top element.
+     * @return One of INT, REAL, BOOL or REF.
+     */
+    public byte peekTag(int depth) {
+        if (depth >= size) {
             throw new EmptyStackException();
         }
-        return stack.peek();
+        return tags[size - 1 - depth];
+    }
+
+    /**
+     * Fetches the tags of the two top elements in one go, so that a binary operation can check the types of
+     * both its operands with a single comparison.
+     * @return Tag of the element below the top shifted left by two, or'ed with the tag of the top element,
+     * such as INT_INT; -1 when there are fewer than two elements.
+     */
+    public int pairTags() {
+        if (size < 2) {
+            return -1;
+        }
+        return tags[size - 2] << 2 | tags[size - 1];
+    }
+
+    /**
+     * Reads an integer without checking its tag. Only for callers that have checked it with pairTags().
+     * @param depth Distance from the top of the stack, 0 or 1.
+     * @return Integer in the slot.
+     */
+    public int intAt(int depth) {
+        return (int) values[size - 1 - depth];
+    }
+
+    /**
+     * Reads a number as a real. Only for callers that have checked that it is a number with pairTags().
+     * @param depth Distance from the top of the stack, 0 or 1.
+     * @return Number in the slot, converted to a real if it is an integer.
+     */
+    public double realAt(int depth) {
+        int slot = size - 1 - depth;
+        return tags[slot] == REAL ? Double.longBitsToDouble(values[slot]) : (int) values[slot];
+    }
+
+    /**
+     * Replaces the two top elements, known to be numbers, with an integer.
+     * @param value Result of the operation on them.
+     */
+    public void collapseInt(int value) {
+        size--;
+        tags[size - 1] = INT;
+        values[size - 1] = value;
+    }
+
+    /**
+     * Replaces the two top elements, known to be numbers, with a real.
+     * @param value Result of the operation on them.
+     */
+    public void collapseReal(double value) {
+        size--;
+        tags[size - 1] = REAL;
+        values[size - 1] = Double.doubleToRawLongBits(value);
+    }
+
+    /**
+     * Replaces the two top elements, known to be numbers, with a boolean.
+     * @param value Result of the comparison of them.
+     */
+    public void collapseBool(boolean value) {
+        size--;
+        tags[size - 1] = BOOL;
+        values[size - 1] = value ? 1 : 0;
+    }
+
+    /**
+     * Reads the raw contents of a slot holding a number or a boolean: the integer, the bits of the real, or
+     * 1 for true and 0 for false. Only for callers that have checked the tag with peekTag().
+     * @param depth Distance from the top of the stack.
+     * @return Contents of the slot.
+     */
+    public long bitsAt(int depth) {
+        return values[size - 1 - depth];
+    }
+
+    /**
+     * Pushes a number or a boolean given as the raw contents bitsAt() reads.
+     * @param tag INT, REAL or BOOL.
+     * @param bits Contents of the slot.
+     */
+    public void pushBits(byte tag, long bits) {
+        int slot = grow();
+        tags[slot] = tag;
+        values[slot] = bits;
+    }
+
+    /**
+     * Removes elements from the top of the stack without reading them.
+     * @param n Number of elements, no more than count().
+     */
+    public void drop(int n) {
+        for (int i = 0; i < n; i++) {
+            refs[--size] = null;
+        }
+    }
+
+    /**
+     * Squares the number on top of the stack in place, as dup mul does.
+     * @return False, leaving the stack alone, when the top element is missing or not a number.
+     */
+    public boolean dupMul() {
+        if (size < 1) {
+            return false;
+        }
+        int top = size - 1;
+        if (tags[top] == INT) {
+            int value = (int) values[top];
+            values[top] = value * value;
+            return true;
+        }
+        if (tags[top] != REAL) {
+            return false;
+        }
+        double value = Double.longBitsToDouble(values[top]);
+        setNumber(top, value * value, (int) value * (int) value, MyArithmetic.isWhole(value));
+        return true;
+    }
+
+    /**
+     * Replaces the two numbers on top of the stack with the top one minus the one below, as exch sub does.
+     * @return False, leaving the stack alone, when there are not two numbers on top.
+     */
+    public boolean exchSub() {
+        if (size < 2) {
+            return false;
+        }
+        int top = size - 1;
+        if ((tags[top] | tags[top - 1]) == INT) {
+            size--;
+            values[top - 1] = (int) values[top] - (int) values[top - 1];
+            return true;
+        }
+        if (tags[top] > REAL || tags[top - 1] > REAL) {
+            return false;
+        }
+        double first = realAt(0);
+        double second = realAt(1);
+        boolean whole = MyArithmetic.isWhole(first) && MyArithmetic.isWhole(second);
+        size--;
+        setNumber(top - 1, first - second, (int) first - (int) second, whole);
+        return true;
+    }
+
+    /**
+     * Adds an integer to the number on top of the stack in place, as pushing it and running add does.
+     * @param addend Integer to add.
+     * @return False, leaving the stack alone, when the top element is missing or not a number.
+     */
+    public boolean addInt(int addend) {
+        if (size < 1) {
+            return false;
+        }
+        int top = size - 1;
+        if (tags[top] == INT) {
+            values[top] = (int) values[top] + addend;
+            return true;
+        }
+        if (tags[top] != REAL) {
+            return false;
+        }
+        double value = Double.longBitsToDouble(values[top]);
+        setNumber(top, value + addend, (int) value + addend, MyArithmetic.isWhole(value));
+        return true;
+    }
+
+    /**
+     * Subtracts an integer from the number on top of the stack in place, as pushing it and running sub does.
+     * @param subtrahend Integer to subtract.
+     * @return False, leaving the stack alone, when the top element is missing or not a number.
+     */
+    public boolean subInt(int subtrahend) {
+        if (size < 1) {
+            return false;
+        }
+        int top = size - 1;
+        if (tags[top] == INT) {
+            values[top] = (int) values[top] - subtrahend;
+            return true;
+        }
+        if (tags[top] != REAL) {
+            return false;
+        }
+        double value = Double.longBitsToDouble(values[top]);
+        setNumber(top, value - subtrahend, (int) value - subtrahend, MyArithmetic.isWhole(value));
+        return true;
+    }
+
+    /**
+     * Writes the result of arithmetic on reals into a slot, as an integer when the operands were whole.
+     * @param slot Index of the slot.
+     * @param real Result as a real.
+     * @param integer Result as an integer, only read when whole.
+     * @param whole True when every operand held a whole value, as MyArithmetic gives an integer then.
+     */
+    private void setNumber(int slot, double real, int integer, boolean whole) {
+        tags[slot] = whole ? INT : REAL;
+        values[slot] = whole ? integer : Double.doubleToRawLongBits(real);
+    }
+
+    /**
+     * Checks whether the top elements of the stack are all integers, so that an operation can take
+     * its integer fast path.
+     * @param n Number of elements to check.
+     * @return True if there are at least n elements and each of them is an integer.
+     */
+    public boolean intsOnTop(int n) {
+        if (size < n) {
+            return false;
+        }
+        for (int i = size - n; i < size; i++) {
+            if (tags[i] != INT) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the top elements of the stack are all numbers.
+     * @param n Number of elements to check.
+     * @return True if there are at least n elements and each of them is an integer or a real.
+     */
+    public boolean numbersOnTop(int n) {
+        if (size < n) {
+            return false;
+        }
+        for (int i = size - n; i < size; i++) {
+            if (tags[i] > REAL) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Boxes the element in a slot for callers that work with objects.
+     * @param slot Index of the slot.
+     * @return Integer, Double, Boolean or the referenced object.
+     */
+    private Object box(int slot) {
+        switch (tags[slot]) {
+            case INT:
+                return (int) values[slot];
+            case REAL:
+                return Double.longBitsToDouble(values[slot]);
+            case BOOL:
+                return values[slot] != 0;
+            default:
+                return refs[slot];
+        }
     }
 
     /**
@@ -84,33 +482,27 @@ public class MyStack {
      */
     public void copy() {
 
-        if (stack.size() < 1) {
+        if (size < 1) {
             throw new EmptyStackException();
         }
 
         // element at the top of the operand stack
-        Object first = pop();
-        if (!(first instanceof Integer)) {
+        if (tags[size - 1] != INT) {
+            pop();
             throw new InputMismatchException("This operation can only be performed on integer values.");
         }
         // value storage for the value of the first element
-        int n = (Integer) first;
-        if (stack.size() < n) {
+        int n = popInt();
+        if (size < n) {
             throw new EmptyStackException();
         }
-        // array of objects to store each element popped from the stack
-        Object[] elements = new Object[n];
-
-        for (int i = n - 1; i >= 0; i--) {
-            elements[i] = pop();
-        }
-        // push each element back onto the operand stack
-        for (Object element : elements) {
-            push(element);
-        }
-        // and then push each element again to populate the stack with copies
-        for (Object element : elements) {
-            push(element);
+        // copy the top n slots above themselves
+        int from = size - n;
+        for (int i = 0; i < n; i++) {
+            int slot = grow();
+            tags[slot] = tags[from + i];
+            values[slot] = values[from + i];
+            refs[slot] = refs[from + i];
         }
     }
 
@@ -119,23 +511,22 @@ public class MyStack {
      */
     public void dup() {
 
-        if (stack.size() < 1) {
+        if (size < 1) {
             throw new EmptyStackException();
         }
-        // store the element at the top of the stack
-        Object first = pop();
-        // create a copy of the popped element
-        Object dup = first;
-        // push both the originally popped element and its copy onto the stack.
-        push(first);
-        push(dup);
+        // duplicate the top slot, references are shared rather than copied
+        int slot = grow();
+        tags[slot] = tags[slot - 1];
+        values[slot] = values[slot - 1];
+        refs[slot] = refs[slot - 1];
     }
 
     /**
      * Removes all elements from the stack.
      */
     public void clear() {
-        stack.clear();
+        Arrays.fill(refs, 0, size, null);
+        size = 0;
     }
 
     /**
@@ -143,6 +534,6 @@ public class MyStack {
      * @return Value associated with the number of elements on the operand stack.
      */
     public int count() {
-        return stack.size();
+        return size;
     }
-}
\ No newline at end of file
+}
@@ -8,6 +8,8 @@ import java.util.*;
 public class MyString {
 
     private final MyStack stack;
+    // numbers are formatted here before being copied into a string, 32 bytes hold any radix
+    private final byte[] scratch = new byte[32];
 
     /**
      * Constructor.
@@ -23,86 +25,189 @@ public class MyString {
      */
     public int length() {
         Object string = stack.pop();
-        if (!(string instanceof String)) {
+        // names have a length too
+        if (string instanceof PSName) {
+            return ((PSName) string).length();
+        }
+        if (!(string instanceof CharSequence)) {
             throw new InputMismatchException("Type Error: length() requires an argument of type String.");
         }
-        return ((String)string).length();
+        return ((CharSequence)string).length();
     }
 
     /**
-     * Fetches a character element from the string.
+     * Creates a string of a given length with every character code zero, and pushes it onto the stack.
+     * @throws InputMismatchException when the length is not an integer or is negative.
+     */
+    public void newString() {
+        int length = stack.popInt();
+        if (length < 0) {
+            throw new InputMismatchException("String length cannot be negative.");
+        }
+        stack.push(new PSString(length));
+    }
+
+    /**
+     * Fetches a character element from the string, pushing its character code.
      * @throws IndexOutOfBoundsException when the index position is outside the range of the length of the string.
      * @throws InputMismatchException when the provided argument for string is not type String, and the provided
      * argument for element is not a numeric type.
      */
     public void get() {
-        Object element = stack.pop();
+        int index = stack.popInt();
         Object string = stack.pop();
-        if ((string instanceof String) && (element instanceof String)) {
-            // we have to store the states of string and element to new explicit types
-            String str = (String) string;
-            int index = Integer.parseInt((String)element);
-            // to check that they hold valid states
-            if (index < 0 || index >= str.length()) {
-                throw new IndexOutOfBoundsException();
-            }
-            stack.push(str.charAt(index));
-        } else {
-            throw new InputMismatchException();
+        if (!(string instanceof PSString)) {
+            throw new InputMismatchException("Type Error: get() requires an argument of type String.");
         }
+        // the code is read straight out of the string's bytes
+        stack.pushInt(((PSString) string).get(index));
+    }
+
+    /**
+     * Replaces a character element of the string in place.
+     * @throws IndexOutOfBoundsException when the index position is outside the range of the length of the string.
+     * @throws InputMismatchException when the provided argument for string is not type String, and the provided
+     * arguments for element and character code are not integers.
+     */
+    public void put() {
+        int code = stack.popInt();
+        int index = stack.popInt();
+        Object string = stack.pop();
+        if (!(string instanceof PSString)) {
+            throw new InputMismatchException("Type Error: put() requires an argument of type String.");
+        }
+        ((PSString) string).put(index, code);
     }
 
     /**
      * Instantiates a string object whose state depends on a subsequence
-     * of a an existing string.
+     * of a an existing string. The new string shares its characters with the existing one rather than copying them.
      * @throws IndexOutOfBoundsException when the index position is outside the range of the length of the string.
      * @throws InputMisMatchException when the provided argument for string is not type String, and the provided
      * argument for element is not a numeric type.
      */
     public void getInterval() {
-        Object length = stack.pop();
-        Object element = stack.pop();
+        int chars = stack.popInt();
+        int index = stack.popInt();
         Object string = stack.pop();
-        if ((string instanceof String) && (element instanceof Integer) && (length instanceof Integer)) {
-            String str = (String) string;
-            int index = ((Number)element).intValue();
-            int chars = ((Number)length).intValue();
-            if (index < 0 || index + chars > str.length()) {
-                throw new IndexOutOfBoundsException();
-            }
-            stack.push(str.substring(index, index + chars));
-        } else {
+        if (!(string instanceof PSString)) {
             throw new InputMismatchException("Invalid Type.");
         }
+        stack.push(((PSString) string).getInterval(index, chars));
     }
 
     /**
-     * Replaces a subsequence of character elements in an existing string with 
+     * Replaces a subsequence of character elements in an existing string with
      * the character elements of a new string, beginning at some specified index in
-     * the older string.
+     * the older string. The existing string is changed in place and nothing is pushed.
      * @throws IndexOutOfBoundsException when the index position is outside the range of the length of the string.
      * @throws InputMismatchException when the provided argument for string is not type String, and the provided
      * argument for element is not a numeric type.
      */
     public void putInterval() {
         Object substring = stack.pop();
-        Object element = stack.pop();
+        int index = stack.popInt();
         Object string = stack.pop();
-        if ((string instanceof String) && (element instanceof Integer) && (substring instanceof String)) {
-            String str = (String) string;
-            int index = ((Number)element).intValue();
-            String sub = (String) substring;
-            if (index < 0 || index + sub.length() > str.length()) {
-                throw new IndexOutOfBoundsException();
+        if (!(string instanceof PSString) || !(substring instanceof CharSequence)) {
+            throw new InputMismatchException();
+        }
+        // only the replaced characters are written, whatever the length of the existing string
+        PSString source = substring instanceof PSString ? (PSString) substring : PSString.of((CharSequence) substring);
+        ((PSString) string).putInterval(index, source);
+    }
+
+    /**
+     * Converts an object to its text, written into the start of an existing string, and pushes the part
+     * of the string holding the text. Numbers are formatted without creating any intermediate strings.
+     * @throws IndexOutOfBoundsException when the text does not fit in the string.
+     * @throws InputMismatchException when the destination is not a string.
+     */
+    public void cvs() {
+        PSString string = destination("cvs");
+        byte tag = stack.peekTag(0);
+        if (tag == MyStack.INT) {
+            stack.push(fill(string, MyFormatter.format(stack.popInt(), scratch, 0)));
+            return;
+        }
+        if (tag == MyStack.REAL) {
+            stack.push(fill(string, MyFormatter.format(stack.popReal(), scratch, 0)));
+            return;
+        }
+        Object value = stack.pop();
+        CharSequence text;
+        if (value instanceof CharSequence || value instanceof PSName || value instanceof Boolean
+                || value instanceof MyOperator) {
+            text = value instanceof CharSequence ? (CharSequence) value : value.toString();
+        } else {
+            // dictionaries and procedures have no text of their own
+            text = "--nostringval--";
+        }
+        if (text.length() > string.length()) {
+            throw new IndexOutOfBoundsException("String too small for the result.");
+        }
+        PSString result = string.getInterval(0, text.length());
+        if (text instanceof PSString) {
+            result.putInterval(0, (PSString) text);
+        } else {
+            for (int i = 0; i < text.length(); i++) {
+                result.put(i, text.charAt(i));
             }
-            // split original string from its first char to the specified index position
-            stack.push(str.substring(0, index) 
-            // concatenate specified substring onto first-half of split
-            + sub
-            // concatenate second-half of original string onto substring but only for remaining index positions from original string 
-            + str.substring(index + sub.length()));
+        }
+        stack.push(result);
+    }
+
+    /**
+     * Converts a number to its digits in a given radix, written into the start of an existing string, and
+     * pushes the part of the string holding the digits. Outside radix 10 reals are truncated to integers and
+     * integers are written as their unsigned 32 bits.
+     * @throws IllegalArgumentException when the radix is not between 2 and 36.
+     * @throws IndexOutOfBoundsException when the digits do not fit in the string.
+     * @throws InputMismatchException when the destination is not a string or the operand is not a number.
+     */
+    public void cvrs() {
+        PSString string = destination("cvrs");
+        int radix = stack.popInt();
+        if (radix < 2 || radix > 36) {
+            throw new IllegalArgumentException("Radix must be between 2 and 36.");
+        }
+        int length;
+        if (stack.peekTag(0) == MyStack.REAL) {
+            double value = stack.popReal();
+            length = radix == 10 ? MyFormatter.format(value, scratch, 0) : MyFormatter.format((int) value, radix, scratch, 0);
         } else {
-            throw new InputMismatchException();
+            length = MyFormatter.format(stack.popInt(), radix, scratch, 0);
+        }
+        stack.push(fill(string, length));
+    }
+
+    /**
+     * Pops the string a conversion writes into.
+     * @param operator Name of the conversion, for the error message.
+     * @return Destination string.
+     * @throws InputMismatchException when the operand is not a string.
+     */
+    private PSString destination(String operator) {
+        Object string = stack.pop();
+        if (!(string instanceof PSString)) {
+            throw new InputMismatchException("Type Error: " + operator + " requires a string to write into.");
+        }
+        return (PSString) string;
+    }
+
+    /**
+     * Copies the formatted bytes in the scratch buffer into the start of a string.
+     * @param string Destination string.
+     * @param length Number of formatted bytes.
+     * @return Part of the string holding the bytes.
+     * @throws IndexOutOfBoundsException when the bytes do not fit in the string.
+     */
+    private PSString fill(PSString string, int length) {
+        if (length > string.length()) {
+            throw new IndexOutOfBoundsException("String too small for the result.");
+        }
+        for (int i = 0; i < length; i++) {
+            string.put(i, scratch[i]);
         }
+        return string.getInterval(0, length);
     }
-}
\ No newline at end of file
+}
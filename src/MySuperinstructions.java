@@ -0,0 +1,160 @@
+import java.util.*;
+
+/**
+ * Superinstructions: operations fused from a sequence of instructions that procedures run often, each doing
+ * the work of the whole sequence behind a single check of the stack's depth and the operands' tags, without
+ * dispatching the instructions one by one or pushing values only for the next instruction to pop them.
+ * <p>
+ * Every fused operation has a pattern of the instructions it stands for, written as MyNgramProfile writes
+ * instructions: operator names, and &lt;int&gt; and /&lt;name&gt; matching any integer literal or literal name.
+ * Sequences ending in if or ifelse are not fused, since a fused operation running the procedure lets the JIT
+ * inline the procedure's run back into the loop dispatching instructions, which grows that loop's compiled
+ * code several times over and leaves recursive programs interpreted for longer. The optimizer only uses the
+ * patterns in the table below, trying them in its order, which lists those that ran often enough in the
+ * benchmark corpus, most frequent first. The table is generated, see bench/SuperinstructionProfile.java for how to regenerate it
+ * after changing the corpus or adding an operation here.
+ * @author Aaron Howe
+ * @version Java 11
+ */
+public final class MySuperinstructions {
+
+    // fused operations, each the index of its pattern in PATTERNS
+    public static final int DUP_MUL = 0;
+    public static final int EXCH_SUB = 1;
+    public static final int ADD_INT = 2;
+    public static final int SUB_INT = 3;
+    public static final int DEF_NAME = 4;
+    public static final int EXCH_PUT = 5;
+    // instructions in the longest pattern
+    public static final int LONGEST;
+
+    private static final List<String> PATTERNS;
+    // the patterns split into one token per instruction
+    private static final String[][] TOKENS;
+
+    static {
+        PATTERNS = List.of("dup mul", "exch sub", "<int> add", "<int> sub", "/<name> exch def", "exch <int> put");
+        TOKENS = PATTERNS.stream().map(pattern -> pattern.split(" ")).toArray(String[][]::new);
+        LONGEST = Arrays.stream(TOKENS).mapToInt(tokens -> tokens.length).max().getAsInt();
+    }
+
+    // BEGIN GENERATED TABLE, run bench/SuperinstructionProfile.java with --update to regenerate
+    private static final List<String> TABLE = List.of(
+        "exch <int> put",
+        "/<name> exch def",
+        "<int> sub",
+        "<int> add");
+    // END GENERATED TABLE
+
+    // operations of the table's patterns, in the table's order, leaving out any pattern no longer fused until
+    // the table is regenerated
+    private static final int[] ENABLED = TABLE.stream().mapToInt(PATTERNS::indexOf).filter(op -> op >= 0).toArray();
+
+    /**
+     * Not instantiable.
+     */
+    private MySuperinstructions() {
+    }
+
+    /**
+     * Patterns Getter Function.
+     * @return Pattern of every fused operation, indexed by operation.
+     */
+    public static List<String> patterns() {
+        return PATTERNS;
+    }
+
+    /**
+     * Table Getter Function.
+     * @return Patterns the optimizer uses, in the order it tries them.
+     */
+    public static List<String> table() {
+        return TABLE;
+    }
+
+    /**
+     * Finds the fused operation standing for the instructions starting at some position.
+     * @param names Instructions as MyNgramProfile writes them, or with their literals written as the patterns
+     * write them.
+     * @param start Position of the first instruction.
+     * @return First operation of the table whose pattern matches there, or -1.
+     */
+    public static int match(List<String> names, int start) {
+        for (int op : ENABLED) {
+            if (matches(TOKENS[op], names, start)) {
+                return op;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Checks whether a pattern matches the instructions starting at some position.
+     * @param pattern Pattern of a fused operation.
+     * @param names Instructions as MyNgramProfile writes them.
+     * @param start Position of the first instruction.
+     * @return True when the instructions there are those the pattern stands for.
+     */
+    public static boolean matches(String pattern, List<String> names, int start) {
+        return matches(pattern.split(" "), names, start);
+    }
+
+    /**
+     * Checks whether a pattern split into tokens matches the instructions starting at some position.
+     * @param tokens Pattern of a fused operation, one token per instruction.
+     * @param names Instructions as MyNgramProfile writes them, or with their literals written as the patterns
+     * write them.
+     * @param start Position of the first instruction.
+     * @return True when the instructions there are those the pattern stands for.
+     */
+    private static boolean matches(String[] tokens, List<String> names, int start) {
+        if (start + tokens.length > names.size()) {
+            return false;
+        }
+        for (int i = 0; i < tokens.length; i++) {
+            String name = names.get(start + i);
+            boolean matched;
+            switch (tokens[i]) {
+                case "<int>":
+                    matched = name.equals("<int>") || integer(name);
+                    break;
+                case "/<name>":
+                    matched = name.startsWith("/");
+                    break;
+                default:
+                    matched = name.equals(tokens[i]);
+            }
+            if (!matched) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Counts the instructions a fused operation stands for.
+     * @param op Fused operation.
+     * @return Length of its pattern.
+     */
+    public static int length(int op) {
+        return TOKENS[op].length;
+    }
+
+    /**
+     * Checks whether an instruction is an integer literal as MyNgramProfile writes it.
+     * @param name Instruction as MyNgramProfile writes it.
+     * @return True for an optional minus sign followed by digits.
+     */
+    private static boolean integer(String name) {
+        int first = name.startsWith("-") ? 1 : 0;
+        if (name.length() == first) {
+            return false;
+        }
+        for (int i = first; i < name.length(); i++) {
+            if (name.charAt(i) < '0' || name.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
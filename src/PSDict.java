@@ -0,0 +1,232 @@
+import java.util.*;
+
+/**
+ * PostScript dictionary object. It carries the capacity it was created with and stores its entries in an
+ * open-addressed table sized for that capacity up front, up to a limit past which it grows as entries are
+ * defined, so defining, counting and querying the capacity are all constant time. Keys are compared by identity before equality, which is all it takes for names.
+ * Every modification advances the dictionary's stamp, so a cached lookup can tell whether the dictionary
+ * has changed since the lookup was made without searching it again.
+ * @author Aaron Howe
+ * @version Java 11
+ */
+public class PSDict extends AbstractMap<Object, Object> {
+
+    // smallest table, a power of two
+    private static final int MIN_TABLE = 8;
+    // largest table allocated before anything is defined, so a huge requested capacity costs nothing until it is used
+    private static final int MAX_PRESIZE = 1 << 16;
+
+    // parallel key and value slots, a null key marks a free slot
+    private Object[] keys;
+    private Object[] values;
+    // number of hash bits used to pick a home slot
+    private int shift;
+    private int size;
+    private final int capacity;
+    private int stamp;
+
+    /**
+     * Constructor.
+     * @param capacity Number of entries the dictionary is meant to hold.
+     */
+    public PSDict(int capacity) {
+        this.capacity = capacity;
+        // keep the table at most three quarters full when the dictionary is at capacity
+        int table = MIN_TABLE;
+        while (table < MAX_PRESIZE && table / 4 * 3 < capacity) {
+            table <<= 1;
+        }
+        allocate(table);
+    }
+
+    /**
+     * Capacity Getter Function.
+     * @return Number of entries the dictionary was created to hold.
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Modification Stamp Getter Function.
+     * @return Value that changes whenever the dictionary is modified.
+     */
+    public int stamp() {
+        return stamp;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Object get(Object key) {
+        int slot = find(key);
+        return slot >= 0 ? values[slot] : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return find(key) >= 0;
+    }
+
+    @Override
+    public Object put(Object key, Object value) {
+        stamp++;
+        int slot = find(key);
+        if (slot >= 0) {
+            Object previous = values[slot];
+            values[slot] = value;
+            return previous;
+        }
+        if (size + 1 > keys.length / 4 * 3) {
+            allocate(keys.length << 1);
+            slot = find(key);
+        }
+        slot = ~slot;
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+        return null;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        int slot = find(key);
+        if (slot < 0) {
+            return null;
+        }
+        stamp++;
+        Object previous = values[slot];
+        size--;
+        // shift later members of the probe run back so that no lookup stops early at the hole
+        int hole = slot;
+        int mask = keys.length - 1;
+        for (int next = (hole + 1) & mask; keys[next] != null; next = (next + 1) & mask) {
+            int home = home(keys[next]);
+            // move the entry unless its home lies cyclically between the hole and its current slot
+            boolean reachable = hole <= next ? (home > hole && home <= next) : (home > hole || home <= next);
+            if (!reachable) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+        }
+        keys[hole] = null;
+        values[hole] = null;
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        stamp++;
+        Arrays.fill(keys, null);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    @Override
+    public Set<Map.Entry<Object, Object>> entrySet() {
+        return new AbstractSet<Map.Entry<Object, Object>>() {
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public Iterator<Map.Entry<Object, Object>> iterator() {
+                return new Iterator<Map.Entry<Object, Object>>() {
+                    private int slot = advance(0);
+
+                    private int advance(int from) {
+                        while (from < keys.length && keys[from] == null) {
+                            from++;
+                        }
+                        return from;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return slot < keys.length;
+                    }
+
+                    @Override
+                    public Map.Entry<Object, Object> next() {
+                        if (slot >= keys.length) {
+                            throw new NoSuchElementException();
+                        }
+                        Map.Entry<Object, Object> entry = new SimpleImmutableEntry<>(keys[slot], values[slot]);
+                        slot = advance(slot + 1);
+                        return entry;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Dictionaries are distinct objects, equal only to themselves whatever their contents.
+     * @param other Object to compare with.
+     * @return True if other is this dictionary.
+     */
+    @Override
+    public boolean equals(Object other) {
+        return this == other;
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(this);
+    }
+
+    /**
+     * Searches the table for a key.
+     * @param key Key to search for.
+     * @return Slot holding the key, or the bitwise complement of the free slot where it would be inserted.
+     */
+    private int find(Object key) {
+        int mask = keys.length - 1;
+        for (int slot = home(key); ; slot = (slot + 1) & mask) {
+            Object found = keys[slot];
+            if (found == null) {
+                return ~slot;
+            }
+            if (found == key || found.equals(key)) {
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * Computes the slot a key is placed in when there is no collision.
+     * @param key Key to place.
+     * @return Home slot of the key.
+     */
+    private int home(Object key) {
+        // multiplicative hashing spreads clustered hash codes across the table
+        return (key.hashCode() * 0x9E3779B9) >>> shift;
+    }
+
+    /**
+     * Replaces the table with an empty one of the given size and reinserts every entry.
+     * @param table Number of slots, a power of two.
+     */
+    private void allocate(int table) {
+        Object[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new Object[table];
+        values = new Object[table];
+        shift = Integer.numberOfLeadingZeros(table) + 1;
+        if (oldKeys == null) {
+            return;
+        }
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = ~find(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
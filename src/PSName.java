@@ -0,0 +1,281 @@
+import java.lang.ref.*;
+
+/**
+ * PostScript name object. Every name is interned once into a global table, so two occurrences of the same
+ * name are the same object: dictionaries and caches compare names by identity and use the hash computed
+ * when the name was interned, instead of hashing and comparing the characters on every lookup. Names are a
+ * distinct type from string values, even when their characters are the same.
+ * <p>
+ * The table only holds names weakly, so a long-running process such as the daemon does not keep every name
+ * any request ever used. A name nothing refers to any more is collected, and interning its characters again
+ * creates a new object, which nobody can tell apart from the old one since nothing holds that any more.
+ * @author Aaron Howe
+ * @version Java 11
+ */
+public final class PSName {
+
+    // smallest table, a power of two
+    private static final int MIN_TABLE = 1024;
+
+    // interned names in an open-addressed table whose size is a power of two, a null slot is free. Lookups
+    // read it without the lock, a name they miss because it is being added is found again under the lock.
+    // The slot of a collected name stays taken until the table is rebuilt without it
+    private static volatile Entry[] table = new Entry[MIN_TABLE];
+    // slots taken, by names in use or collected
+    private static int used;
+    private static int nextId;
+
+    private final String text;
+    private final int hash;
+    private final int id;
+
+    /**
+     * Constructor, only used by the intern table.
+     * @param text Characters of the name.
+     * @param hash Hash of the characters.
+     * @param id Number of names interned before this one.
+     */
+    private PSName(String text, int hash, int id) {
+        this.text = text;
+        this.hash = hash;
+        this.id = id;
+    }
+
+    /**
+     * Fetches the unique name object for a run of characters, creating it the first time the characters
+     * are seen. Finding a name that already exists allocates nothing.
+     * @param chars Buffer holding the characters.
+     * @param offset Index of the first character.
+     * @param length Number of characters.
+     * @return Interned name.
+     */
+    public static PSName intern(char[] chars, int offset, int length) {
+        // same hash as String.hashCode, so that interning a String can reuse its cached hash
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        PSName found = find(table, chars, offset, length, hash);
+        if (found != null) {
+            return found;
+        }
+        synchronized (PSName.class) {
+            found = find(table, chars, offset, length, hash);
+            return found != null ? found : add(new String(chars, offset, length), hash);
+        }
+    }
+
+    /**
+     * Fetches the unique name object with the characters of a string.
+     * @param text Characters of the name.
+     * @return Interned name.
+     */
+    public static PSName intern(String text) {
+        int hash = text.hashCode();
+        PSName found = find(table, text, hash);
+        if (found != null) {
+            return found;
+        }
+        synchronized (PSName.class) {
+            found = find(table, text, hash);
+            return found != null ? found : add(text, hash);
+        }
+    }
+
+    /**
+     * Looks for an interned name without taking the lock, so sessions on different threads can lex in
+     * parallel. A name added since the snapshot was read may be missed, callers then look again under the lock.
+     * @param names Snapshot of the table.
+     * @param hash Hash of the characters.
+     * @return Interned name, or null if it is not in the snapshot.
+     */
+    private static PSName find(Entry[] names, char[] chars, int offset, int length, int hash) {
+        int mask = names.length - 1;
+        for (int slot = spread(hash) & mask; names[slot] != null; slot = (slot + 1) & mask) {
+            if (names[slot].hash == hash) {
+                PSName name = names[slot].get();
+                if (name != null && name.matches(chars, offset, length)) {
+                    return name;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Looks for an interned name with the characters of a string without taking the lock.
+     * @param names Snapshot of the table.
+     * @param hash Hash of the string.
+     * @return Interned name, or null if it is not in the snapshot.
+     */
+    private static PSName find(Entry[] names, String text, int hash) {
+        int mask = names.length - 1;
+        for (int slot = spread(hash) & mask; names[slot] != null; slot = (slot + 1) & mask) {
+            if (names[slot].hash == hash) {
+                PSName name = names[slot].get();
+                if (name != null && name.text.equals(text)) {
+                    return name;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Converts a dictionary key to the form dictionaries store. Strings used as keys stand for the name
+     * with the same characters, as in PostScript, and every other key is used as it is.
+     * @param key Key to convert.
+     * @return Interned name for a string, otherwise the key itself.
+     */
+    public static Object key(Object key) {
+        return key instanceof CharSequence ? intern(key.toString()) : key;
+    }
+
+    /**
+     * Counts the names in the table that have not been collected.
+     * @return Number of names in use.
+     */
+    public static synchronized int count() {
+        int count = 0;
+        for (Entry entry : table) {
+            if (entry != null && entry.get() != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Id Getter Function. Ids follow the order names were interned in and are never handed out twice, so a
+     * name collected and interned again has a new one.
+     * @return Number of names interned before this one.
+     */
+    public int id() {
+        return id;
+    }
+
+    /**
+     * Counts the characters of the name.
+     * @return Length of the name.
+     */
+    public int length() {
+        return text.length();
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * Names are unique, so a name is equal only to itself.
+     * @param other Object to compare with.
+     * @return True if other is this name.
+     */
+    @Override
+    public boolean equals(Object other) {
+        return this == other;
+    }
+
+    /**
+     * Fetches the characters of the name, without the slash of a literal name.
+     * @return Text of the name.
+     */
+    @Override
+    public String toString() {
+        return text;
+    }
+
+    /**
+     * Compares the name's characters with a run of characters.
+     * @return True if they are the same characters.
+     */
+    private boolean matches(char[] chars, int offset, int length) {
+        if (text.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (text.charAt(i) != chars[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds a new name to the table. Once half the slots are taken the table is rebuilt from the names still
+     * in use, at a size that leaves it a quarter full, which grows it or, after many names were collected,
+     * shrinks it. A rebuilt table is filled before it is published, so lock-free lookups always see a
+     * complete table. Must be called while holding the table's lock.
+     * @param text Characters of the name.
+     * @param hash Hash of the characters.
+     * @return New name.
+     */
+    private static PSName add(String text, int hash) {
+        PSName name = new PSName(text, hash, nextId++);
+        int mask = table.length - 1;
+        int slot = spread(hash) & mask;
+        while (table[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = new Entry(name);
+        used++;
+        if (used * 2 > table.length) {
+            Entry[] old = table;
+            int live = 0;
+            for (Entry entry : old) {
+                if (entry != null && entry.get() != null) {
+                    live++;
+                }
+            }
+            int size = MIN_TABLE;
+            while (size < live * 4) {
+                size <<= 1;
+            }
+            Entry[] rebuilt = new Entry[size];
+            mask = size - 1;
+            used = 0;
+            for (Entry entry : old) {
+                // a name collected since it was counted is left out too, the table only ends up emptier
+                if (entry != null && entry.get() != null) {
+                    int free = spread(entry.hash) & mask;
+                    while (rebuilt[free] != null) {
+                        free = (free + 1) & mask;
+                    }
+                    rebuilt[free] = entry;
+                    used++;
+                }
+            }
+            table = rebuilt;
+        }
+        return name;
+    }
+
+    /**
+     * Mixes the high bits of a hash into the low bits used to pick a slot.
+     * @param hash Hash of a name's characters.
+     * @return Spread hash.
+     */
+    private static int spread(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Slot of the table, holding a name weakly along with its hash, so probing compares hashes without
+     * following the reference.
+     */
+    private static final class Entry extends WeakReference<PSName> {
+
+        final int hash;
+
+        /**
+         * Constructor.
+         * @param name Name to hold.
+         */
+        Entry(PSName name) {
+            super(name);
+            this.hash = name.hash;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+import java.nio.charset.StandardCharsets;
+
+/**
+ * PostScript string object: a mutable run of bytes. A string is a window onto a byte array, and
+ * getInterval() returns another window onto the same array, so a substring costs nothing to make and
+ * writes through either window are seen by both. Characters are the bytes read as ISO-8859-1, the
+ * character set of PostScript source.
+ * @author Aaron Howe
+ * @version Java 11
+ */
+public final class PSString implements CharSequence, Comparable<PSString> {
+
+    private final byte[] bytes;
+    private final int offset;
+    private final int length;
+
+    /**
+     * Constructor for a new string of zero bytes.
+     * @param length Number of bytes.
+     */
+    public PSString(int length) {
+        this(new byte[length], 0, length);
+    }
+
+    /**
+     * Constructor for a window onto an existing byte array, sharing rather than copying it.
+     * @param bytes Storage of the string.
+     * @param offset Index of the string's first byte.
+     * @param length Number of bytes.
+     */
+    public PSString(byte[] bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Creates a string holding a copy of some characters. Characters outside ISO-8859-1 keep their low byte.
+     * @param chars Characters to copy.
+     * @return New string.
+     */
+    public static PSString of(CharSequence chars) {
+        if (chars instanceof PSString) {
+            return ((PSString) chars).copy();
+        }
+        PSString string = new PSString(chars.length());
+        for (int i = 0; i < string.length; i++) {
+            string.bytes[i] = (byte) chars.charAt(i);
+        }
+        return string;
+    }
+
+    /**
+     * Counts the bytes of the string.
+     * @return Length of the string.
+     */
+    @Override
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Fetches a byte of the string as a character code.
+     * @param index Position of the byte.
+     * @return Code between 0 and 255.
+     * @throws IndexOutOfBoundsException when the index lies outside the string.
+     */
+    public int get(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException();
+        }
+        return bytes[offset + index] & 0xFF;
+    }
+
+    /**
+     * Replaces a byte of the string.
+     * @param index Position of the byte.
+     * @param code Character code, only its low eight bits are kept.
+     * @throws IndexOutOfBoundsException when the index lies outside the string.
+     */
+    public void put(int index, int code) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException();
+        }
+        bytes[offset + index] = (byte) code;
+    }
+
+    /**
+     * Makes a window onto part of the string without copying it.
+     * @param index Position of the first byte.
+     * @param count Number of bytes.
+     * @return String sharing storage with this one.
+     * @throws IndexOutOfBoundsException when the interval does not lie within the string.
+     */
+    public PSString getInterval(int index, int count) {
+        if (index < 0 || count < 0 || index > length - count) {
+            throw new IndexOutOfBoundsException();
+        }
+        return new PSString(bytes, offset + index, count);
+    }
+
+    /**
+     * Overwrites part of the string in place with the bytes of another string, which may share its storage.
+     * @param index Position of the first byte to overwrite.
+     * @param source String to copy from.
+     * @throws IndexOutOfBoundsException when the source does not fit within the string at the index.
+     */
+    public void putInterval(int index, PSString source) {
+        if (index < 0 || index > length - source.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        System.arraycopy(source.bytes, source.offset, bytes, offset + index, source.length);
+    }
+
+    /**
+     * Copies the string into new storage.
+     * @return String with the same bytes that shares nothing with this one.
+     */
+    public PSString copy() {
+        byte[] copy = new byte[length];
+        System.arraycopy(bytes, offset, copy, 0, length);
+        return new PSString(copy, 0, length);
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) get(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return getInterval(start, end - start);
+    }
+
+    /**
+     * Compares the bytes of two strings as unsigned values, shorter strings first when one is a prefix of the other.
+     * @param other String to compare with.
+     * @return Negative, zero or positive as this string sorts before, with or after the other.
+     */
+    @Override
+    public int compareTo(PSString other) {
+        int common = Math.min(length, other.length);
+        for (int i = 0; i < common; i++) {
+            int difference = (bytes[offset + i] & 0xFF) - (other.bytes[other.offset + i] & 0xFF);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return length - other.length;
+    }
+
+    /**
+     * Strings are equal when they hold the same bytes, as with PostScript's eq. Since strings are mutable,
+     * dictionaries convert string keys to names rather than hashing the strings themselves.
+     * @param other Object to compare with.
+     * @return True if other is a string with the same bytes.
+     */
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof PSString && compareTo((PSString) other) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + (bytes[i] & 0xFF);
+        }
+        return hash;
+    }
+
+    /**
+     * Decodes the string's bytes as ISO-8859-1.
+     * @return Text of the string.
+     */
+    @Override
+    public String toString() {
+        return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+    }
+}
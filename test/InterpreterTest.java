@@ -364,41 +364,47 @@ public class InterpreterTest {
     }
 
     /**
-     * Tests that the get() function in MyString successfully retrieves the character of a string at a
+     * Tests that the get() function in MyString successfully retrieves the character code of a string at a
      * specified index position.
      */
     @Test
     public void stringGetTest() {
-        stack.push("Test");
-        stack.push("3");
+        stack.push(PSString.of("Test"));
+        stack.push(3);
         string.get();
-        assertEquals('t', stack.pop());
+        assertEquals((int) 't', stack.popInt());
     }
 
     /**
      * Tests that the getInterval() function in MyString successfully constructs a new string based on specified
-     * index values of an existing string object.
+     * index values of an existing string object, sharing the existing string's characters.
      */
     @Test
     public void getIntervalTest() {
-        stack.push("Test");
-        stack.push(0);
+        PSString test = PSString.of("Test");
+        stack.push(test);
+        stack.push(1);
         stack.push(2);
         string.getInterval();
-        assertEquals("Te", stack.pop());
+        PSString interval = (PSString) stack.pop();
+        assertEquals("es", interval.toString());
+        interval.put(0, 'a');
+        assertEquals("Tast", test.toString());
     }
 
     /**
      * Tests that the putInterval() function in MyString successfully replaces characters at specified index positions
-     * of an existing string with characters defined in a new string.
+     * of an existing string with characters defined in a new string, changing the existing string in place.
      */
     @Test
     public void putIntervalTest() {
-        stack.push("Test");
+        PSString test = PSString.of("Test");
+        stack.push(test);
         stack.push(1);
-        stack.push("ro");
+        stack.push(PSString.of("ro"));
         string.putInterval();
-        assertEquals("Trot", stack.pop());
+        assertEquals(0, stack.count());
+        assertEquals("Trot", test.toString());
     }
 
     /**
@@ -654,4 +660,1062 @@ public class InterpreterTest {
         stack.push("Test");
         io.printArray();
     }
-}
\ No newline at end of file
+
+    /**
+     * Tests that the lookup() function in MyOperators resolves operator names, ignoring case, and that the
+     * resolved operator performs its operation on the operand stack.
+     */
+    @Test
+    public void operatorLookupTest() {
+        MyOperators operators = new MyOperators(stack, arith, dictionary, string, bool, flow, io);
+        assertNull(operators.lookup("notAnOperator"));
+        assertSame(operators.lookup("add"), operators.lookup("ADD"));
+        stack.push(2);
+        stack.push(3);
+        operators.lookup("add").run();
+        assertEquals(5, stack.pop());
+    }
+
+    /**
+     * Tests that MyLexer classifies integers, reals with exponents and radix numbers without needing
+     * whitespace around procedure braces.
+     */
+    @Test
+    public void lexerNumberTest() {
+        MyLexer lexer = new MyLexer("{-42 1.5e2 .5 16#FF 2#1010 1e}");
+        assertEquals(MyLexer.PROC_BEGIN, lexer.next());
+        assertEquals(MyLexer.INTEGER, lexer.next());
+        assertEquals(-42, lexer.intValue());
+        assertEquals(MyLexer.REAL, lexer.next());
+        assertEquals(150.0, lexer.realValue(), 0.0);
+        assertEquals(MyLexer.REAL, lexer.next());
+        assertEquals(0.5, lexer.realValue(), 0.0);
+        assertEquals(MyLexer.INTEGER, lexer.next());
+        assertEquals(255, lexer.intValue());
+        assertEquals(MyLexer.INTEGER, lexer.next());
+        assertEquals(10, lexer.intValue());
+        assertEquals(MyLexer.NAME, lexer.next());
+        assertEquals("1e", lexer.text());
+        assertEquals(MyLexer.PROC_END, lexer.next());
+        assertEquals(MyLexer.EOF, lexer.next());
+    }
+
+    /**
+     * Tests that MyLexer reads strings containing spaces, escapes and nested parentheses, as well as
+     * hexadecimal strings.
+     */
+    @Test
+    public void lexerStringTest() {
+        MyLexer lexer = new MyLexer("(a (nested) string\\n\\)\\101)<48 69 7>");
+        assertEquals(MyLexer.STRING, lexer.next());
+        assertEquals("a (nested) string\n)A", lexer.text());
+        assertEquals(MyLexer.STRING, lexer.next());
+        assertEquals("Hip", lexer.text());
+        assertEquals(MyLexer.EOF, lexer.next());
+    }
+
+    /**
+     * Tests that MyLexer distinguishes executable, literal and immediately evaluated names, and skips comments.
+     */
+    @Test
+    public void lexerNameTest() {
+        MyLexer lexer = new MyLexer("add/key//value % comment\n");
+        assertEquals(MyLexer.NAME, lexer.next());
+        assertEquals("add", lexer.text());
+        assertEquals(MyLexer.LITERAL_NAME, lexer.next());
+        assertEquals("key", lexer.text());
+        assertEquals(MyLexer.IMMEDIATE_NAME, lexer.next());
+        assertEquals("value", lexer.text());
+        assertEquals(MyLexer.EOF, lexer.next());
+    }
+
+    /**
+     * Tests that an unterminated string results in the proper exception clause.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void lexerUnterminatedStringTest() {
+        new MyLexer("(never closed").next();
+    }
+
+    /**
+     * Tests that MyFileLexer streams a file whose tokens and procedures straddle the boundaries of its
+     * character window.
+     */
+    @Test
+    public void fileLexerTest() throws java.io.IOException {
+        StringBuilder script = new StringBuilder("{\n");
+        for (int i = 0; i < 20000; i++) {
+            script.append(i).append(" pop\n");
+        }
+        script.append("}\n(").append("x".repeat(100000)).append(")");
+        java.nio.file.Path file = java.nio.file.Files.createTempFile("lexer", ".ps");
+        try {
+            java.nio.file.Files.writeString(file, script);
+            try (MyFileLexer lexer = new MyFileLexer(file)) {
+                assertEquals(MyLexer.PROC_BEGIN, lexer.next());
+                for (int i = 0; i < 20000; i++) {
+                    assertEquals(MyLexer.INTEGER, lexer.next());
+                    assertEquals(i, lexer.intValue());
+                    assertEquals(MyLexer.NAME, lexer.next());
+                    assertEquals("pop", lexer.text());
+                }
+                assertEquals(MyLexer.PROC_END, lexer.next());
+                assertEquals(MyLexer.STRING, lexer.next());
+                assertEquals(100000, lexer.text().length());
+                assertEquals(MyLexer.EOF, lexer.next());
+            }
+        } finally {
+            java.nio.file.Files.delete(file);
+        }
+    }
+
+    /**
+     * Tests that text outside ASCII prints the same from a file or a stream as typed at the prompt, including a
+     * character whose bytes are split between two reads.
+     */
+    @Test
+    public void fileLexerCharsetTest() throws java.io.IOException {
+        String line = "(caf\u00e9 \u20ac) print";
+        byte[] bytes = line.getBytes(java.nio.charset.Charset.defaultCharset());
+        java.nio.file.Path file = java.nio.file.Files.createTempFile("charset", ".ps");
+        String[] printed = new String[3];
+        try {
+            java.nio.file.Files.write(file, bytes);
+            for (int run = 0; run < 3; run++) {
+                java.io.ByteArrayOutputStream captured = new java.io.ByteArrayOutputStream();
+                MyInterpreter interpreter = new MyInterpreter(new MyOutput(captured));
+                if (run == 0) {
+                    interpreter.evaluate(line);
+                } else if (run == 1) {
+                    interpreter.runFile(file.toString());
+                } else {
+                    interpreter.runScript("stream", java.nio.channels.Channels.newChannel(
+                        new java.io.ByteArrayInputStream(bytes)));
+                }
+                interpreter.output().flush();
+                printed[run] = java.util.Arrays.toString(captured.toByteArray());
+            }
+        } finally {
+            java.nio.file.Files.delete(file);
+        }
+        assertEquals(printed[0], printed[1]);
+        assertEquals(printed[0], printed[2]);
+        // the stream is read a window at a time, put the character across the end of the first read
+        String text = "a".repeat(64 * 1024 - 2) + "\u00e9";
+        byte[] split = ("(" + text + ")").getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        org.junit.Assume.assumeTrue(java.nio.charset.Charset.defaultCharset().equals(
+            java.nio.charset.StandardCharsets.UTF_8));
+        try (MyFileLexer lexer = new MyFileLexer(java.nio.channels.Channels.newChannel(
+                new java.io.ByteArrayInputStream(split)))) {
+            assertEquals(MyLexer.STRING, lexer.next());
+            assertEquals(text, lexer.text());
+            assertEquals(MyLexer.EOF, lexer.next());
+        }
+    }
+
+    /**
+     * Tests that the typed push and pop functions in MyStack exchange values with the boxed push and pop functions,
+     * converting integers to reals where a real is requested.
+     */
+    @Test
+    public void typedStackTest() {
+        stack.pushInt(7);
+        stack.pushReal(2.5);
+        stack.pushBool(true);
+        stack.push("ref");
+        assertTrue(stack.intsOnTop(0));
+        assertFalse(stack.numbersOnTop(2));
+        assertEquals(MyStack.REF, stack.peekTag(0));
+        assertEquals("ref", stack.pop());
+        assertTrue(stack.popBool());
+        assertTrue(stack.numbersOnTop(2));
+        assertEquals(2.5, stack.pop());
+        assertEquals(7.0, stack.popReal(), 0.0);
+        stack.push(3);
+        assertEquals(MyStack.INT, stack.peekTag(0));
+        assertEquals(3, stack.popInt());
+    }
+
+    /**
+     * Tests that popping an integer when the top element is a real results in the proper exception clause.
+     */
+    @Test(expected = InputMismatchException.class)
+    public void popIntMismatchTest() {
+        stack.pushReal(1.5);
+        stack.popInt();
+    }
+
+    /**
+     * Tests that mixing integer and real operands in the arithmetic functions gives a real result, while reals
+     * holding whole numbers still give integer results.
+     */
+    @Test
+    public void mixedArithmeticTest() {
+        stack.push(1);
+        stack.push(0.5);
+        arith.add();
+        assertEquals(1.5, stack.pop());
+        stack.push(2.0);
+        stack.push(1.0);
+        arith.add();
+        assertEquals(3, stack.pop());
+    }
+
+    /**
+     * Tests that the where() function in MyDictionary finds the topmost dictionary defining a key, and that the
+     * epoch changes when a dictionary is begun or ended or a new key is defined, but not when a key is redefined.
+     */
+    @Test
+    public void dictionaryEpochTest() {
+        stack.push("key");
+        stack.push(1);
+        dictionary.def();
+        PSDict bottom = dictionary.where("key");
+        assertNotNull(bottom);
+        int epoch = dictionary.epoch();
+        int stamp = bottom.stamp();
+        stack.push("key");
+        stack.push(2);
+        dictionary.def();
+        assertEquals(epoch, dictionary.epoch());
+        assertNotEquals(stamp, bottom.stamp());
+        stack.push(5);
+        dictionary.dict();
+        dictionary.begin();
+        assertNotEquals(epoch, dictionary.epoch());
+        epoch = dictionary.epoch();
+        stack.push("key");
+        stack.push(3);
+        dictionary.def();
+        assertNotEquals(epoch, dictionary.epoch());
+        assertNotSame(bottom, dictionary.where("key"));
+        dictionary.end();
+        assertSame(bottom, dictionary.where("key"));
+        assertNull(dictionary.where("missing"));
+    }
+
+    /**
+     * Tests that the where(), load(), known(), store() and undef() functions in MyDictionary follow the bindings
+     * visible on the dictionary stack as dictionaries are begun and ended.
+     */
+    @Test
+    public void dictionaryBindingTest() {
+        stack.push("key");
+        stack.push(1);
+        dictionary.def();
+        stack.push(5);
+        dictionary.dict();
+        Object inner = stack.peek();
+        dictionary.begin();
+        stack.push("key");
+        stack.push(2);
+        dictionary.def();
+        stack.push("key");
+        dictionary.load();
+        assertEquals(2, stack.pop());
+        stack.push("key");
+        dictionary.where();
+        assertTrue(stack.popBool());
+        assertSame(inner, stack.pop());
+        stack.push(inner);
+        stack.push("key");
+        dictionary.known();
+        assertTrue(stack.popBool());
+        stack.push(inner);
+        stack.push("key");
+        dictionary.undef();
+        assertEquals(1, dictionary.defHelper("key"));
+        stack.push("key");
+        stack.push(3);
+        dictionary.store();
+        assertFalse(((Map<?, ?>) inner).containsKey(PSName.intern("key")));
+        dictionary.end();
+        assertEquals(3, dictionary.defHelper("key"));
+        stack.push("missing");
+        dictionary.where();
+        assertFalse(stack.popBool());
+        assertEquals(0, stack.count());
+    }
+
+    /**
+     * Tests that MyEnvironment derives new versions on put() while earlier versions keep their bindings,
+     * including keys whose hash codes collide and keys that only part at a level where one takes the last slot.
+     */
+    @Test
+    public void environmentTest() {
+        MyEnvironment empty = MyEnvironment.EMPTY;
+        MyEnvironment environment = empty;
+        for (int i = 0; i < 10000; i++) {
+            environment = environment.put("key" + i, i);
+        }
+        MyEnvironment updated = environment.put("key42", -1).put("Aa", 1).put("BB", 2);
+        assertEquals(10000, environment.size());
+        assertEquals(10002, updated.size());
+        assertEquals(42, environment.get("key42"));
+        assertEquals(-1, updated.get("key42"));
+        assertEquals(9999, updated.get("key9999"));
+        // "Aa" and "BB" have the same hash code
+        assertEquals(1, updated.get("Aa"));
+        assertEquals(2, updated.get("BB"));
+        assertNull(environment.get("Aa"));
+        assertNull(empty.get("key0"));
+        assertSame(updated, updated.put("BB", updated.get("BB")));
+        // "k96902" and "k716" share slot 0 at the top level, below it "k96902" takes slot 31
+        MyEnvironment split = empty.put("k96902", 1).put("k716", 2);
+        assertEquals(1, split.get("k96902"));
+        assertEquals(2, split.get("k716"));
+        assertEquals(10, split.put("k96902", 10).get("k96902"));
+        assertEquals(2, split.put("k96902", 10).get("k716"));
+    }
+
+    /**
+     * Tests that PSDict keeps its entries reachable through growth and removals, keeps the capacity it
+     * was created with, and is equal only to itself.
+     */
+    @Test
+    public void largeDictionaryTest() {
+        PSDict dict = new PSDict(100000);
+        for (int i = 0; i < 100000; i++) {
+            dict.put("key" + i, i);
+        }
+        // remove every third entry, the rest must still be found
+        for (int i = 0; i < 100000; i += 3) {
+            assertEquals(i, dict.remove("key" + i));
+        }
+        for (int i = 0; i < 100000; i++) {
+            assertEquals(i % 3 == 0 ? null : (Object) i, dict.get("key" + i));
+        }
+        assertEquals(66666, dict.size());
+        assertEquals(100000, dict.capacity());
+        // growing past the capacity keeps every entry
+        PSDict small = new PSDict(2);
+        for (int i = 0; i < 50; i++) {
+            small.put(i, i);
+        }
+        assertEquals(50, small.size());
+        assertEquals(49, small.get(49));
+        assertNotEquals(new PSDict(2), new PSDict(2));
+        stack.push(dict);
+        dictionary.maxLength();
+        assertEquals(100000, stack.popInt());
+    }
+
+    /**
+     * Tests that dictionaries created with huge capacities are created at once without allocating for the
+     * capacity, report it unchanged, and still grow as entries are defined.
+     */
+    @Test
+    public void hugeDictionaryTest() {
+        for (int capacity : new int[] {100000000, 2000000000, Integer.MAX_VALUE}) {
+            stack.push(capacity);
+            dictionary.dict();
+            PSDict dict = (PSDict) stack.pop();
+            assertEquals(capacity, dict.capacity());
+            for (int i = 0; i < 100000; i++) {
+                dict.put(i, i);
+            }
+            assertEquals(100000, dict.size());
+            assertEquals(99999, dict.get(99999));
+        }
+    }
+
+    /**
+     * Tests that names are interned into a single object per name, that the lexer hands out the interned
+     * name, and that string keys are stored in dictionaries as names.
+     */
+    @Test
+    public void nameInternTest() {
+        PSName name = PSName.intern("interned");
+        char[] chars = "xinternedx".toCharArray();
+        assertSame(name, PSName.intern(chars, 1, 8));
+        assertSame(name, PSName.intern(new String("interned")));
+        assertNotSame(name, PSName.intern("Interned"));
+        assertEquals("interned".hashCode(), name.hashCode());
+        assertEquals(PSName.intern("interned").id(), name.id());
+        MyLexer lexer = new MyLexer("interned /interned");
+        assertEquals(MyLexer.NAME, lexer.next());
+        assertSame(name, lexer.name());
+        assertEquals(MyLexer.LITERAL_NAME, lexer.next());
+        assertSame(name, lexer.name());
+        // a string used as a key defines the name with the same characters
+        stack.push("interned");
+        stack.push(5);
+        dictionary.def();
+        assertEquals(5, dictionary.defHelper(name));
+        stack.push(name);
+        dictionary.where();
+        assertTrue(stack.popBool());
+        assertTrue(stack.pop() instanceof PSDict);
+    }
+
+    /**
+     * Tests that names nothing refers to any more are let go of by the intern table, while names in use keep
+     * their identity.
+     */
+    @Test
+    public void nameCollectionTest() {
+        PSName kept = PSName.intern("kept");
+        int before = PSName.count();
+        for (int i = 0; i < 100000; i++) {
+            PSName.intern("unique" + i);
+        }
+        for (int i = 0; i < 10 && PSName.count() > before; i++) {
+            System.gc();
+        }
+        assertTrue(PSName.count() <= before);
+        // names interned afterwards take the table down to the size the names in use need
+        for (int i = 0; i < 2000; i++) {
+            PSName.intern("later" + i);
+        }
+        assertSame(kept, PSName.intern("kept"));
+        assertSame(PSName.intern("later1999"), PSName.intern("later1999"));
+    }
+
+    /**
+     * Tests that PSString windows share storage, that putInterval() copies correctly between overlapping
+     * windows of the same string, and that strings compare by their bytes.
+     */
+    @Test
+    public void stringViewTest() {
+        stack.push(65536);
+        string.newString();
+        PSString buffer = (PSString) stack.pop();
+        assertEquals(65536, buffer.length());
+        assertEquals(0, buffer.get(65535));
+        buffer.putInterval(100, PSString.of("template"));
+        PSString view = buffer.getInterval(100, 8);
+        assertEquals("template", view.toString());
+        // shift the text right by two within the same storage
+        buffer.putInterval(102, view);
+        assertEquals("tetemplate", buffer.getInterval(100, 10).toString());
+        stack.push(buffer);
+        stack.push(100);
+        stack.push(255);
+        string.put();
+        assertEquals(255, buffer.get(100));
+        assertEquals(PSString.of("abc"), PSString.of("abc"));
+        assertTrue(PSString.of("ab").compareTo(PSString.of("abc")) < 0);
+        assertTrue(PSString.of("\u00ff").compareTo(PSString.of("a")) > 0);
+        try {
+            buffer.getInterval(65530, 7);
+            fail();
+        } catch (IndexOutOfBoundsException e) {
+            assertEquals(65536, buffer.length());
+        }
+    }
+
+    /**
+     * Tests that MyOutput holds output back until it is flushed, formats integers itself, and delivers
+     * everything in order through the background writer, even when the thread writing is interrupted.
+     */
+    @Test
+    public void bufferedOutputTest() {
+        java.io.ByteArrayOutputStream captured = new java.io.ByteArrayOutputStream();
+        MyIO buffered = new MyIO(stack, new MyOutput(captured));
+        String newline = System.lineSeparator();
+        stack.push(PSString.of("text"));
+        buffered.printElement();
+        stack.push(Integer.MIN_VALUE);
+        buffered.print();
+        stack.push(PSName.intern("name"));
+        buffered.printArray();
+        assertEquals(0, captured.size());
+        stack.push(PSString.of("%stdout"));
+        buffered.flushFile();
+        assertEquals("(text)" + newline + "-2147483648" + newline + "/name -name-" + newline, captured.toString());
+        // a large amount of output through the ring buffer arrives complete and in order
+        java.io.ByteArrayOutputStream piped = new java.io.ByteArrayOutputStream();
+        MyOutput background = new MyOutput(java.nio.channels.Channels.newChannel(piped), true);
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 1000000; i++) {
+            background.print(i);
+            background.println();
+            expected.append(i).append(newline);
+        }
+        background.close();
+        assertEquals(expected.toString(), piped.toString());
+        // an interrupt while waiting for the writer loses no output and is still set afterwards
+        piped.reset();
+        background = new MyOutput(java.nio.channels.Channels.newChannel(piped), true);
+        Thread.currentThread().interrupt();
+        for (int i = 0; i < 1000000; i++) {
+            background.print(i);
+            background.println();
+        }
+        background.close();
+        assertTrue(Thread.interrupted());
+        assertEquals(expected.toString(), piped.toString());
+    }
+
+    /**
+     * Tests that MyFormatter writes reals with the fewest digits that read back as the same value, laid
+     * out as Double.toString lays them out.
+     */
+    @Test
+    public void formatterTest() {
+        byte[] bytes = new byte[MyFormatter.MAX_LENGTH];
+        double[] values = {0.0, -0.0, 1.0, 0.1, 0.001, 9.999e-4, 1234567.0, 1.0E7, 2.0 / 3, -1.5E-300,
+            Double.MAX_VALUE, Double.MIN_VALUE, Double.MIN_NORMAL, Double.NaN, Double.NEGATIVE_INFINITY};
+        for (double value : values) {
+            int length = MyFormatter.format(value, bytes, 0);
+            assertEquals(Double.toString(value), new String(bytes, 0, length));
+        }
+        // older Double.toString gives 9.999999999999999E22 here, which is not the shortest
+        assertEquals("1.0E23", new String(bytes, 0, MyFormatter.format(1.0E23, bytes, 0)));
+        Random random = new Random(14);
+        for (int i = 0; i < 100000; i++) {
+            double value = Double.longBitsToDouble(random.nextLong());
+            if (!Double.isNaN(value)) {
+                String text = new String(bytes, 0, MyFormatter.format(value, bytes, 0));
+                assertEquals(value, Double.parseDouble(text), 0.0);
+                assertTrue(text.length() <= Double.toString(value).length());
+            }
+        }
+        assertEquals("-2147483648", new String(bytes, 0, MyFormatter.format(Integer.MIN_VALUE, bytes, 0)));
+    }
+
+    /**
+     * Tests that cvs() and cvrs() in MyString write into the given string and push the part holding the text.
+     */
+    @Test
+    public void convertToStringTest() {
+        PSString buffer = PSString.of("..........");
+        stack.push(-2.5);
+        stack.push(buffer);
+        string.cvs();
+        assertEquals("-2.5", stack.pop().toString());
+        assertEquals("-2.5......", buffer.toString());
+        stack.push(PSName.intern("name"));
+        stack.push(buffer);
+        string.cvs();
+        assertEquals("name", stack.pop().toString());
+        stack.push(255);
+        stack.push(16);
+        stack.push(buffer);
+        string.cvrs();
+        assertEquals("FF", stack.pop().toString());
+        stack.push(-1);
+        stack.push(16);
+        stack.push(buffer);
+        string.cvrs();
+        assertEquals("FFFFFFFF", stack.pop().toString());
+        stack.push(123456789);
+        stack.push(PSString.of("abc"));
+        try {
+            string.cvs();
+            fail();
+        } catch (IndexOutOfBoundsException e) {
+            assertEquals(0, stack.count());
+        }
+    }
+
+    /**
+     * Tests that MyInterpreter sessions keep their own stacks, definitions and output, even when many of
+     * them run at once on separate threads.
+     */
+    @Test
+    public void interpreterSessionTest() throws Exception {
+        java.io.ByteArrayOutputStream captured = new java.io.ByteArrayOutputStream();
+        MyInterpreter first = new MyInterpreter(new MyOutput(captured));
+        MyInterpreter second = new MyInterpreter(new MyOutput(java.io.OutputStream.nullOutputStream()));
+        first.evaluate("/x 1 def x x");
+        second.evaluate("/x 2 def");
+        first.evaluate("{ x");
+        assertTrue(first.pending());
+        first.evaluate("} pop =");
+        first.output().flush();
+        assertEquals("1" + System.lineSeparator(), captured.toString());
+        assertEquals(1, first.stack().count());
+        assertEquals(0, second.stack().count());
+        assertEquals(1, first.stack().pop());
+        // sessions on a thread each, all defining and printing the same names
+        java.util.concurrent.ExecutorService pool = java.util.concurrent.Executors.newFixedThreadPool(8);
+        List<java.util.concurrent.Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            int n = i;
+            results.add(pool.submit(() -> {
+                java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+                MyInterpreter session = new MyInterpreter(new MyOutput(out));
+                session.evaluate("/total 0 def 1 1 " + n + " { /total exch total add def } for total =");
+                session.output().flush();
+                return out.toString().trim();
+            }));
+        }
+        for (int i = 0; i < 64; i++) {
+            assertEquals(String.valueOf(i * (i + 1) / 2), results.get(i).get());
+        }
+        pool.shutdown();
+    }
+
+    /**
+     * Tests that MyBatch writes each script's output in the order the scripts were given, with or without the
+     * optimizing options, and reports a failing script without stopping the others.
+     */
+    @Test
+    public void batchTest() throws Exception {
+        java.nio.file.Path dir = java.nio.file.Files.createTempDirectory("batch");
+        List<String> paths = new ArrayList<>();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            java.nio.file.Path script = dir.resolve("script" + i + ".ps");
+            // one script fails part way, after printing
+            String source = i == 7 ? "(before) = 1 0 idiv (after) =" : "0 1 1 " + (i * 100) + " { add } for =";
+            java.nio.file.Files.writeString(script, source);
+            paths.add(script.toString());
+            expected.append(i == 7 ? "(before)" : String.valueOf(i * 100 * (i * 100 + 1) / 2)).append(System.lineSeparator());
+        }
+        // sessions started with --compile and --verify print the same
+        for (MyBatch batch : List.of(new MyBatch(4), new MyBatch(4, true, true))) {
+            java.io.ByteArrayOutputStream captured = new java.io.ByteArrayOutputStream();
+            java.io.ByteArrayOutputStream errors = new java.io.ByteArrayOutputStream();
+            MyOutput output = new MyOutput(captured);
+            int failures = batch.run(paths, output, new java.io.PrintStream(errors, true));
+            output.flush();
+            assertEquals(1, failures);
+            assertEquals(expected.toString(), captured.toString());
+            assertTrue(errors.toString().startsWith("Exception in " + paths.get(7) + ": "));
+        }
+        try {
+            new MyBatch(0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("--jobs"));
+        }
+    }
+
+    /**
+     * Tests that the javax.script engine is found by name, evaluates a compiled script repeatedly against
+     * different bindings, and maps results and definitions to Java values.
+     */
+    @Test
+    public void scriptEngineTest() throws Exception {
+        javax.script.ScriptEngine engine = new javax.script.ScriptEngineManager().getEngineByName("postjava");
+        assertNotNull(engine);
+        javax.script.CompiledScript square = ((javax.script.Compilable) engine).compile("/result x x mul def result");
+        for (int i = 0; i < 5; i++) {
+            javax.script.Bindings bindings = engine.createBindings();
+            bindings.put("x", i);
+            assertEquals(i * i, square.eval(bindings));
+            assertEquals(i * i, bindings.get("result"));
+        }
+        java.io.StringWriter written = new java.io.StringWriter();
+        engine.getContext().setWriter(written);
+        engine.put("name", "world");
+        assertEquals("hello", engine.eval("name = 1.5 (hello)"));
+        assertEquals("(world)" + System.lineSeparator(), written.toString());
+        assertNull(engine.eval("1 2 add pop"));
+        try {
+            ((javax.script.Compilable) engine).compile("{ 1 2 add");
+            fail();
+        } catch (javax.script.ScriptException e) {
+            assertTrue(e.getMessage().contains("Syntax Error"));
+        }
+        try {
+            engine.eval("1 0 idiv");
+            fail();
+        } catch (javax.script.ScriptException e) {
+            assertNotNull(e.getMessage());
+        }
+    }
+
+    /**
+     * Tests that procedures compiled by the compiling tier behave as they do interpreted, under both scopes,
+     * including pushing literals, calling procedures, shadowing operators and failing.
+     */
+    @Test
+    public void compiledProcedureTest() {
+        String program = "/fib { dup 2 lt { } { dup 1 sub fib exch 2 sub fib add } ifelse } def 15 fib = "
+            + "/total 0 def 1 1 3000 { /total exch total add def } for total = "
+            + "/sq { dup mul 0.5 add (s) pop } def 0 1 1 2000 { sq add } for = "
+            + "/add { sub } def 0 1 1 1500 { add } for =";
+        for (String scope : new String[] {"dyn", "lex"}) {
+            String[] printed = new String[2];
+            for (int tier = 0; tier < 2; tier++) {
+                java.io.ByteArrayOutputStream captured = new java.io.ByteArrayOutputStream();
+                MyInterpreter interpreter = new MyInterpreter(new MyOutput(captured), tier == 1);
+                interpreter.evaluate(scope);
+                interpreter.evaluate(program);
+                interpreter.output().flush();
+                printed[tier] = captured.toString();
+                // a compiled procedure fails the same way as an interpreted one
+                interpreter.evaluate("/bad { 1 0 idiv } def 1 1 1200 { pop } for");
+                for (int i = 0; i < 1200; i++) {
+                    try {
+                        interpreter.evaluate("bad");
+                        fail();
+                    } catch (ArithmeticException e) {
+                        // whatever idiv leaves behind is the same either way
+                        printed[tier] += interpreter.stack().count();
+                        interpreter.stack().clear();
+                    }
+                }
+            }
+            assertEquals(printed[0], printed[1]);
+        }
+        // the compiler itself runs the steps it is given, in order
+        List<Integer> order = new ArrayList<>();
+        List<java.lang.invoke.MethodHandle> steps = new ArrayList<>();
+        try {
+            java.lang.invoke.MethodHandle add = java.lang.invoke.MethodHandles.lookup().findVirtual(List.class, "add",
+                java.lang.invoke.MethodType.methodType(boolean.class, Object.class));
+            // a void type drops the result
+            add = add.asType(java.lang.invoke.MethodType.methodType(void.class, List.class, Object.class));
+            for (int i = 0; i < 300; i++) {
+                steps.add(java.lang.invoke.MethodHandles.insertArguments(add, 0, order, i));
+            }
+            org.junit.Assume.assumeTrue(MyCompiler.available());
+            Runnable compiled = MyCompiler.compile(java.lang.invoke.MethodHandles.lookup(), steps);
+            compiled.run();
+            // hidden classes are named after the class file's name with a suffix no other class can have
+            assertTrue(compiled.getClass().getName().startsWith("MyCompiledProcedure/"));
+        } catch (ReflectiveOperationException e) {
+            fail(e.getMessage());
+        }
+        assertEquals(300, order.size());
+        assertEquals(299, (int) order.get(299));
+    }
+
+    /**
+     * Tests that arithmetic and comparison nodes specialize on their first operands, deoptimize when other
+     * operands show up, and give the same results as the generic operators either way.
+     */
+    @Test
+    public void numericNodeTest() {
+        MyStack stack = new MyStack();
+        MyNumericNode add = new MyNumericNode(stack, new MyOperator("add", new MyArithmetic(stack)::add));
+        assertEquals(MyNumericNode.UNINITIALIZED, add.state());
+        stack.pushInt(Integer.MAX_VALUE);
+        stack.pushInt(1);
+        add.run();
+        assertEquals(MyNumericNode.INT_INT, add.state());
+        assertEquals(Integer.MIN_VALUE, stack.popInt());
+        // reals holding whole values still give an integer once the node has gone generic
+        stack.pushReal(1.0);
+        stack.pushReal(2.0);
+        add.run();
+        assertEquals(MyNumericNode.GENERIC, add.state());
+        assertEquals(MyStack.INT, stack.peekTag(0));
+        assertEquals(3, stack.popInt());
+        MyNumericNode lt = new MyNumericNode(stack, new MyOperator("lt", new MyBoolean(stack)::lessThan));
+        stack.pushInt(1);
+        stack.pushReal(1.5);
+        lt.run();
+        assertEquals(MyNumericNode.MIXED, lt.state());
+        assertTrue(stack.popBool());
+        stack.pushReal(2.5);
+        stack.pushInt(2);
+        lt.run();
+        assertEquals(MyNumericNode.MIXED, lt.state());
+        assertFalse(stack.popBool());
+        // the generic operator reports errors
+        stack.pushInt(1);
+        try {
+            lt.run();
+            fail();
+        } catch (EmptyStackException e) {
+            assertEquals(MyNumericNode.GENERIC, lt.state());
+        }
+        stack.clear();
+        // procedures compute what the same operators do at the top level, whatever each site sees
+        String numbers = "3 4  2.5 4  2.5 1.5  1.5 2  2147483647 1  -0.0 0.0  0.5 0.5";
+        for (String operator : new String[] {"add", "sub", "mul", "eq", "ne", "gt", "lt", "ge", "le"}) {
+            String operands = numbers + (operator.length() == 2 ? "  (a) (b)  (b) (b)" : "");
+            operands += operator.equals("eq") || operator.equals("ne") ? "  true true  true false" : "";
+            StringBuilder direct = new StringBuilder();
+            StringBuilder procedure = new StringBuilder("/op { " + operator + " } def ");
+            for (String pair : operands.split("  ")) {
+                direct.append(pair).append(' ').append(operator).append(" = ");
+                procedure.append(pair).append(" op = ");
+            }
+            String[] printed = new String[2];
+            for (int run = 0; run < 2; run++) {
+                java.io.ByteArrayOutputStream captured = new java.io.ByteArrayOutputStream();
+                MyInterpreter interpreter = new MyInterpreter(new MyOutput(captured));
+                interpreter.evaluate(run == 0 ? direct.toString() : procedure.toString());
+                interpreter.output().flush();
+                printed[run] = captured.toString();
+            }
+            assertEquals(operator, printed[0], printed[1]);
+        }
+    }
+
+    /**
+     * Tests that register blocks compute what the instructions they stand for compute, give up without touching
+     * the stack on operands they do not handle, and step aside when one of their names is redefined.
+     */
+    @Test
+    public void registerBlockTest() {
+        MyRegisterBlock block = MyRegisterBlock.compile(List.of("dup", "mul", "exch", "dup", "mul", "add", "sqrt"));
+        assertEquals(7, block.length());
+        assertEquals(2, block.inputs());
+        assertEquals(1, block.outputs());
+        MyStack stack = new MyStack();
+        stack.pushInt(3);
+        stack.pushInt(4);
+        assertTrue(block.evaluate(stack));
+        block.materialize(stack);
+        assertEquals(1, stack.count());
+        assertEquals(5.0, stack.popReal(), 0);
+        // literal counts, dropped results and booleans from comparisons
+        block = MyRegisterBlock.compile(List.of(2, "copy", "add", "pop", 1.5, "mul", 3, "gt"));
+        assertEquals(8, block.length());
+        stack.pushInt(2);
+        stack.pushInt(5);
+        assertTrue(block.evaluate(stack));
+        block.materialize(stack);
+        assertEquals(2, stack.count());
+        assertTrue(stack.popBool());
+        assertEquals(2, stack.popInt());
+        // a string makes the block give up, and the stack is left for the instructions to fail on
+        block = MyRegisterBlock.compile(List.of("exch", 1, "add"));
+        stack.push(PSString.of("a"));
+        stack.pushInt(1);
+        assertFalse(block.evaluate(stack));
+        assertEquals(2, stack.count());
+        stack.clear();
+        // a boolean cannot be added, so the block ends before add
+        assertEquals(3, MyRegisterBlock.compile(List.of(1, 2, "lt", "add")).length());
+        // nor can copy with a count from outside the block
+        assertNull(MyRegisterBlock.compile(List.of("copy", 1)));
+        // sessions give the same results with the verifier on, including after dup is redefined
+        String program = "/hyp { dup mul exch dup mul add sqrt } def 3 4 hyp = 1 1 2000 { 1.5 hyp pop } for "
+            + "/poly { dup dup mul 3 mul exch 2 mul add 1 add } def 0 1 1 300 { poly add } for = "
+            + "/dup { 2 } def 3 4 hyp = /bump { exch 1 add } def (x) 1 bump";
+        for (String scope : new String[] {"dyn", "lex"}) {
+            String[] printed = new String[2];
+            for (int run = 0; run < 2; run++) {
+                java.io.ByteArrayOutputStream captured = new java.io.ByteArrayOutputStream();
+                MyInterpreter interpreter = new MyInterpreter(new MyOutput(captured));
+                interpreter.setVerifying(run == 1);
+                interpreter.evaluate(scope);
+                try {
+                    interpreter.evaluate(program);
+                    fail();
+                } catch (RuntimeException e) {
+                    // the string reaches add, which fails as it would without the block
+                    printed[run] = e.getClass().getName() + e.getMessage();
+                }
+                interpreter.output().flush();
+                printed[run] = captured + printed[run];
+            }
+            assertEquals(printed[0], printed[1]);
+            assertTrue(printed[0].startsWith("5.0\n"));
+            // dup now pushes 2, so 3 4 hyp works out 4 2 mul 3 2 mul add sqrt, the root of 14
+            assertTrue(printed[0].contains("\n3.7416573867739413\n"));
+        }
+    }
+
+    /**
+     * Tests that register blocks whose results are popped unused still fail on operands of the wrong type, as
+     * the operators they stand for do.
+     */
+    @Test
+    public void deadRegisterTest() {
+        MyStack stack = new MyStack();
+        stack.push(PSString.of("a"));
+        stack.push(PSString.of("b"));
+        assertFalse(MyRegisterBlock.compile(List.of("add", "pop")).evaluate(stack));
+        assertFalse(MyRegisterBlock.compile(List.of("lt", "pop", 1)).evaluate(stack));
+        assertEquals(2, stack.count());
+        String[][] cases = {
+            {"/f { add pop } def (a) (b) f (after f) =", "java.util.InputMismatchException"},
+            {"/g { lt pop 1 } def (a) 3 g =", "java.util.InputMismatchException"},
+            {"/h { neg pop 2 } def (a) h =", "java.util.InputMismatchException"},
+            {"/k { 2 copy mul pop pop pop (done) = } def 3 4 k", "(done)\n"},
+            {"/m { dup add pop } def m", "java.util.EmptyStackException"},
+        };
+        for (String[] test : cases) {
+            java.io.ByteArrayOutputStream captured = new java.io.ByteArrayOutputStream();
+            MyInterpreter interpreter = new MyInterpreter(new MyOutput(captured));
+            String outcome;
+            try {
+                interpreter.evaluate(test[0]);
+                interpreter.output().flush();
+                outcome = captured.toString();
+            } catch (RuntimeException e) {
+                outcome = e.getClass().getName();
+            }
+            assertEquals(test[0], test[1], outcome);
+        }
+    }
+
+    /**
+     * Tests that procedure bodies have literals folded, no-ops reduced to stack depth checks and if on literal
+     * conditions or empty procedures rewritten, while they print and fail as the same code at the top level.
+     */
+    @Test
+    public void peepholeTest() {
+        MyStack stack = new MyStack();
+        MyRegisterBlock block = MyRegisterBlock.compile(List.of(2, 3, "add", 1, "add", 0, "add"));
+        assertEquals(0, block.inputs());
+        assertTrue(block.evaluate(stack));
+        block.materialize(stack);
+        assertEquals(6, stack.popInt());
+        assertEquals(Boolean.FALSE, MyRegisterBlock.compile(List.of("true", "not")).constantCondition());
+        assertEquals(Boolean.TRUE, MyRegisterBlock.compile(List.of(1, 2, "lt")).constantCondition());
+        // no-ops leave any kind of element alone, and need it to be there
+        block = MyRegisterBlock.compile(List.of("exch", "exch", "dup", "pop"));
+        assertFalse(block.evaluate(stack));
+        block = MyRegisterBlock.compile(List.of("exch", "exch", "dup", "pop"));
+        stack.push(PSString.of("a"));
+        stack.push(PSString.of("b"));
+        assertTrue(block.evaluate(stack));
+        block.materialize(stack);
+        assertEquals("b", stack.pop().toString());
+        // sqrt of a negative literal is not folded away, so the block still fails where sqrt does
+        assertFalse(MyRegisterBlock.compile(List.of(-1, "sqrt", "pop")).evaluate(stack));
+        // nor is a condition that comes after an operation that can fail
+        assertNull(MyRegisterBlock.compile(List.of(-1, "sqrt", "pop", "true")).constantCondition());
+        // each line runs in a procedure and at the top level, which is never optimized
+        String[] lines = {
+            "2 3 add 1 add 0 add exch exch dup pop true not = =",
+            "true { (yes) = } if false { (no) = } if 1 2 lt { (lt) = } if 1 1 eq { } if true not { 1 } if",
+            "2.0 0 add 1 0.5 mul 2 mul 1 2 and 5 not = = = =",
+            "(s) (t) exch exch = =",
+            "3 { } if",
+            "{ } if",
+            "true",
+            "1 (a) exch exch 0 add",
+            "-4 sqrt pop",
+            "-1 sqrt pop true { (ran) = } if",
+            "-1 sqrt pop false { (ran) = } if",
+            // literals of the wrong type are not folded, and no-ops still fail on a short stack
+            "true 1 add",
+            "1 true eq",
+            "true 2 lt",
+            "true sqrt pop",
+            "true neg",
+            "1 true and",
+            "(s) not",
+            "(a) 0 add",
+            "(a) (b) add pop 1",
+            "(a) dup dup add pop",
+            "exch exch",
+            "1 dup pop exch",
+            "2 copy",
+        };
+        for (String line : lines) {
+            String[] printed = new String[2];
+            for (int run = 0; run < 2; run++) {
+                java.io.ByteArrayOutputStream captured = new java.io.ByteArrayOutputStream();
+                MyInterpreter interpreter = new MyInterpreter(new MyOutput(captured));
+                interpreter.setVerifying(true);
+                try {
+                    interpreter.evaluate(run == 0 ? line : "/p { " + line + " } def p");
+                    printed[run] = "";
+                } catch (RuntimeException e) {
+                    printed[run] = e.getClass().getName();
+                }
+                interpreter.output().flush();
+                printed[run] += captured + " " + interpreter.stack().count();
+            }
+            assertEquals(line, printed[0], printed[1]);
+        }
+    }
+
+    /**
+     * Tests that the daemon keeps its default socket in a directory only the user can enter, and refuses one
+     * that others can.
+     */
+    @Test
+    public void daemonDirectoryTest() throws java.io.IOException {
+        java.nio.file.Path temporary = java.nio.file.Files.createTempDirectory("pj-test");
+        String saved = System.getProperty("java.io.tmpdir");
+        System.setProperty("java.io.tmpdir", temporary.toString());
+        try {
+            java.nio.file.Path socket = MyDaemon.defaultSocket();
+            // a runtime directory is the user's own already
+            org.junit.Assume.assumeTrue(socket.startsWith(temporary));
+            org.junit.Assume.assumeTrue(temporary.getFileSystem().supportedFileAttributeViews().contains("posix"));
+            MyDaemon.privateDirectory(socket, false);
+            assertFalse(java.nio.file.Files.exists(socket.getParent()));
+            MyDaemon.privateDirectory(socket, true);
+            assertEquals("rwx------", java.nio.file.attribute.PosixFilePermissions.toString(
+                java.nio.file.Files.getPosixFilePermissions(socket.getParent())));
+            java.nio.file.Files.setPosixFilePermissions(socket.getParent(),
+                java.nio.file.attribute.PosixFilePermissions.fromString("rwxrwxrwx"));
+            try {
+                MyDaemon.privateDirectory(socket, true);
+                fail("A directory others can enter was used.");
+            } catch (java.io.IOException e) {
+                assertTrue(e.getMessage().contains("--socket"));
+            }
+            java.nio.file.Files.delete(socket.getParent());
+        } finally {
+            System.setProperty("java.io.tmpdir", saved);
+            java.nio.file.Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Tests that superinstructions give the results of the instructions they stand for, fall back to them on
+     * other operands, and that the profile counts the sequences they are chosen from.
+     */
+    @Test
+    public void superinstructionTest() {
+        MyStack stack = new MyStack();
+        stack.pushReal(3.0);
+        assertTrue(stack.dupMul());
+        assertEquals(9, stack.popInt());
+        stack.pushReal(1.5);
+        assertTrue(stack.dupMul());
+        assertEquals(2.25, stack.popReal(), 0);
+        stack.pushInt(10);
+        stack.pushInt(3);
+        assertTrue(stack.exchSub());
+        assertEquals(-7, stack.popInt());
+        stack.pushInt(Integer.MAX_VALUE);
+        assertTrue(stack.addInt(1));
+        assertEquals(Integer.MIN_VALUE, stack.popInt());
+        stack.pushReal(0.5);
+        assertTrue(stack.subInt(Integer.MIN_VALUE));
+        assertEquals(2147483648.5, stack.popReal(), 0);
+        stack.pushInt(0);
+        assertTrue(stack.subInt(Integer.MIN_VALUE));
+        assertEquals(Integer.MIN_VALUE, stack.popInt());
+        stack.push(PSString.of("a"));
+        assertFalse(stack.addInt(1));
+        assertFalse(stack.subInt(1));
+        assertFalse(stack.exchSub());
+        assertEquals(1, stack.count());
+        assertTrue(MySuperinstructions.matches("<int> add", List.of("dup", "-12", "add"), 1));
+        assertTrue(MySuperinstructions.matches("/<name> exch def", List.of("/<name>", "exch", "def"), 0));
+        assertFalse(MySuperinstructions.matches("<int> add", List.of("/x", "add"), 0));
+        assertFalse(MySuperinstructions.matches("<int> add", List.of("-", "add"), 0));
+        assertFalse(MySuperinstructions.matches("<int> add", List.of("<real>", "add"), 0));
+        // each line runs in a procedure and at the top level, which is never optimized
+        String[] lines = {
+            "/s (abc) def 1 s exch 66 put s =",
+            "5 /x exch def x = /y exch def",
+            "1 2 eq { (eq) = } if 2 2 eq { (eq2) = } if 1.0 1 eq { (mixed) = } if (a) (a) eq { (str) = } if",
+            "3 5 lt { (a) } { (b) } ifelse = 4.5 2 lt { (c) } { (d) } ifelse = true 1 lt { } if",
+            "7 1 sub 2.5 1 add -1 -5 sub 2147483647 1 add = = = =",
+            "1 (a) 1 add",
+            "/x 0.5 def x -2147483648 sub = /y 2.0 def y -2147483648 sub =",
+            "/s 3 string def 5 s exch 1 put",
+            "/lt { pop pop true } def 5 1 lt { (shadowed) = } if",
+        };
+        for (String line : lines) {
+            String[] printed = new String[2];
+            for (int run = 0; run < 2; run++) {
+                java.io.ByteArrayOutputStream captured = new java.io.ByteArrayOutputStream();
+                MyInterpreter interpreter = new MyInterpreter(new MyOutput(captured));
+                try {
+                    interpreter.evaluate(run == 0 ? line : "/p { " + line + " } def p");
+                    printed[run] = "";
+                } catch (RuntimeException e) {
+                    printed[run] = e.getClass().getName();
+                }
+                interpreter.output().flush();
+                printed[run] += captured + " " + interpreter.stack().count();
+            }
+            assertEquals(line, printed[0], printed[1]);
+        }
+        MyNgramProfile profile = new MyNgramProfile();
+        MyInterpreter interpreter = new MyInterpreter(new MyOutput(new java.io.ByteArrayOutputStream()));
+        interpreter.setProfile(profile);
+        interpreter.evaluate("/p { dup mul 1 lt { } if } def 3 p 4 p");
+        assertEquals(Long.valueOf(2), profile.counts(2).get("dup mul"));
+        assertEquals(Long.valueOf(2), profile.counts(3).get("lt {} if"));
+    }
+}